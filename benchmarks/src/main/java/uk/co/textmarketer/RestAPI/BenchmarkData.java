@@ -0,0 +1,68 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.util.Hashtable;
+
+/**
+ * Sample requests and gateway responses used by the benchmarks
+ */
+final class BenchmarkData {
+	static final String SMS_RESPONSE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<response processed_date=\"2017-03-01T10:15:30+00:00\">"
+			+ "<message_id>3000000001</message_id>"
+			+ "<scheduled_id></scheduled_id>"
+			+ "<credits_used>1</credits_used>"
+			+ "<status>SENT</status>"
+			+ "</response>";
+	
+	static final String CREDITS_RESPONSE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<response processed_date=\"2017-03-01T10:15:30+00:00\"><credits>1000</credits></response>";
+
+	static final String ERROR_RESPONSE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<response processed_date=\"2017-03-01T10:15:30+00:00\"><errors>"
+			+ "<error code=\"23\">Invalid mobile number: mobile_number must be in international format</error>"
+			+ "<error code=\"71\">Insufficient credits</error>"
+			+ "</errors></response>";
+
+	private BenchmarkData() {
+	}
+	
+	/**
+	 * Parameters of a typical sendSMS call
+	 */
+	static Hashtable<String, String> smsParams() {
+		Hashtable<String, String> params = new Hashtable<String, String>();
+		params.put("message", "Hello Jane, your appointment is confirmed for Tuesday at 10:30. Reply STOP to opt out & save 20%!");
+		params.put("mobile_number", "447777123123");
+		params.put("originator", "TextMarketer");
+		params.put("validity", "72");
+		params.put("email", "");
+		params.put("custom", "campaign-42");
+		params.put("check_stop", "false");
+		return params;
+	}
+	
+	/**
+	 * Delivery report response with a single report of the given number of rows
+	 */
+	static String deliveryReport(int rows) {
+		StringBuilder xml = new StringBuilder(64 + rows * 150);
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		xml.append("<response processed_date=\"2017-03-01T10:15:30+00:00\">\n");
+		xml.append("<report name=\"GB20170301\" last_updated=\"2017-03-01T10:15:30\" extension=\"csv\">\n");
+		for(int i = 0; i < rows; i++) {
+			xml.append("<reportrow last_updated=\"2017-03-01 10:");
+			xml.append(10 + (i / 60) % 50).append(':').append(10 + i % 50);
+			xml.append("\" mobile_number=\"4477");
+			xml.append(10000000 + i);
+			xml.append("\" message_id=\"");
+			xml.append(3000000000L + i);
+			xml.append("\" status=\"");
+			xml.append(i % 10 == 0 ? "FAILED" : (i % 3 == 0 ? "SENT" : "DELIVERED"));
+			xml.append("\" custom=\"campaign-");
+			xml.append(i % 8);
+			xml.append("\"/>\n");
+		}
+		xml.append("</report>\n</response>");
+		return xml.toString();
+	}
+}
@@ -0,0 +1,59 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.util.Hashtable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of delivery report responses and access to the parsed rows, at different report sizes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g"})
+public class DeliveryReportBenchmark {
+	@Param({"1000", "100000", "1000000"})
+	public int rows;
+	
+	private RestClient client;
+	private ParallelReportParser parallelParser;
+	private String xml;
+	private DeliveryReport report;
+	
+	@Setup
+	public void setup() throws Exception {
+		client = new RestClient("benchuser", "benchpass", RestClient.ENV_SANDBOX);
+		xml = BenchmarkData.deliveryReport(rows);
+		report = client.parseDeliveryReport(xml)[0];
+		parallelParser = new ParallelReportParser(ForkJoinPool.commonPool());
+	}
+	
+	@Benchmark
+	public DeliveryReport[] parseDeliveryReport() throws Exception {
+		return client.parseDeliveryReport(xml);
+	}
+	
+	@Benchmark
+	public DeliveryReport[] parseDeliveryReportParallel() throws Exception {
+		return parallelParser.parse(xml);
+	}
+	
+	@Benchmark
+	public Hashtable<String, String>[] getRows() {
+		return report.getRows();
+	}
+}
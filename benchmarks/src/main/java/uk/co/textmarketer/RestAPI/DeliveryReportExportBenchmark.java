@@ -0,0 +1,86 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Streaming of delivery report rows to CSV and binary files, and scanning of the binary archive
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class DeliveryReportExportBenchmark {
+	@Param({"100000", "1000000"})
+	public int rows;
+	
+	private byte[] xml;
+	private Path csv;
+	private Path archive;
+	private DeliveryReportExporter exporter;
+	
+	@Setup
+	public void setup() throws Exception {
+		xml = BenchmarkData.deliveryReport(rows).getBytes(StandardCharsets.UTF_8);
+		csv = Files.createTempFile("report", ".csv");
+		archive = Files.createTempFile("report", ".tmdr");
+		exporter = new DeliveryReportExporter();
+		exporter.exportBinary(new DeliveryReportReader(new ByteArrayInputStream(xml)), archive);
+	}
+	
+	@TearDown
+	public void tearDown() throws Exception {
+		Files.deleteIfExists(csv);
+		Files.deleteIfExists(archive);
+	}
+	
+	@Benchmark
+	public long readRows() throws Exception {
+		DeliveryReportReader reader = new DeliveryReportReader(new ByteArrayInputStream(xml));
+		long count = 0;
+		while(reader.next())
+			count += reader.getStatus().length();
+		return count;
+	}
+	
+	@Benchmark
+	public long exportCsv() throws Exception {
+		return exporter.exportCsv(new DeliveryReportReader(new ByteArrayInputStream(xml)), csv);
+	}
+	
+	@Benchmark
+	public long exportBinary() throws Exception {
+		return exporter.exportBinary(new DeliveryReportReader(new ByteArrayInputStream(xml)), archive);
+	}
+	
+	@Benchmark
+	public long scanArchive() throws Exception {
+		DeliveryReportArchive reader = new DeliveryReportArchive(archive);
+		long count = 0;
+		try {
+			while(reader.next())
+				count += reader.getStatusCode();
+		} finally {
+			reader.close();
+		}
+		return count;
+	}
+}
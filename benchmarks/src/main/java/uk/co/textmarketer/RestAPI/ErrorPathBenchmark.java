@@ -0,0 +1,57 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Failed calls answered by an interceptor with a gateway error, with and without business error stack traces
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ErrorPathBenchmark {
+	@Param({"true", "false"})
+	public boolean stackTraces;
+	
+	private RestClient client;
+	
+	@Setup
+	public void setup() {
+		final RestResponse error = new RestResponse(400, BenchmarkData.ERROR_RESPONSE);
+		client = new RestClient("benchuser", "benchpass", RestClient.ENV_SANDBOX);
+		client.setBusinessErrorStackTraces(stackTraces);
+		client.addInterceptor(new RestInterceptor() {
+			public RestResponse intercept(Chain chain) {
+				return error;
+			}
+		});
+	}
+	
+	@Benchmark
+	public Object failedSendSMS() {
+		try {
+			return client.sendSMS("Hello SMS World!", "44", "TextMarketer");
+		} catch (RestClientException e) {
+			return e;
+		}
+	}
+	
+	@Benchmark
+	public Object decodeErrors() {
+		return ErrorDecoder.decode(400, BenchmarkData.ERROR_RESPONSE);
+	}
+}
@@ -0,0 +1,47 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.net.URLEncoder;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Personalised message rendering: compiled template against string concatenation and URL encoding
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageTemplateBenchmark {
+	private MessageTemplate template;
+	private String firstName;
+	private String code;
+	
+	@Setup
+	public void setup() {
+		template = MessageTemplate.compile("Hi {first_name}, your Text Marketer code is {code}. Reply STOP to opt out");
+		firstName = "Margaret";
+		code = "X4F9-2211";
+	}
+	
+	@Benchmark
+	public EncodedMessage render() {
+		return template.render(firstName, code);
+	}
+	
+	@Benchmark
+	public String concatAndEncode() throws Exception {
+		return URLEncoder.encode("Hi " + firstName + ", your Text Marketer code is " + code + ". Reply STOP to opt out", "UTF-8");
+	}
+}
@@ -0,0 +1,40 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Form encoding of the sendSMS request parameters, credentials included
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestEncodingBenchmark {
+	private RestClient client;
+	private Hashtable<String, String> params;
+	
+	@Setup
+	public void setup() {
+		client = new RestClient("benchuser", "bench pass&word", RestClient.ENV_SANDBOX);
+		params = BenchmarkData.smsParams();
+	}
+	
+	@Benchmark
+	public String encodeSendSMS() throws Exception {
+		return client.encodeParams(params);
+	}
+}
@@ -0,0 +1,51 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.io.ByteArrayInputStream;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading and parsing of small gateway responses, as returned by sendSMS or getCredits
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseParsingBenchmark {
+	private RestClient client;
+	private byte[] smsResponseBytes;
+	
+	@Setup
+	public void setup() throws Exception {
+		client = new RestClient("benchuser", "benchpass", RestClient.ENV_SANDBOX);
+		smsResponseBytes = BenchmarkData.SMS_RESPONSE.getBytes("UTF-8");
+	}
+	
+	@Benchmark
+	public Hashtable<String, String> parseSmsResponse() {
+		return client.parseResponseXML(BenchmarkData.SMS_RESPONSE, "");
+	}
+	
+	@Benchmark
+	public Hashtable<String, String> parseCreditsResponse() {
+		return client.parseResponseXML(BenchmarkData.CREDITS_RESPONSE, "");
+	}
+	
+	@Benchmark
+	public byte[] readConnectionResponse() throws Exception {
+		return RestClient.getConnectionResponse(new ByteArrayInputStream(smsResponseBytes));
+	}
+}
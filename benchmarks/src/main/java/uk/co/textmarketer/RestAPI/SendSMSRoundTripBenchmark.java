@@ -0,0 +1,56 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full sendSMS calls, encoding, HTTP round trip and parsing, against a loopback StubServer, for each transport.<p>
+ * 
+ * Run with -t to measure concurrent senders sharing one client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SendSMSRoundTripBenchmark {
+	@Param({"urlconnection", "httpclient"})
+	public String transport;
+	
+	private StubServer server;
+	private RestClient client;
+	
+	@Setup
+	public void setup() throws Exception {
+		server = new StubServer();
+		server.setCredits(Integer.MAX_VALUE);
+		server.start();
+		client = new RestClient("benchuser", "benchpass", server.getBaseUrl());
+		if("httpclient".equals(transport))
+			client.setTransport(new HttpClientTransport());
+	}
+	
+	@TearDown
+	public void tearDown() {
+		server.stop();
+	}
+	
+	@Benchmark
+	public Hashtable<String, String> sendSMS() throws Exception {
+		return client.sendSMS("Hello SMS World!", "447777123123", "TextMarketer", 72, "", "campaign-42");
+	}
+}
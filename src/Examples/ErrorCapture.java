@@ -16,9 +16,11 @@ public class ErrorCapture {
 			int creditsAvailable = tmClient.getCredits();
 			System.out.println("Account have " + creditsAvailable + " credits.");
 		} catch (RestClientException e) {
-			Hashtable<String, String> errors = tmClient.getLastErrors();
+			Hashtable<String, String> errors = e.getErrors();
 			for(Map.Entry<String, String> error: errors.entrySet())
 				System.out.println("Error code " + error.getKey() + ": " + error.getValue());
+			if(e.isRetriable())
+				System.out.println("HTTP " + e.getHttpStatus() + ", the call can be retried later");
 		}
 	}
 }
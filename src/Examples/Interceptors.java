@@ -0,0 +1,30 @@
+package Examples;
+
+import uk.co.textmarketer.RestAPI.RestClient;
+import uk.co.textmarketer.RestAPI.RestClientException;
+import uk.co.textmarketer.RestAPI.RestInterceptor;
+import uk.co.textmarketer.RestAPI.RestResponse;
+
+public class Interceptors {
+	public static void main(String[] args) {
+		RestClient tmClient = new RestClient("MyAPIUsername", "MyAPIPassword", RestClient.ENV_PRODUCTION);
+		
+		// time every call and tag it with a tracing header
+		tmClient.addInterceptor(new RestInterceptor() {
+			public RestResponse intercept(Chain chain) throws Exception {
+				chain.request().setHeader("X-Request-Id", Long.toHexString(System.nanoTime()));
+				RestResponse response = chain.proceed(chain.request());
+				System.out.println(chain.request() + " -> " + response.getStatus() + ", " 
+						+ response.getBytes() + " bytes in " + response.getElapsedMillis() + "ms");
+				return response;
+			}
+		});
+		
+		try {
+			int creditsAvailable = tmClient.getCredits();
+			System.out.println("Account have " + creditsAvailable + " credits.");
+		} catch (RestClientException e) {
+			e.printStackTrace();
+		}
+	}
+}
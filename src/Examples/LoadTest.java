@@ -0,0 +1,46 @@
+package Examples;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.co.textmarketer.RestAPI.RestClient;
+import uk.co.textmarketer.RestAPI.RestClientException;
+import uk.co.textmarketer.RestAPI.StubServer;
+
+public class LoadTest {
+	public static void main(String[] args) throws IOException, InterruptedException {
+		// stand-in gateway with 20-50ms latency, 1% errors and 500 requests per second
+		StubServer stub = new StubServer();
+		stub.setLatency(20, 50);
+		stub.setErrorRate(0.01);
+		stub.setThrottle(500);
+		stub.start();
+		
+		final RestClient tmClient = new RestClient("MyAPIUsername", "MyAPIPassword", stub.getBaseUrl());
+		final AtomicInteger sent = new AtomicInteger();
+		final AtomicInteger failed = new AtomicInteger();
+		ExecutorService senders = Executors.newFixedThreadPool(32);
+		long start = System.nanoTime();
+		for(int i = 0; i < 5000; i++) {
+			final String number = Long.toString(447700000000L + i);
+			senders.execute(new Runnable() {
+				public void run() {
+					try {
+						tmClient.sendSMS("Hello SMS World!", number, "SenderName");
+						sent.incrementAndGet();
+					} catch (RestClientException e) {
+						failed.incrementAndGet();
+					}
+				}
+			});
+		}
+		senders.shutdown();
+		senders.awaitTermination(10, TimeUnit.MINUTES);
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		System.out.println("Sent " + sent + ", failed " + failed + " in " + elapsed + "ms");
+		stub.stop();
+	}
+}
@@ -0,0 +1,280 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Interceptor limiting the number of calls in flight to a limit adapted to the latency of the gateway<p>
+ *
+ * The limiter compares the recent round-trip time of the calls with the lowest round-trip time seen lately, the
+ * latency of the gateway without load. While the gateway answers within that latency times the tolerance the limit
+ * grows, by about the square root of the limit per round trip, and when the recent latency rises above it the limit
+ * shrinks in proportion, so queueing at the gateway is kept small. The limit is updated once per batch of calls as
+ * large as the limit, from their average latency. Overload answers (HTTP 429 and 503) and network errors cut the
+ * limit by the backoff ratio. The lowest latency is taken over the last two windows of calls, so it follows the
+ * gateway through the day and the limit settles on the best parallelism for the current conditions.<p>
+ *
+ * Calls over the limit wait on the calling thread. Add the limiter after interceptors that do not reach the
+ * gateway, e.g. a ResponseCache, so that only real gateway calls are measured. Calls failed by the client, by an
+ * open circuit breaker or a passed deadline, are not measured either.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see RestClient#addInterceptor(RestInterceptor)
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 200);
+ *RestClient tmClient = new RestClient("myuser", "mypass", RestClient.ENV_SANDBOX);
+ *tmClient.addInterceptor(limiter);
+ *tmClient.sendSMS("Hello SMS World!", "447777123123", "Hello World"); // waits while the limit is reached
+ *</pre></blockquote>
+ */
+public class AdaptiveConcurrencyLimiter implements RestInterceptor {
+	final private static int MIN_BATCH = 10;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition available = lock.newCondition();
+	private final int minLimit;
+	private final int maxLimit;
+	private double limit;
+	private int inFlight;
+	private double shortRtt;
+	private long windowMin = Long.MAX_VALUE;
+	private long previousMin = Long.MAX_VALUE;
+	private int windowCalls;
+	// calls completed since the limit was last updated
+	private long batchNanos;
+	private int batchCalls;
+	private int batchMaxInFlight;
+	private boolean batchOverload;
+
+	private volatile double tolerance = 1.5;
+	private volatile double smoothing = 0.2;
+	private volatile double backoffRatio = 0.9;
+	private volatile int window = 600;
+
+	/**
+	 * Constructor for the AdaptiveConcurrencyLimiter class.<p>
+	 *
+	 * @param initialLimit	number of calls allowed in flight before any latency is measured
+	 * @param minLimit		lowest limit
+	 * @param maxLimit		highest limit
+	 */
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+		if(minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit)
+			throw new IllegalArgumentException("invalid limits " + minLimit + " <= " + initialLimit + " <= " + maxLimit);
+		this.limit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+	}
+
+	/**
+	 * Set how much the recent latency can exceed the latency without load before the limit shrinks, 1.5 by default
+	 *
+	 * @param tolerance ratio of at least 1
+	 */
+	public void setTolerance(double tolerance) {
+		if(tolerance < 1)
+			throw new IllegalArgumentException("tolerance must be at least 1");
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Set the weight of each new limit against the current one, 0.2 by default
+	 *
+	 * @param smoothing value from 0 (excluded) to 1, higher values adapt faster
+	 */
+	public void setSmoothing(double smoothing) {
+		if(smoothing <= 0 || smoothing > 1)
+			throw new IllegalArgumentException("smoothing must be between 0 and 1");
+		this.smoothing = smoothing;
+	}
+
+	/**
+	 * Set the ratio applied to the limit after an overload answer or a network error, 0.9 by default
+	 *
+	 * @param backoffRatio value from 0.5 to 1 (excluded)
+	 */
+	public void setBackoffRatio(double backoffRatio) {
+		if(backoffRatio < 0.5 || backoffRatio >= 1)
+			throw new IllegalArgumentException("backoffRatio must be between 0.5 and 1");
+		this.backoffRatio = backoffRatio;
+	}
+
+	/**
+	 * Set the number of calls of a window for the latency without load, 600 by default
+	 *
+	 * @param calls number of calls
+	 */
+	public void setWindow(int calls) {
+		if(calls <= MIN_BATCH)
+			throw new IllegalArgumentException("the window must be more than " + MIN_BATCH + " calls");
+		this.window = calls;
+	}
+
+	/**
+	 * Return the current number of calls allowed in flight
+	 *
+	 * @return current limit
+	 */
+	public int getLimit() {
+		lock.lock();
+		try {
+			return (int) limit;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Return the recent average round-trip time
+	 *
+	 * @return average in milliseconds, 0 before the first call
+	 */
+	public double getRttMillis() {
+		lock.lock();
+		try {
+			return shortRtt / TimeUnit.MILLISECONDS.toNanos(1);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Return the round-trip time of the gateway without load, the lowest one of the last two windows
+	 *
+	 * @return lowest round-trip time in milliseconds, 0 before the first call
+	 */
+	public double getMinRttMillis() {
+		lock.lock();
+		try {
+			long min = Math.min(windowMin, previousMin);
+			return min == Long.MAX_VALUE ? 0 : (double) min / TimeUnit.MILLISECONDS.toNanos(1);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public RestResponse intercept(Chain chain) throws Exception {
+		acquire(chain.request().getDeadline());
+		long start = System.nanoTime();
+		boolean overload = true;
+		boolean sample = true;
+		try {
+			RestResponse response = chain.proceed(chain.request());
+			overload = response.getStatus() == 429 || response.getStatus() == 503;
+			return response;
+		} catch (IOException e) {
+			if(e instanceof CircuitBreakerOpenException || e instanceof DeadlineExceededException) {
+				// rejected by the client, says nothing of the gateway
+				overload = false;
+				sample = false;
+			}
+			throw e;
+		} catch (Exception e) {
+			// not a gateway problem, e.g. an interceptor error
+			overload = false;
+			throw e;
+		} finally {
+			release(System.nanoTime() - start, overload, sample);
+		}
+	}
+
+	private void acquire(Deadline deadline) throws InterruptedIOException, DeadlineExceededException {
+		lock.lock();
+		try {
+			if(inFlight >= (int) limit) {
+				GatewayEvents.Throttle event = new GatewayEvents.Throttle();
+				event.begin();
+				while(inFlight >= (int) limit) {
+					if(deadline == null)
+						available.await();
+					else if(available.awaitNanos(deadline.remainingNanos()) <= 0 && inFlight >= (int) limit)
+						throw new DeadlineExceededException("Deadline exceeded waiting for the concurrency limit");
+				}
+				GatewayEvents.commitThrottle(event, "adaptive concurrency", limit);
+			}
+			inFlight++;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the concurrency limit");
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void release(long rtt, boolean overload, boolean sample) {
+		lock.lock();
+		try {
+			int used = inFlight;
+			inFlight--;
+			double previous = limit;
+			if(sample)
+				update(rtt, used, overload);
+			if(limit > previous)
+				available.signalAll();
+			else
+				available.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Record a call and compute the new limit at the end of a batch, holding the lock
+	 */
+	private void update(long rtt, int used, boolean overload) {
+		if(overload)
+			batchOverload = true;
+		else {
+			windowMin = Math.min(windowMin, rtt);
+			if(++windowCalls >= window) {
+				// forget the lowest latency of older windows, the gateway may be slower now
+				previousMin = windowMin;
+				windowMin = Long.MAX_VALUE;
+				windowCalls = 0;
+			}
+			batchNanos += rtt;
+		}
+		batchMaxInFlight = Math.max(batchMaxInFlight, used);
+		if(++batchCalls < Math.max(MIN_BATCH, (int) limit))
+			return;
+
+		int calls = batchCalls;
+		int maxInFlight = batchMaxInFlight;
+		boolean backoff = batchOverload;
+		long nanos = batchNanos;
+		batchCalls = 0;
+		batchMaxInFlight = 0;
+		batchOverload = false;
+		batchNanos = 0;
+		if(backoff) {
+			limit = Math.max(minLimit, limit * backoffRatio);
+			return;
+		}
+		shortRtt = (double) nanos / calls;
+		long minRtt = Math.min(windowMin, previousMin);
+
+		double gradient = Math.max(0.5, Math.min(1.0, tolerance * minRtt / shortRtt));
+		double target = limit * gradient + Math.sqrt(limit);
+		double next = limit * (1 - smoothing) + target * smoothing;
+		// do not grow a limit that the callers do not use
+		if(next > limit && maxInFlight < limit / 2)
+			return;
+		limit = Math.max(minLimit, Math.min(maxLimit, next));
+	}
+}
@@ -0,0 +1,444 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.text.ParseException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Aggregator counting delivery report rows per custom tag, status and minute, as they are read<p>
+ *
+ * Rows are added from a {@link DeliveryReportReader} while it parses the report, from parsed reports, or as pushed
+ * notifications when the aggregator is added to a {@link DeliveryCallbackReceiver}. Every count is a LongAdder, so
+ * many threads can add rows without contention, and a snapshot only sums the counters of one tag: a dashboard can
+ * query it continuously without rescanning the reports.<p>
+ *
+ * The rows are also counted per status within each minute, the minute of a row being its last update, so the delivery
+ * and failure rates of a tag can be followed minute by minute or over a time range. The minutes older than the window
+ * (one day by default) before the latest minute of a tag are dropped.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see RestClient#openDeliveryReport(String, String)
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *RestClient tmClient = new RestClient("myuser", "mypass", RestClient.ENV_SANDBOX);
+ *CampaignAggregator aggregator = new CampaignAggregator();
+ *DeliveryReportReader reader = tmClient.openDeliveryReport("all", null);
+ *try {
+ *    aggregator.add(reader);
+ *} finally {
+ *    reader.close();
+ *}
+ *CampaignAggregator.Snapshot spring = aggregator.snapshot("spring-sale");
+ *System.out.println(spring.getTotal() + " messages, " + spring.getDeliveryRate() * 100 + "% delivered");
+ *long now = System.currentTimeMillis() / 60000;
+ *CampaignAggregator.Snapshot lastHour = aggregator.snapshot("spring-sale", now - 60, now + 1);
+ *System.out.println(lastHour.getFailureRate() * 100 + "% failed in the last hour");
+ *</pre></blockquote>
+ */
+public class CampaignAggregator implements DeliveryCallbackListener {
+	private final ConcurrentHashMap<String, Counters> tags = new ConcurrentHashMap<String, Counters>();
+	private final Counters all = new Counters();
+	private volatile int minuteWindow = 1440;
+
+	/**
+	 * Set the number of minutes counted before the latest minute of a tag, 1440 by default
+	 *
+	 * @param minutes size of the window in minutes
+	 */
+	public void setMinuteWindow(int minutes) {
+		if(minutes < 1)
+			throw new IllegalArgumentException("minutes must be at least 1");
+		this.minuteWindow = minutes;
+	}
+
+	/**
+	 * Add one row
+	 *
+	 * @param custom		custom tag of the message, null or empty for untagged messages
+	 * @param status		delivery status, e.g. DELIVERED
+	 * @param lastUpdated	date of the last status update, e.g. 2017-01-31T10:15:00, can be null
+	 */
+	public void add(String custom, String status, String lastUpdated) {
+		String tag = custom != null ? custom : "";
+		Counters counters = tags.get(tag);
+		if(counters == null) {
+			Counters created = new Counters();
+			counters = tags.putIfAbsent(tag, created);
+			if(counters == null)
+				counters = created;
+		}
+		long minute = epochMinute(lastUpdated);
+		counters.add(status, minute);
+		all.add(status, minute);
+	}
+
+	/**
+	 * Add one row
+	 *
+	 * @param row the row to add
+	 */
+	public void add(DeliveryReportRow row) {
+		add(row.getCustom(), row.getStatus(), row.getLastUpdated());
+	}
+
+	/**
+	 * Add the remaining rows of a reader, without creating an object per row. The reader is not closed.
+	 *
+	 * @param reader the reader to read the rows from
+	 * @return number of rows added
+	 * @throws XMLStreamException if the XML is invalid
+	 * @throws ParseException if the last update date of a report is invalid
+	 */
+	public long add(DeliveryReportReader reader) throws XMLStreamException, ParseException {
+		long count = 0;
+		while(reader.next()) {
+			add(reader.getCustom(), reader.getStatus(), reader.getLastUpdated());
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Add the rows of parsed reports
+	 *
+	 * @param reports the reports, as returned by {@link RestClient#getDeliveryReport(String)}
+	 */
+	public void add(DeliveryReport[] reports) {
+		for(DeliveryReport report: reports) {
+			for(Hashtable<String, String> row: report.getRows())
+				add(row.get("custom"), row.get("status"), row.get("last_updated"));
+		}
+	}
+
+	/**
+	 * Add a pushed notification
+	 */
+	public void onDelivery(DeliveryReportRow row) {
+		add(row);
+	}
+
+	/**
+	 * Return the custom tags counted so far, the untagged messages are counted under ""
+	 *
+	 * @return array of custom tags
+	 */
+	public String[] getTags() {
+		return tags.keySet().toArray(new String[0]);
+	}
+
+	/**
+	 * Return the counts of one custom tag
+	 *
+	 * @param custom the custom tag, null for all the rows
+	 * @return the counts at the time of the call, empty if the tag was never counted
+	 */
+	public Snapshot snapshot(String custom) {
+		Counters counters = custom == null ? all : tags.get(custom);
+		return (counters != null ? counters : new Counters()).snapshot(custom, Long.MIN_VALUE, Long.MAX_VALUE, true);
+	}
+
+	/**
+	 * Return the counts of one custom tag over a range of minutes, rows without a valid last update are not counted
+	 *
+	 * @param custom		the custom tag, null for all the rows
+	 * @param fromMinute	first minute of the range, in minutes since the epoch (UTC)
+	 * @param toMinute		minute after the range, in minutes since the epoch (UTC)
+	 * @return the counts at the time of the call, empty if the tag was never counted
+	 */
+	public Snapshot snapshot(String custom, long fromMinute, long toMinute) {
+		Counters counters = custom == null ? all : tags.get(custom);
+		return (counters != null ? counters : new Counters()).snapshot(custom, fromMinute, toMinute, false);
+	}
+
+	/**
+	 * Forget all the counts
+	 */
+	public void reset() {
+		tags.clear();
+		all.clear();
+	}
+
+	/**
+	 * Return the minutes since the epoch of a date like 2017-01-31T10:15:00 or 2017-01-31 10:15:00, taken as UTC
+	 *
+	 * @return the minute, -1 if the date is missing or invalid
+	 */
+	static long epochMinute(String date) {
+		if(date == null || date.length() < 16 || date.charAt(4) != '-' || date.charAt(7) != '-' || date.charAt(13) != ':')
+			return -1;
+		int year = digits(date, 0, 4);
+		int month = digits(date, 5, 7);
+		int day = digits(date, 8, 10);
+		int hour = digits(date, 11, 13);
+		int minute = digits(date, 14, 16);
+		if(year < 0 || month < 0 || day < 0 || hour < 0 || hour > 23 || minute < 0 || minute > 59)
+			return -1;
+		try {
+			return LocalDate.of(year, month, day).toEpochDay() * 1440 + hour * 60 + minute;
+		} catch (DateTimeException e) {
+			return -1;
+		}
+	}
+
+	private static int digits(String text, int from, int to) {
+		int value = 0;
+		for(int i = from; i < to; i++) {
+			char c = text.charAt(i);
+			if(c < '0' || c > '9')
+				return -1;
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	private static void increment(ConcurrentHashMap<String, LongAdder> counts, String key) {
+		LongAdder count = counts.get(key);
+		if(count == null) {
+			LongAdder created = new LongAdder();
+			count = counts.putIfAbsent(key, created);
+			if(count == null)
+				count = created;
+		}
+		count.increment();
+	}
+
+	private static boolean isDelivered(String status) {
+		return "DELIVERED".equalsIgnoreCase(status);
+	}
+
+	private static boolean isFailed(String status) {
+		return "FAILED".equalsIgnoreCase(status) || "EXPIRED".equalsIgnoreCase(status)
+				|| "REJECTED".equalsIgnoreCase(status) || "UNDELIVERABLE".equalsIgnoreCase(status);
+	}
+
+	/**
+	 * Counters of one custom tag, or of all the rows
+	 */
+	private class Counters {
+		final ConcurrentHashMap<String, LongAdder> statuses = new ConcurrentHashMap<String, LongAdder>();
+		final ConcurrentSkipListMap<Long, ConcurrentHashMap<String, LongAdder>> minutes = new ConcurrentSkipListMap<Long, ConcurrentHashMap<String, LongAdder>>();
+
+		void add(String status, long minute) {
+			String key = status != null ? status : "";
+			increment(statuses, key);
+			if(minute < 0)
+				return;
+			ConcurrentHashMap<String, LongAdder> perMinute = minutes.get(minute);
+			if(perMinute == null) {
+				int window = minuteWindow;
+				if(!minutes.isEmpty() && minute <= minutes.lastKey() - window)
+					return;
+				ConcurrentHashMap<String, LongAdder> created = new ConcurrentHashMap<String, LongAdder>();
+				perMinute = minutes.putIfAbsent(minute, created);
+				if(perMinute == null)
+					perMinute = created;
+				// a new latest minute moves the window
+				minutes.headMap(minute - window, true).clear();
+			}
+			increment(perMinute, key);
+		}
+
+		void clear() {
+			statuses.clear();
+			minutes.clear();
+		}
+
+		/**
+		 * Sum the counters, the totals come from the status counters for the whole range, from the minutes otherwise
+		 */
+		Snapshot snapshot(String custom, long fromMinute, long toMinute, boolean whole) {
+			Hashtable<String, Long> counts = new Hashtable<String, Long>();
+			if(whole)
+				sum(statuses, counts);
+			ArrayList<Long> keys = new ArrayList<Long>();
+			ArrayList<Hashtable<String, Long>> values = new ArrayList<Hashtable<String, Long>>();
+			if(fromMinute < toMinute) {
+				for(Map.Entry<Long, ConcurrentHashMap<String, LongAdder>> minute: minutes.subMap(fromMinute, toMinute).entrySet()) {
+					Hashtable<String, Long> perMinute = new Hashtable<String, Long>();
+					sum(minute.getValue(), perMinute);
+					if(!whole)
+						sum(perMinute, counts);
+					keys.add(minute.getKey());
+					values.add(perMinute);
+				}
+			}
+			long[] minuteKeys = new long[keys.size()];
+			for(int i = 0; i < minuteKeys.length; i++)
+				minuteKeys[i] = keys.get(i);
+			@SuppressWarnings("unchecked")
+			Hashtable<String, Long>[] minuteCounts = (Hashtable<String, Long>[]) values.toArray(new Hashtable<?, ?>[values.size()]);
+			return new Snapshot(custom, counts, minuteKeys, minuteCounts);
+		}
+	}
+
+	private static void sum(Map<String, ? extends Number> from, Hashtable<String, Long> to) {
+		for(Map.Entry<String, ? extends Number> count: from.entrySet()) {
+			Long current = to.get(count.getKey());
+			to.put(count.getKey(), (current != null ? current : 0) + count.getValue().longValue());
+		}
+	}
+
+	/**
+	 * Counts of a custom tag at a point in time
+	 */
+	public static class Snapshot {
+		private final String custom;
+		private final Hashtable<String, Long> counts;
+		private final long[] minutes;
+		private final Hashtable<String, Long>[] minuteCounts;
+		private final long[] rowsPerMinute;
+		private final long[] deliveredPerMinute;
+		private final long[] failedPerMinute;
+		private final long total;
+		private final long delivered;
+		private final long failed;
+
+		Snapshot(String custom, Hashtable<String, Long> counts, long[] minutes, Hashtable<String, Long>[] minuteCounts) {
+			this.custom = custom;
+			this.counts = counts;
+			this.minutes = minutes;
+			this.minuteCounts = minuteCounts;
+			long[] totals = count(counts);
+			total = totals[0];
+			delivered = totals[1];
+			failed = totals[2];
+			rowsPerMinute = new long[minutes.length];
+			deliveredPerMinute = new long[minutes.length];
+			failedPerMinute = new long[minutes.length];
+			for(int i = 0; i < minutes.length; i++) {
+				totals = count(minuteCounts[i]);
+				rowsPerMinute[i] = totals[0];
+				deliveredPerMinute[i] = totals[1];
+				failedPerMinute[i] = totals[2];
+			}
+		}
+
+		private static long[] count(Hashtable<String, Long> counts) {
+			long[] totals = new long[3];
+			for(Map.Entry<String, Long> count: counts.entrySet()) {
+				totals[0] += count.getValue();
+				if(isDelivered(count.getKey()))
+					totals[1] += count.getValue();
+				else if(isFailed(count.getKey()))
+					totals[2] += count.getValue();
+			}
+			return totals;
+		}
+
+		/**
+		 * Return the custom tag of the snapshot
+		 *
+		 * @return the custom tag, null for all the rows
+		 */
+		public String getCustom() {
+			return custom;
+		}
+
+		public long getTotal() {
+			return total;
+		}
+
+		/**
+		 * Return the number of rows with a status
+		 *
+		 * @param status the status, e.g. DELIVERED
+		 * @return number of rows
+		 */
+		public long getCount(String status) {
+			Long count = counts.get(status);
+			return count != null ? count : 0;
+		}
+
+		/**
+		 * Return the number of rows per status
+		 *
+		 * @return Hashtable with the status as key and the number of rows as value
+		 */
+		public Hashtable<String, Long> getCounts() {
+			return counts;
+		}
+
+		/**
+		 * Return the share of DELIVERED rows
+		 *
+		 * @return value from 0 to 1, 0 without rows
+		 */
+		public double getDeliveryRate() {
+			return total > 0 ? (double) delivered / total : 0;
+		}
+
+		/**
+		 * Return the share of FAILED, EXPIRED, REJECTED and UNDELIVERABLE rows
+		 *
+		 * @return value from 0 to 1, 0 without rows
+		 */
+		public double getFailureRate() {
+			return total > 0 ? (double) failed / total : 0;
+		}
+
+		/**
+		 * Return the minutes that have rows, in order
+		 *
+		 * @return minutes since the epoch, UTC
+		 */
+		public long[] getMinutes() {
+			return minutes;
+		}
+
+		/**
+		 * Return the number of rows of each minute returned by {@link #getMinutes()}
+		 *
+		 * @return number of rows per minute
+		 */
+		public long[] getRowsPerMinute() {
+			return rowsPerMinute;
+		}
+
+		/**
+		 * Return the number of rows per status of one minute
+		 *
+		 * @param index index of the minute in {@link #getMinutes()}
+		 * @return Hashtable with the status as key and the number of rows as value
+		 */
+		public Hashtable<String, Long> getCounts(int index) {
+			return minuteCounts[index];
+		}
+
+		/**
+		 * Return the share of DELIVERED rows of each minute returned by {@link #getMinutes()}
+		 *
+		 * @return values from 0 to 1 per minute
+		 */
+		public double[] getDeliveryRatePerMinute() {
+			return rates(deliveredPerMinute);
+		}
+
+		/**
+		 * Return the share of FAILED, EXPIRED, REJECTED and UNDELIVERABLE rows of each minute returned by
+		 * {@link #getMinutes()}
+		 *
+		 * @return values from 0 to 1 per minute
+		 */
+		public double[] getFailureRatePerMinute() {
+			return rates(failedPerMinute);
+		}
+
+		private double[] rates(long[] perMinute) {
+			double[] rates = new double[perMinute.length];
+			for(int i = 0; i < rates.length; i++)
+				rates[i] = rowsPerMinute[i] > 0 ? (double) perMinute[i] / rowsPerMinute[i] : 0;
+			return rates;
+		}
+	}
+}
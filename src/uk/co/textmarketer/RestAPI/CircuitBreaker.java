@@ -0,0 +1,289 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CircuitBreaker tracks the outcome of the gateway calls per endpoint and fails fast while an endpoint is down<p>
+ *
+ * Each endpoint (HTTP method and service, e.g. "POST sms") keeps a window of its last calls. When the rate of failed
+ * calls (network errors and HTTP 5xx) or of slow calls in the window goes over a threshold, the endpoint is OPEN and
+ * calls fail with a {@link CircuitBreakerOpenException} without reaching the gateway. After the open duration the
+ * endpoint is HALF_OPEN and lets a few probe calls through, their outcome closes or opens it again.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see RestClient#setCircuitBreaker(CircuitBreaker)
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *{@code
+ *CircuitBreaker breaker = new CircuitBreaker();
+ *breaker.setFailureRateThreshold(50);
+ *breaker.setSlowCallThreshold(2000, 80);
+ *breaker.addListener(new CircuitBreakerListener() {
+ *    public void onStateChange(String endpoint, CircuitBreaker.State from, CircuitBreaker.State to) {
+ *        System.out.println(endpoint + ": " + from + " -> " + to);
+ *    }
+ *});
+ *RestClient tmClient = new RestClient("myuser", "mypass", RestClient.ENV_SANDBOX);
+ *tmClient.setCircuitBreaker(breaker);
+ *}
+ *</pre></blockquote>
+ */
+public class CircuitBreaker {
+	/**
+	 * Circuit breaker state of an endpoint
+	 */
+	public enum State {
+		/** calls go through, outcomes are recorded */
+		CLOSED,
+		/** calls fail fast */
+		OPEN,
+		/** a limited number of probe calls go through */
+		HALF_OPEN
+	}
+
+	final private static int FAILURE = 1;
+	final private static int SLOW = 2;
+
+	private volatile int windowSize = 50;
+	private volatile int minimumCalls = 20;
+	private volatile float failureRateThreshold = 50;
+	private volatile float slowCallRateThreshold = 100;
+	private volatile long slowCallNanos = TimeUnit.SECONDS.toNanos(10);
+	private volatile long openNanos = TimeUnit.SECONDS.toNanos(30);
+	private volatile int halfOpenCalls = 5;
+
+	private final ConcurrentHashMap<String, Endpoint> endpoints = new ConcurrentHashMap<String, Endpoint>();
+	private final CopyOnWriteArrayList<CircuitBreakerListener> listeners = new CopyOnWriteArrayList<CircuitBreakerListener>();
+
+	/**
+	 * Set the number of recent calls used to compute the failure and slow call rates, 50 by default
+	 *
+	 * @param windowSize	number of calls in the window
+	 * @param minimumCalls	minimum number of calls in the window before the rates are checked, 20 by default
+	 */
+	public void setWindow(int windowSize, int minimumCalls) {
+		if(windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize)
+			throw new IllegalArgumentException("invalid window " + windowSize + "/" + minimumCalls);
+		this.windowSize = windowSize;
+		this.minimumCalls = minimumCalls;
+		endpoints.clear();
+	}
+
+	/**
+	 * Set the percentage of failed calls that opens the circuit, 50 by default
+	 *
+	 * @param percentage value from 1 to 100
+	 */
+	public void setFailureRateThreshold(float percentage) {
+		this.failureRateThreshold = percentage;
+	}
+
+	/**
+	 * Set when calls are slow and the percentage of slow calls that opens the circuit, 10 seconds and 100 by default
+	 *
+	 * @param slowCallMillis	duration in milliseconds over which a call is slow
+	 * @param percentage		value from 1 to 100
+	 */
+	public void setSlowCallThreshold(long slowCallMillis, float percentage) {
+		this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+		this.slowCallRateThreshold = percentage;
+	}
+
+	/**
+	 * Set how long the circuit stays open before probing the endpoint, 30 seconds by default
+	 *
+	 * @param openMillis duration in milliseconds
+	 */
+	public void setOpenDuration(long openMillis) {
+		this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+	}
+
+	/**
+	 * Set the number of probe calls let through in the HALF_OPEN state, 5 by default
+	 *
+	 * @param calls number of probe calls
+	 */
+	public void setHalfOpenCalls(int calls) {
+		if(calls < 1)
+			throw new IllegalArgumentException("calls must be at least 1");
+		this.halfOpenCalls = calls;
+	}
+
+	public void addListener(CircuitBreakerListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(CircuitBreakerListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Return the state of an endpoint
+	 *
+	 * @param endpoint the endpoint, e.g. "POST sms"
+	 * @return State of the endpoint, CLOSED for unknown endpoints
+	 */
+	public State getState(String endpoint) {
+		Endpoint state = endpoints.get(endpoint);
+		return state != null ? state.state() : State.CLOSED;
+	}
+
+	/**
+	 * Close the circuit of all the endpoints and forget their recorded calls
+	 */
+	public void reset() {
+		endpoints.clear();
+	}
+
+	/**
+	 * Check if a call to the endpoint can go through, must be followed by {@link #onResult(String, long, boolean)}
+	 *
+	 * @param endpoint the endpoint, e.g. "POST sms"
+	 * @throws CircuitBreakerOpenException if the circuit is open
+	 */
+	public void acquirePermission(String endpoint) throws CircuitBreakerOpenException {
+		endpoint(endpoint).acquire();
+	}
+
+	/**
+	 * Record the outcome of a call to the endpoint
+	 *
+	 * @param endpoint		the endpoint, e.g. "POST sms"
+	 * @param durationNanos	duration of the call in nanoseconds
+	 * @param failed		true if the call failed
+	 */
+	public void onResult(String endpoint, long durationNanos, boolean failed) {
+		int outcome = (failed ? FAILURE : 0) | (durationNanos >= slowCallNanos ? SLOW : 0);
+		endpoint(endpoint).record(outcome);
+	}
+
+	private Endpoint endpoint(String name) {
+		Endpoint endpoint = endpoints.get(name);
+		if(endpoint == null) {
+			Endpoint created = new Endpoint(name, windowSize);
+			endpoint = endpoints.putIfAbsent(name, created);
+			if(endpoint == null)
+				endpoint = created;
+		}
+		return endpoint;
+	}
+
+	private void fireStateChange(String endpoint, State from, State to) {
+		for(CircuitBreakerListener listener: listeners) {
+			try {
+				listener.onStateChange(endpoint, from, to);
+			} catch (RuntimeException e) { }
+		}
+	}
+
+	/**
+	 * State and window of recent calls of one endpoint
+	 */
+	private class Endpoint {
+		private final String name;
+		private final byte[] window;
+		private int position;
+		private int calls;
+		private int failures;
+		private int slow;
+		private State state = State.CLOSED;
+		private long openUntil;
+		private int probesStarted;
+		private int probesDone;
+		private int probeFailures;
+		private int probeSlow;
+
+		Endpoint(String name, int size) {
+			this.name = name;
+			this.window = new byte[size];
+		}
+
+		synchronized State state() {
+			return state;
+		}
+
+		void acquire() throws CircuitBreakerOpenException {
+			State from;
+			synchronized(this) {
+				if(state == State.CLOSED)
+					return;
+				if(state == State.OPEN) {
+					long wait = openUntil - System.nanoTime();
+					if(wait > 0)
+						throw new CircuitBreakerOpenException(name, TimeUnit.NANOSECONDS.toMillis(wait));
+					from = transition(State.HALF_OPEN);
+				}
+				else
+					from = null;
+				if(probesStarted >= halfOpenCalls)
+					throw new CircuitBreakerOpenException(name, 0);
+				probesStarted++;
+			}
+			if(from != null)
+				fireStateChange(name, from, State.HALF_OPEN);
+		}
+
+		void record(int outcome) {
+			State from = null, to = null;
+			synchronized(this) {
+				if(state == State.HALF_OPEN) {
+					probesDone++;
+					if((outcome & FAILURE) != 0)
+						probeFailures++;
+					if((outcome & SLOW) != 0)
+						probeSlow++;
+					if(probesDone >= halfOpenCalls) {
+						to = isOverThreshold(probeFailures, probeSlow, probesDone) ? State.OPEN : State.CLOSED;
+						from = transition(to);
+					}
+				}
+				else if(state == State.CLOSED) {
+					if(calls == window.length) {
+						int old = window[position];
+						if((old & FAILURE) != 0)
+							failures--;
+						if((old & SLOW) != 0)
+							slow--;
+					}
+					else
+						calls++;
+					window[position] = (byte) outcome;
+					position = (position + 1) % window.length;
+					if((outcome & FAILURE) != 0)
+						failures++;
+					if((outcome & SLOW) != 0)
+						slow++;
+					if(calls >= minimumCalls && isOverThreshold(failures, slow, calls)) {
+						to = State.OPEN;
+						from = transition(to);
+					}
+				}
+				// calls finishing while OPEN started before the circuit opened, they are ignored
+			}
+			if(to != null)
+				fireStateChange(name, from, to);
+		}
+
+		private boolean isOverThreshold(int failures, int slow, int calls) {
+			return failures * 100f / calls >= failureRateThreshold || slow * 100f / calls >= slowCallRateThreshold;
+		}
+
+		/**
+		 * Change the state, must hold the lock
+		 */
+		private State transition(State to) {
+			State from = state;
+			state = to;
+			position = calls = failures = slow = 0;
+			probesStarted = probesDone = probeFailures = probeSlow = 0;
+			if(to == State.OPEN)
+				openUntil = System.nanoTime() + openNanos;
+			return from;
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package uk.co.textmarketer.RestAPI;
+
+/**
+ * Listener for the state changes of a CircuitBreaker.<p>
+ *
+ * Listeners are called on the thread of the call that caused the change, they should return quickly.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see CircuitBreaker#addListener(CircuitBreakerListener)
+ */
+public interface CircuitBreakerListener {
+	/**
+	 * Called when the circuit breaker of an endpoint changes state
+	 *
+	 * @param endpoint	the endpoint, e.g. "POST sms"
+	 * @param from		previous state
+	 * @param to		new state
+	 */
+	void onStateChange(String endpoint, CircuitBreaker.State from, CircuitBreaker.State to);
+}
@@ -0,0 +1,39 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown when a call is rejected because the circuit breaker of its endpoint is open.<p>
+ *
+ * The call is not sent to the gateway. RestClient methods wrap it in a RestClientException.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see CircuitBreaker
+ */
+public class CircuitBreakerOpenException extends IOException {
+	private final String endpoint;
+	private final long retryAfterMillis;
+
+	public CircuitBreakerOpenException(String endpoint, long retryAfterMillis) {
+		super("Circuit breaker open for " + endpoint + ", retry after " + retryAfterMillis + "ms");
+		this.endpoint = endpoint;
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * Return the time left before the circuit breaker lets a probe call through
+	 *
+	 * @return time in milliseconds, 0 when waiting for the running probe calls
+	 */
+	public long getRetryAfterMillis() {
+		return retryAfterMillis;
+	}
+
+	private static final long serialVersionUID = -3164752279432409718L;
+}
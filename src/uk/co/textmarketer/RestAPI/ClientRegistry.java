@@ -0,0 +1,429 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ClientRegistry holds the RestClient objects of many accounts, e.g. sub-accounts made with createSubAccount<p>
+ *
+ * All the clients share one transport, and so one connection pool, and the work submitted with
+ * {@link #submit(String, ClientTask)} runs on one shared pool of worker threads. Each account keeps its own request rate
+ * limit and in-flight quota, applied to every call of its client. Submitted work is dispatched round-robin across the
+ * accounts, so a busy account with a big queue can not starve the others.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see RestClient#createSubAccount(String, String, String, String, String, String, boolean)
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *{@code
+ *ClientRegistry registry = new ClientRegistry(RestClient.ENV_PRODUCTION, 32);
+ *registry.register("acme", "acmeuser", "acmepass");
+ *registry.setLimits("acme", 20, 8);
+ *CompletableFuture<Hashtable<String, String>> result = registry.submit("acme", new ClientTask<Hashtable<String, String>>() {
+ *    public Hashtable<String, String> call(RestClient client) throws Exception {
+ *        return client.sendSMS("Hello SMS World!", "447777123123", "Acme");
+ *    }
+ *});
+ *}
+ *</pre></blockquote>
+ */
+public class ClientRegistry {
+	/**
+	 * Work to run with the client of an account
+	 *
+	 * @param <T> result type
+	 */
+	public interface ClientTask<T> {
+		T call(RestClient client) throws Exception;
+	}
+
+	private final String baseUrl;
+	private final RestTransport transport;
+	private final ExecutorService executor;
+	private final int workers;
+	private final ConcurrentHashMap<String, Tenant> tenants = new ConcurrentHashMap<String, Tenant>();
+
+	private volatile double defaultRate = 0;
+	private volatile int defaultMaxInFlight = 16;
+	private volatile int maxQueued = 100000;
+
+	// fair scheduler state, guarded by lock
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+	private final ArrayList<Tenant> ring = new ArrayList<Tenant>();
+	private int cursor;
+	private int running;
+	private boolean closed;
+	private final Thread dispatcher;
+
+	/**
+	 * Constructor for the ClientRegistry class, sharing an {@link HttpClientTransport}.<p>
+	 *
+	 * @param env		possible values RestClient.ENV_SANDBOX or RestClient.ENV_PRODUCTION
+	 * @param workers	number of worker threads running the submitted work
+	 */
+	public ClientRegistry(boolean env, int workers) {
+		this(env ? RestClient.PROD_URL : RestClient.SAND_URL, new HttpClientTransport(), workers);
+	}
+
+	/**
+	 * Constructor for the ClientRegistry class.<p>
+	 *
+	 * @param baseUrl	base URL of the REST services
+	 * @param transport	transport shared by all the clients
+	 * @param workers	number of worker threads running the submitted work
+	 */
+	public ClientRegistry(String baseUrl, RestTransport transport, int workers) {
+		if(workers < 1)
+			throw new IllegalArgumentException("workers must be at least 1");
+		this.baseUrl = baseUrl;
+		this.transport = transport;
+		this.workers = workers;
+		final AtomicInteger count = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "tm-registry-worker-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.dispatcher = new Thread(new Runnable() {
+			public void run() {
+				dispatchLoop();
+			}
+		}, "tm-registry-dispatcher");
+		this.dispatcher.setDaemon(true);
+		this.dispatcher.start();
+	}
+
+	/**
+	 * Set the limits used for the accounts registered afterwards
+	 *
+	 * @param requestsPerSecond	maximum request rate of an account, 0 for no limit (default)
+	 * @param maxInFlight		maximum concurrent calls of an account, 16 by default
+	 */
+	public void setDefaultLimits(double requestsPerSecond, int maxInFlight) {
+		if(maxInFlight < 1)
+			throw new IllegalArgumentException("maxInFlight must be at least 1");
+		this.defaultRate = requestsPerSecond;
+		this.defaultMaxInFlight = maxInFlight;
+	}
+
+	/**
+	 * Set the maximum number of submitted tasks waiting per account, 100000 by default
+	 *
+	 * @param maxQueued maximum number of waiting tasks, more are rejected
+	 */
+	public void setMaxQueued(int maxQueued) {
+		this.maxQueued = maxQueued;
+	}
+
+	/**
+	 * Register an account, creating its client
+	 *
+	 * @param account	key of the account, e.g. the account_id or the username
+	 * @param username	API Gateway Username of the account
+	 * @param password	API Gateway Password of the account
+	 * @return the RestClient of the account
+	 */
+	public RestClient register(String account, String username, String password) {
+		RestClient client = new RestClient(username, password, baseUrl);
+		client.setTransport(transport);
+		Tenant tenant = new Tenant(account, client, new TenantLimiter(defaultRate, defaultMaxInFlight));
+		client.addInterceptor(tenant.limiter);
+		if(tenants.putIfAbsent(account, tenant) != null)
+			throw new IllegalArgumentException("Account " + account + " is already registered");
+		return client;
+	}
+
+	/**
+	 * Remove an account, its waiting tasks are cancelled
+	 *
+	 * @param account key of the account
+	 * @return boolean TRUE if the account was registered
+	 */
+	public boolean unregister(String account) {
+		Tenant tenant = tenants.remove(account);
+		if(tenant == null)
+			return false;
+		lock.lock();
+		try {
+			ring.remove(tenant);
+			for(Task<?> task: tenant.queue)
+				task.future.cancel(false);
+			tenant.queue.clear();
+		} finally {
+			lock.unlock();
+		}
+		return true;
+	}
+
+	/**
+	 * Return the client of an account
+	 *
+	 * @param account key of the account
+	 * @return RestClient of the account, null if not registered
+	 */
+	public RestClient getClient(String account) {
+		Tenant tenant = tenants.get(account);
+		return tenant != null ? tenant.client : null;
+	}
+
+	public Set<String> getAccounts() {
+		return tenants.keySet();
+	}
+
+	/**
+	 * Set the limits of an account
+	 *
+	 * @param account			key of the account
+	 * @param requestsPerSecond	maximum request rate, 0 for no limit
+	 * @param maxInFlight		maximum concurrent calls
+	 */
+	public void setLimits(String account, double requestsPerSecond, int maxInFlight) {
+		if(maxInFlight < 1)
+			throw new IllegalArgumentException("maxInFlight must be at least 1");
+		Tenant tenant = tenant(account);
+		tenant.limiter.setRate(requestsPerSecond);
+		tenant.limiter.setMaxInFlight(maxInFlight);
+		signal();
+	}
+
+	/**
+	 * Return the number of submitted tasks of an account waiting to run
+	 *
+	 * @param account key of the account
+	 * @return number of waiting tasks
+	 */
+	public int getQueued(String account) {
+		Tenant tenant = tenant(account);
+		lock.lock();
+		try {
+			return tenant.queue.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Submit work for an account, it runs on the shared workers when it is the account turn
+	 *
+	 * @param account	key of the account
+	 * @param task		work to run with the client of the account
+	 * @return CompletableFuture completed with the task result
+	 * @throws RejectedExecutionException if the registry is closed or the account queue is full
+	 */
+	public <T> CompletableFuture<T> submit(String account, final ClientTask<T> task) {
+		return submit(account, task, null);
+	}
+
+	/**
+	 * Submit work for an account with a deadline, the time spent queued counts against it.<p>
+	 * A task whose deadline has passed when it leaves the queue does not run, its future completes with a
+	 * RestClientException caused by a {@link DeadlineExceededException}. The calls made by the task share its deadline.
+	 *
+	 * @param account	key of the account
+	 * @param task		work to run with the client of the account
+	 * @param deadline	deadline of the task, null for none
+	 * @return CompletableFuture completed with the task result
+	 * @throws RejectedExecutionException if the registry is closed or the account queue is full
+	 */
+	public <T> CompletableFuture<T> submit(String account, final ClientTask<T> task, Deadline deadline) {
+		final Tenant tenant = tenant(account);
+		Task<T> queued = new Task<T>(tenant, new Callable<T>() {
+			public T call() throws Exception {
+				return task.call(tenant.client);
+			}
+		}, deadline);
+		lock.lock();
+		try {
+			if(closed)
+				throw new RejectedExecutionException("ClientRegistry is closed");
+			if(tenant.queue.size() >= maxQueued) {
+				GatewayEvents.poolExhausted("ClientRegistry queue of " + account, maxQueued);
+				throw new RejectedExecutionException("Queue of account " + account + " is full");
+			}
+			if(tenant.queue.isEmpty() && !ring.contains(tenant))
+				ring.add(tenant);
+			tenant.queue.add(queued);
+			changed.signal();
+		} finally {
+			lock.unlock();
+		}
+		return queued.future;
+	}
+
+	/**
+	 * Stop the registry, waiting tasks are cancelled and running tasks finish
+	 */
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			for(Tenant tenant: ring) {
+				for(Task<?> task: tenant.queue)
+					task.future.cancel(false);
+				tenant.queue.clear();
+			}
+			ring.clear();
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		executor.shutdown();
+	}
+
+	/**
+	 * Wait for the running tasks to finish after {@link #close()}
+	 *
+	 * @param timeout	maximum time to wait
+	 * @param unit		unit of the timeout
+	 * @return boolean TRUE if all the tasks finished
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+
+	private Tenant tenant(String account) {
+		Tenant tenant = tenants.get(account);
+		if(tenant == null)
+			throw new IllegalArgumentException("Account " + account + " is not registered");
+		return tenant;
+	}
+
+	private void signal() {
+		lock.lock();
+		try {
+			changed.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Dispatch one task per account in turn, skipping the accounts over their limits
+	 */
+	private void dispatchLoop() {
+		lock.lock();
+		try {
+			while(!closed) {
+				long waitNanos = Long.MAX_VALUE;
+				boolean dispatched = false;
+				for(int i = 0, n = ring.size(); i < n && running < workers && !ring.isEmpty(); i++) {
+					if(cursor >= ring.size())
+						cursor = 0;
+					Tenant tenant = ring.get(cursor);
+					if(tenant.queue.isEmpty()) {
+						ring.remove(cursor);
+						continue;
+					}
+					cursor++;
+					if(tenant.running >= tenant.limiter.getMaxInFlight())
+						continue;
+					long wait = tenant.limiter.nanosUntilPermit();
+					if(wait > 0) {
+						waitNanos = Math.min(waitNanos, wait);
+						continue;
+					}
+					Task<?> task = tenant.queue.poll();
+					tenant.running++;
+					running++;
+					executor.execute(task);
+					dispatched = true;
+				}
+				if(!dispatched) {
+					if(waitNanos == Long.MAX_VALUE)
+						changed.await();
+					else
+						changed.awaitNanos(waitNanos);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RejectedExecutionException e) {
+			// executor shut down
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void finished(Tenant tenant) {
+		lock.lock();
+		try {
+			tenant.running--;
+			running--;
+			changed.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Registered account, its client and its waiting tasks
+	 */
+	private class Tenant {
+		final String account;
+		final RestClient client;
+		final TenantLimiter limiter;
+		final ArrayDeque<Task<?>> queue = new ArrayDeque<Task<?>>();
+		int running;
+
+		Tenant(String account, RestClient client, TenantLimiter limiter) {
+			this.account = account;
+			this.client = client;
+			this.limiter = limiter;
+		}
+
+		@Override
+		public String toString() {
+			return account;
+		}
+	}
+
+	/**
+	 * Submitted task, completes its future and frees its account slot
+	 */
+	private class Task<T> implements Runnable {
+		final Tenant tenant;
+		final Callable<T> callable;
+		final Deadline deadline;
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+
+		Task(Tenant tenant, Callable<T> callable, Deadline deadline) {
+			this.tenant = tenant;
+			this.callable = callable;
+			this.deadline = deadline;
+		}
+
+		public void run() {
+			Deadline.CURRENT.set(deadline);
+			try {
+				if(deadline != null && deadline.isExpired())
+					future.completeExceptionally(new RestClientException(new DeadlineExceededException("Deadline exceeded while queued")));
+				else if(!future.isDone())
+					future.complete(callable.call());
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			} finally {
+				Deadline.CURRENT.remove();
+				finished(tenant);
+			}
+		}
+	}
+}
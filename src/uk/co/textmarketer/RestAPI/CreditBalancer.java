@@ -0,0 +1,376 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CreditBalancer keeps the sub-accounts of a ClientRegistry topped up with credits from a source account<p>
+ *
+ * At every poll the balancer reads the balance of the watched accounts in parallel and estimates their burn rate
+ * from the credits_used of their recent sendSMS calls (or from the balance drop when the sends do not go through the
+ * registry client). When the balance left after the lead time would fall under the minimum balance, credits are
+ * transferred from the source account, in whole batches, to bring the account back to its target balance. Transfers
+ * run in parallel too.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see RestClient#transferCreditsToAccount(int, String)
+ * @see RestClient#transferCreditsToUser(int, String, String)
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *RestClient master = new RestClient("myuser", "mypass", RestClient.ENV_PRODUCTION);
+ *ClientRegistry registry = new ClientRegistry(RestClient.ENV_PRODUCTION, 16);
+ *registry.register("acme", "acmeuser", "acmepass");
+ *CreditBalancer balancer = new CreditBalancer(master, registry, 8);
+ *balancer.setThresholds(500, 5000, 100);
+ *balancer.watchAccount("acme", "902");
+ *balancer.start(60, TimeUnit.SECONDS);
+ *</pre></blockquote>
+ */
+public class CreditBalancer {
+	final private static double EWMA_ALPHA = 0.3;
+
+	private final RestClient source;
+	private final ClientRegistry registry;
+	private final ExecutorService executor;
+	private final ScheduledExecutorService scheduler;
+	private final ConcurrentHashMap<String, Watched> watched = new ConcurrentHashMap<String, Watched>();
+	private final CopyOnWriteArrayList<CreditBalancerListener> listeners = new CopyOnWriteArrayList<CreditBalancerListener>();
+	private ScheduledFuture<?> polling;
+	private volatile boolean closed;
+
+	private volatile int minBalance = 100;
+	private volatile int targetBalance = 1000;
+	private volatile int batchSize = 100;
+	private volatile long leadTimeSeconds = 300;
+
+	/**
+	 * Constructor for the CreditBalancer class.<p>
+	 *
+	 * @param source		client of the account the credits are transferred from
+	 * @param registry		registry with the clients of the watched accounts
+	 * @param parallelism	maximum number of balance reads and transfers running at the same time
+	 */
+	public CreditBalancer(RestClient source, ClientRegistry registry, int parallelism) {
+		this.source = source;
+		this.registry = registry;
+		final AtomicInteger count = new AtomicInteger();
+		ThreadFactory threads = new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "tm-credit-balancer-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		this.executor = Executors.newFixedThreadPool(parallelism, threads);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(threads);
+	}
+
+	/**
+	 * Set the balance thresholds
+	 *
+	 * @param minBalance	minimum balance an account should keep after the lead time
+	 * @param targetBalance	balance an account is topped up to
+	 * @param batchSize		transfers are a multiple of this number of credits
+	 */
+	public void setThresholds(int minBalance, int targetBalance, int batchSize) {
+		if(targetBalance <= minBalance || batchSize < 1)
+			throw new IllegalArgumentException("targetBalance must be over minBalance and batchSize at least 1");
+		this.minBalance = minBalance;
+		this.targetBalance = targetBalance;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Set how far ahead the burn rate is used to predict the balance, 300 seconds by default
+	 *
+	 * @param seconds lead time in seconds, should cover at least one poll interval
+	 */
+	public void setLeadTime(long seconds) {
+		this.leadTimeSeconds = seconds;
+	}
+
+	public void addListener(CreditBalancerListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(CreditBalancerListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Watch an account, topping it up with transferCreditsToAccount
+	 *
+	 * @param account		key of the account in the registry
+	 * @param accountNumber	account number used as transfer target
+	 */
+	public void watchAccount(String account, String accountNumber) {
+		watch(new Watched(account, accountNumber, null, null));
+	}
+
+	/**
+	 * Watch an account, topping it up with transferCreditsToUser
+	 *
+	 * @param account			key of the account in the registry
+	 * @param targetUsername	username of the account
+	 * @param targetPassword	password of the account
+	 */
+	public void watchUser(String account, String targetUsername, String targetPassword) {
+		watch(new Watched(account, null, targetUsername, targetPassword));
+	}
+
+	/**
+	 * Stop watching an account
+	 *
+	 * @param account key of the account in the registry
+	 */
+	public void unwatch(String account) {
+		Watched removed = watched.remove(account);
+		if(removed != null) {
+			RestClient client = registry.getClient(account);
+			if(client != null)
+				client.removeInterceptor(removed.usage);
+		}
+	}
+
+	/**
+	 * Return the estimated burn rate of an account
+	 *
+	 * @param account key of the account in the registry
+	 * @return credits used per second, 0 when not known yet
+	 */
+	public double getBurnRate(String account) {
+		Watched state = watched.get(account);
+		return state != null ? state.burnRate : 0;
+	}
+
+	/**
+	 * Start balancing at a fixed interval, again after {@link #stop()}
+	 *
+	 * @param interval	time between two polls
+	 * @param unit		unit of the interval
+	 * @throws IllegalStateException if the balancer is closed
+	 */
+	public synchronized void start(long interval, TimeUnit unit) {
+		if(closed)
+			throw new IllegalStateException("CreditBalancer is closed");
+		if(polling != null)
+			return;
+		polling = scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				balance();
+			}
+		}, 0, interval, unit);
+	}
+
+	/**
+	 * Stop balancing at the interval, running transfers finish. The balancer can be started again.
+	 */
+	public synchronized void stop() {
+		if(polling != null)
+			polling.cancel(false);
+		polling = null;
+	}
+
+	/**
+	 * Stop balancing and release the threads of the balancer, running transfers finish. The balancer can not be used
+	 * afterwards.
+	 */
+	public synchronized void close() {
+		stop();
+		closed = true;
+		scheduler.shutdown();
+		executor.shutdown();
+	}
+
+	/**
+	 * Read the balances and make the needed transfers now
+	 *
+	 * @return Hashtable with the number of credits transferred to each account
+	 * @throws IllegalStateException if the balancer is closed
+	 */
+	public Hashtable<String, Integer> balance() {
+		if(closed)
+			throw new IllegalStateException("CreditBalancer is closed");
+		Hashtable<String, Integer> transferred = new Hashtable<String, Integer>();
+		List<Future<Integer>> checks = new ArrayList<Future<Integer>>();
+		List<Watched> accounts = new ArrayList<Watched>(watched.values());
+		for(final Watched account: accounts) {
+			checks.add(executor.submit(new Callable<Integer>() {
+				public Integer call() {
+					return balance(account);
+				}
+			}));
+		}
+		for(int i = 0; i < checks.size(); i++) {
+			try {
+				int quantity = checks.get(i).get();
+				if(quantity > 0)
+					transferred.put(accounts.get(i).account, quantity);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException e) {
+				fireError(accounts.get(i).account, e);
+			}
+		}
+		return transferred;
+	}
+
+	private void watch(Watched account) {
+		RestClient client = registry.getClient(account.account);
+		if(client == null)
+			throw new IllegalArgumentException("Account " + account.account + " is not registered");
+		if(watched.putIfAbsent(account.account, account) != null)
+			throw new IllegalArgumentException("Account " + account.account + " is already watched");
+		client.addInterceptor(account.usage);
+	}
+
+	/**
+	 * Read the balance of one account and top it up if needed
+	 *
+	 * @return credits transferred
+	 */
+	private int balance(Watched account) {
+		RestClient client = registry.getClient(account.account);
+		if(client == null)
+			return 0;
+		int quantity;
+		synchronized(account) {
+			int balance;
+			try {
+				// a balance read as 0 would transfer real credits, a response without one is an error
+				balance = client.readCredits(true);
+			} catch (RestClientException e) {
+				fireError(account.account, e);
+				return 0;
+			}
+			long now = System.nanoTime();
+			account.updateBurnRate(balance, now);
+			double predicted = balance - account.burnRate * leadTimeSeconds;
+			if(predicted >= minBalance)
+				return 0;
+			double needed = targetBalance - predicted;
+			quantity = (int) Math.ceil(needed / batchSize) * batchSize;
+			try {
+				Hashtable<String, String> result = account.accountNumber != null
+						? source.transferCreditsToAccount(quantity, account.accountNumber)
+						: source.transferCreditsToUser(quantity, account.username, account.password);
+				account.transferred += quantity;
+				fireTransfer(account.account, quantity, result);
+			} catch (RestClientException e) {
+				fireError(account.account, e);
+				return 0;
+			}
+		}
+		return quantity;
+	}
+
+	private void fireTransfer(String account, int quantity, Hashtable<String, String> result) {
+		for(CreditBalancerListener listener: listeners) {
+			try {
+				listener.onTransfer(account, quantity, result);
+			} catch (RuntimeException e) { }
+		}
+	}
+
+	private void fireError(String account, Exception e) {
+		for(CreditBalancerListener listener: listeners) {
+			try {
+				listener.onError(account, e);
+			} catch (RuntimeException ex) { }
+		}
+	}
+
+	/**
+	 * Watched account, with its usage counter and burn rate estimate
+	 */
+	private static class Watched {
+		final String account;
+		final String accountNumber;
+		final String username;
+		final String password;
+		final UsageInterceptor usage = new UsageInterceptor();
+		volatile double burnRate;
+		int lastBalance = -1;
+		long lastPoll;
+		int transferred;
+
+		Watched(String account, String accountNumber, String username, String password) {
+			this.account = account;
+			this.accountNumber = accountNumber;
+			this.username = username;
+			this.password = password;
+		}
+
+		/**
+		 * Update the burn rate from the credits used, or the balance drop, since the last poll
+		 */
+		void updateBurnRate(int balance, long now) {
+			long used = usage.used.sumThenReset();
+			if(lastBalance >= 0) {
+				double seconds = (now - lastPoll) / 1e9;
+				long dropped = lastBalance + transferred - balance;
+				double rate = Math.max(used, dropped) / Math.max(seconds, 0.001);
+				burnRate = burnRate == 0 ? rate : EWMA_ALPHA * rate + (1 - EWMA_ALPHA) * burnRate;
+			}
+			lastBalance = balance;
+			lastPoll = now;
+			transferred = 0;
+		}
+	}
+
+	/**
+	 * Interceptor adding up the credits_used of the sendSMS responses of an account
+	 */
+	static class UsageInterceptor implements RestInterceptor {
+		final LongAdder used = new LongAdder();
+
+		public RestResponse intercept(Chain chain) throws Exception {
+			RestResponse response = chain.proceed(chain.request());
+			if(response.isSuccessful() && "sms".equals(chain.request().getService()) && "POST".equals(chain.request().getMethod()))
+				used.add(creditsUsed(response.getBody()));
+			return response;
+		}
+
+		private static int creditsUsed(String xml) {
+			int start = xml.indexOf("<credits_used>");
+			if(start < 0)
+				return 0;
+			start += "<credits_used>".length();
+			int value = 0;
+			for(int i = start; i < xml.length(); i++) {
+				char c = xml.charAt(i);
+				if(c < '0' || c > '9')
+					break;
+				value = value * 10 + (c - '0');
+			}
+			return value;
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder("CreditBalancer [");
+		for(Map.Entry<String, Watched> account: watched.entrySet())
+			str.append(account.getKey()).append('=').append(String.format("%.2f", account.getValue().burnRate)).append("/s ");
+		return str.append(']').toString();
+	}
+}
@@ -0,0 +1,32 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.util.Hashtable;
+
+/**
+ * Listener for the credit transfers made by a CreditBalancer.<p>
+ *
+ * Listeners are called on the balancer threads, they should return quickly.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see CreditBalancer#addListener(CreditBalancerListener)
+ */
+public interface CreditBalancerListener {
+	/**
+	 * Called after credits were transferred to an account
+	 *
+	 * @param account	key of the account in the ClientRegistry
+	 * @param quantity	number of credits transferred
+	 * @param result	Hash table with keys: source_credits_before, source_credits_after, target_credits_before and target_credits_after
+	 */
+	void onTransfer(String account, int quantity, Hashtable<String, String> result);
+
+	/**
+	 * Called when the balance of an account could not be read or the transfer failed
+	 *
+	 * @param account	key of the account in the ClientRegistry
+	 * @param e			the error
+	 */
+	void onError(String account, Exception e);
+}
@@ -0,0 +1,115 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deadline Class represent the point in time by which a call to the TM Rest API Gateway must be answered<p>
+ *
+ * A deadline is carried by the request through the interceptors, the queues and the transport. Time spent waiting
+ * in a SendScheduler lane, a ClientRegistry queue, a rate or concurrency limit, for a hedge request or for the gateway
+ * all count against the same budget, and the call is abandoned with a {@link DeadlineExceededException} as soon as
+ * the budget is gone.<p>
+ *
+ * Deadlines use the monotonic clock of {@link System#nanoTime()}, they are not affected by changes of the wall clock.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see RestClient#setTimeouts(int, int, long)
+ * @see SmsRequest#setDeadline(Deadline)
+ * @see ClientRegistry#submit(String, ClientRegistry.ClientTask, Deadline)
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *RestClient tmClient = new RestClient("myuser", "mypass", RestClient.ENV_SANDBOX);
+ *SmsRequest request = new SmsRequest("Your code is 1234", "447777123123", "Shop");
+ *request.setDeadline(Deadline.after(5, TimeUnit.SECONDS));
+ *tmClient.sendSMS(request);
+ *</pre></blockquote>
+ */
+public final class Deadline {
+	// longest deadline, far enough from the overflow of nanoTime
+	final private static long MAX_NANOS = Long.MAX_VALUE / 4;
+
+	/**
+	 * Deadline of the work running on the current thread, e.g. a ClientRegistry task
+	 */
+	static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<Deadline>();
+
+	private final long nanoTime;
+
+	private Deadline(long nanoTime) {
+		this.nanoTime = nanoTime;
+	}
+
+	/**
+	 * Create a deadline after a duration from now
+	 *
+	 * @param duration	time left before the deadline
+	 * @param unit		unit of the duration
+	 * @return Deadline object
+	 */
+	public static Deadline after(long duration, TimeUnit unit) {
+		long nanos = Math.max(0, Math.min(MAX_NANOS, unit.toNanos(duration)));
+		return new Deadline(System.nanoTime() + nanos);
+	}
+
+	/**
+	 * Return the time left before the deadline
+	 *
+	 * @param unit unit of the result
+	 * @return time left, 0 if the deadline has passed
+	 */
+	public long timeRemaining(TimeUnit unit) {
+		return unit.convert(remainingNanos(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Return true if the deadline has passed
+	 *
+	 * @return boolean TRUE if there is no time left
+	 */
+	public boolean isExpired() {
+		return nanoTime - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * Return the earliest of this deadline and another one
+	 *
+	 * @param other the other deadline, can be null
+	 * @return the earliest Deadline
+	 */
+	public Deadline min(Deadline other) {
+		return other == null || nanoTime - other.nanoTime <= 0 ? this : other;
+	}
+
+	@Override
+	public String toString() {
+		return "Deadline [remaining=" + timeRemaining(TimeUnit.MILLISECONDS) + "ms]";
+	}
+
+	long remainingNanos() {
+		return Math.max(0, nanoTime - System.nanoTime());
+	}
+
+	/**
+	 * Throw a DeadlineExceededException if the deadline has passed
+	 *
+	 * @param what the step of the call, for the exception message
+	 */
+	void check(String what) throws DeadlineExceededException {
+		if(isExpired())
+			throw new DeadlineExceededException("Deadline exceeded " + what);
+	}
+
+	/**
+	 * Cap a socket timeout to the time left, the JDK reads a timeout of 0 as no timeout
+	 *
+	 * @param millis the configured timeout in milliseconds, 0 for none
+	 * @return the timeout to use, at least 1 millisecond
+	 */
+	int capTimeout(int millis) {
+		long remaining = Math.max(1, timeRemaining(TimeUnit.MILLISECONDS));
+		return millis > 0 && millis < remaining ? millis : (int) Math.min(remaining, Integer.MAX_VALUE);
+	}
+}
@@ -0,0 +1,27 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown when a call is abandoned because its deadline has passed.<p>
+ *
+ * The deadline can pass while the call waits in a queue or for a limit, in which case it is not sent to the gateway,
+ * or while it waits for the gateway. RestClient methods wrap it in a RestClientException.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see Deadline
+ */
+public class DeadlineExceededException extends IOException {
+
+	public DeadlineExceededException(String message) {
+		super(message);
+	}
+
+	public DeadlineExceededException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	private static final long serialVersionUID = 5209834471629013185L;
+}
@@ -0,0 +1,21 @@
+package uk.co.textmarketer.RestAPI;
+
+/**
+ * Listener for the delivery notifications pushed to a DeliveryCallbackReceiver.<p>
+ *
+ * Listeners are called one notification at a time on the dispatch thread of the receiver, in the order the
+ * notifications were received. They should return quickly, the notifications wait in the receiver queue meanwhile.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see DeliveryCallbackReceiver#addListener(DeliveryCallbackListener)
+ */
+public interface DeliveryCallbackListener {
+	/**
+	 * Called for each notification, duplicates are not delivered
+	 *
+	 * @param row the notification, its report is the path of the receiver
+	 */
+	void onDelivery(DeliveryReportRow row);
+}
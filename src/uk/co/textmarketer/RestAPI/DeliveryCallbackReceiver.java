@@ -0,0 +1,559 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * DeliveryCallbackReceiver is an embedded HTTP server receiving the delivery notifications pushed by the gateway,
+ * instead of polling {@link RestClient#getDeliveryReport(String)}<p>
+ *
+ * A notification is a form url encoded request with the message_id, mobile_number, status, custom and last_updated
+ * fields, sent as the query string of a GET or the body of a POST. A POST body can carry many notifications, one per
+ * line. The request threads decode the fields straight from the request bytes, drop the notifications already
+ * received (same message_id and status) and add the others to a lock-free queue. A single dispatch thread hands them
+ * to the listeners, so a slow listener never holds up the senders.<p>
+ *
+ * The request is answered 200 once its notifications are queued. When the queue is full it is answered 503, nothing
+ * is queued and the sender can push the notifications again later. A POST body over the maximum size, 1MB by default,
+ * is answered 413 without being read.<p>
+ *
+ * The receiver listens on the loopback address unless another address is given, e.g.
+ * {@code new InetSocketAddress(8090)} for all the interfaces. Anyone who can reach it can push notifications, so when
+ * it is exposed set a secret with {@link #setSecret(String)} and add it to the callback URL given to the gateway as a
+ * token parameter, e.g. https://example.com/callbacks/delivery?token=s3cret. Requests without the token are answered
+ * 403.<p>
+ *
+ * The JDK server sends its small answers without TCP_NODELAY, so a sender pushing one notification per request waits
+ * for its own delayed ACK on each one. Start the JVM with -Dsun.net.httpserver.nodelay=true for such senders, the
+ * receiver does not change that JVM-wide setting itself.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see DeliveryCallbackListener
+ * @see StubServer#setCallbackUrl(String)
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *{@code
+ *DeliveryCallbackReceiver receiver = new DeliveryCallbackReceiver(new InetSocketAddress(8090), 4);
+ *receiver.setSecret("s3cret");
+ *receiver.addListener(new DeliveryCallbackListener() {
+ *    public void onDelivery(DeliveryReportRow row) {
+ *        System.out.println(row.getMessageId() + ": " + row.getStatus());
+ *    }
+ *});
+ *receiver.start();
+ *}
+ *</pre></blockquote>
+ */
+public class DeliveryCallbackReceiver {
+	/**
+	 * Report name of the rows received by the receiver, they are not part of a delivery report
+	 */
+	final public static String REPORT_NAME = "callback";
+
+	final private static byte[] MESSAGE_ID = ascii("message_id");
+	final private static byte[] MOBILE_NUMBER = ascii("mobile_number");
+	final private static byte[] STATUS = ascii("status");
+	final private static byte[] CUSTOM = ascii("custom");
+	final private static byte[] LAST_UPDATED = ascii("last_updated");
+	final private static byte[] TOKEN = ascii("token");
+
+	private final InetSocketAddress address;
+	private final int threads;
+	private final ConcurrentLinkedQueue<DeliveryReportRow> queue = new ConcurrentLinkedQueue<DeliveryReportRow>();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicLong received = new AtomicLong();
+	private final AtomicLong duplicates = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong refused = new AtomicLong();
+	private final ConcurrentHashMap<String, Boolean> seen = new ConcurrentHashMap<String, Boolean>();
+	private final AtomicLong seenCount = new AtomicLong();
+
+	private volatile DeliveryCallbackListener[] listeners = new DeliveryCallbackListener[0];
+	private volatile AtomicReferenceArray<String> seenRing = new AtomicReferenceArray<String>(100000);
+	private volatile int capacity = 100000;
+	private volatile int maxBodySize = 1 << 20;
+	private volatile byte[] secret;
+	private volatile boolean running;
+	private String path = "/callbacks/delivery";
+	private HttpServer server;
+	private ExecutorService executor;
+	private Thread dispatcher;
+
+	/**
+	 * Constructor for the DeliveryCallbackReceiver class, listening on the loopback address with 4 request threads.<p>
+	 *
+	 * @param port port to listen on, 0 for any free port
+	 */
+	public DeliveryCallbackReceiver(int port) {
+		this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 4);
+	}
+
+	/**
+	 * Constructor for the DeliveryCallbackReceiver class.<p>
+	 *
+	 * @param address	address and port to listen on
+	 * @param threads	number of threads decoding the requests
+	 */
+	public DeliveryCallbackReceiver(InetSocketAddress address, int threads) {
+		if(threads < 1)
+			throw new IllegalArgumentException("threads must be at least 1");
+		this.address = address;
+		this.threads = threads;
+	}
+
+	/**
+	 * Set the path the notifications are pushed to, "/callbacks/delivery" by default
+	 *
+	 * @param path path of the callback URL, set before {@link #start()}
+	 */
+	public synchronized void setPath(String path) {
+		if(server != null)
+			throw new IllegalStateException("DeliveryCallbackReceiver is started");
+		this.path = path.startsWith("/") ? path : "/" + path;
+	}
+
+	/**
+	 * Set the maximum number of notifications waiting for the listeners, 100000 by default
+	 *
+	 * @param capacity maximum number of queued notifications
+	 */
+	public void setQueueCapacity(int capacity) {
+		if(capacity < 1)
+			throw new IllegalArgumentException("capacity must be at least 1");
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Set the maximum size of a POST body, 1MB by default, bigger requests are answered 413
+	 *
+	 * @param bytes maximum body size in bytes
+	 */
+	public void setMaxBodySize(int bytes) {
+		if(bytes < 1)
+			throw new IllegalArgumentException("bytes must be at least 1");
+		this.maxBodySize = bytes;
+	}
+
+	/**
+	 * Set the secret the requests must carry as their token query parameter, requests without it are answered 403
+	 *
+	 * @param secret the shared secret, null to accept every request (default)
+	 */
+	public void setSecret(String secret) {
+		this.secret = secret != null ? secret.getBytes(StandardCharsets.UTF_8) : null;
+	}
+
+	/**
+	 * Set the number of recent notifications remembered to drop duplicates, 100000 by default
+	 *
+	 * @param size number of remembered notifications, set before {@link #start()}
+	 */
+	public synchronized void setDedupeWindow(int size) {
+		if(size < 1)
+			throw new IllegalArgumentException("size must be at least 1");
+		if(server != null)
+			throw new IllegalStateException("DeliveryCallbackReceiver is started");
+		this.seenRing = new AtomicReferenceArray<String>(size);
+	}
+
+	/**
+	 * Add a listener called for each new notification
+	 *
+	 * @param listener the listener to add
+	 */
+	public synchronized void addListener(DeliveryCallbackListener listener) {
+		if(listener == null)
+			throw new IllegalArgumentException("listener can not be null");
+		DeliveryCallbackListener[] current = listeners;
+		DeliveryCallbackListener[] updated = new DeliveryCallbackListener[current.length + 1];
+		System.arraycopy(current, 0, updated, 0, current.length);
+		updated[current.length] = listener;
+		listeners = updated;
+	}
+
+	/**
+	 * Remove a listener
+	 *
+	 * @param listener the listener to remove
+	 * @return boolean TRUE if the listener was removed
+	 */
+	public synchronized boolean removeListener(DeliveryCallbackListener listener) {
+		DeliveryCallbackListener[] current = listeners;
+		for(int i = 0; i < current.length; i++) {
+			if(current[i] == listener) {
+				DeliveryCallbackListener[] updated = new DeliveryCallbackListener[current.length - 1];
+				System.arraycopy(current, 0, updated, 0, i);
+				System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+				listeners = updated;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Start the server and the dispatch thread
+	 *
+	 * @throws IOException if the port can not be opened
+	 */
+	public synchronized void start() throws IOException {
+		if(server != null)
+			return;
+		server = HttpServer.create(address, 1024);
+		server.createContext(path, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					exchange.sendResponseHeaders(receive(exchange), -1);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		final AtomicInteger count = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "tm-callback-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server.setExecutor(executor);
+		running = true;
+		dispatcher = new Thread(new Runnable() {
+			public void run() {
+				dispatch();
+			}
+		}, "tm-callback-dispatch");
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+		server.start();
+	}
+
+	/**
+	 * Stop the server, the notifications already queued are still delivered to the listeners
+	 */
+	public synchronized void stop() {
+		if(server == null)
+			return;
+		server.stop(0);
+		executor.shutdownNow();
+		running = false;
+		LockSupport.unpark(dispatcher);
+		server = null;
+	}
+
+	public synchronized int getPort() {
+		return server != null ? server.getAddress().getPort() : address.getPort();
+	}
+
+	/**
+	 * Return the number of notifications received, duplicates included
+	 *
+	 * @return number of received notifications
+	 */
+	public long getReceivedCount() {
+		return received.get();
+	}
+
+	/**
+	 * Return the number of duplicate notifications dropped
+	 *
+	 * @return number of duplicates
+	 */
+	public long getDuplicateCount() {
+		return duplicates.get();
+	}
+
+	/**
+	 * Return the number of notifications answered 503 because the queue was full
+	 *
+	 * @return number of rejected notifications
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	/**
+	 * Return the number of requests answered 403 or 413, for a wrong token or a body over the maximum size
+	 *
+	 * @return number of refused requests
+	 */
+	public long getRefusedCount() {
+		return refused.get();
+	}
+
+	/**
+	 * Return the number of notifications waiting for the listeners
+	 *
+	 * @return number of queued notifications
+	 */
+	public int getQueued() {
+		return queued.get();
+	}
+
+	/**
+	 * Decode and queue the notifications of a request
+	 *
+	 * @return HTTP status of the answer
+	 */
+	private int receive(HttpExchange exchange) throws IOException {
+		String method = exchange.getRequestMethod();
+		if(!"POST".equals(method) && !"GET".equals(method))
+			return 405;
+		String query = exchange.getRequestURI().getRawQuery();
+		byte[] queryData = query != null ? query.getBytes(StandardCharsets.ISO_8859_1) : new byte[0];
+		byte[] expected = secret;
+		if(expected != null && !MessageDigest.isEqual(expected, token(queryData))) {
+			refused.incrementAndGet();
+			return 403;
+		}
+		byte[] data = queryData;
+		if("POST".equals(method)) {
+			data = readBody(exchange, maxBodySize);
+			if(data == null) {
+				refused.incrementAndGet();
+				return 413;
+			}
+		}
+
+		DeliveryReportRow[] rows = new DeliveryReportRow[8];
+		int count = 0;
+		int start = 0;
+		while(start < data.length) {
+			int end = start;
+			while(end < data.length && data[end] != '\n')
+				end++;
+			int lineEnd = end > start && data[end - 1] == '\r' ? end - 1 : end;
+			if(lineEnd > start) {
+				DeliveryReportRow row = decode(data, start, lineEnd);
+				if(row == null)
+					return 400;
+				if(count == rows.length) {
+					DeliveryReportRow[] grown = new DeliveryReportRow[count * 2];
+					System.arraycopy(rows, 0, grown, 0, count);
+					rows = grown;
+				}
+				rows[count++] = row;
+			}
+			start = end + 1;
+		}
+		if(count == 0)
+			return 400;
+		received.addAndGet(count);
+		// the whole request is queued or refused, a refused request can be pushed again without being a duplicate
+		if(queued.addAndGet(count) > capacity) {
+			queued.addAndGet(-count);
+			rejected.addAndGet(count);
+			GatewayEvents.poolExhausted("DeliveryCallbackReceiver queue", capacity);
+			return 503;
+		}
+		for(int i = 0; i < count; i++) {
+			if(firstSeen(rows[i].getMessageId() + '/' + rows[i].getStatus()))
+				queue.offer(rows[i]);
+			else {
+				queued.decrementAndGet();
+				duplicates.incrementAndGet();
+			}
+		}
+		LockSupport.unpark(dispatcher);
+		return 200;
+	}
+
+	/**
+	 * Read a POST body up to a maximum size
+	 *
+	 * @return the body, null if it is bigger than the maximum
+	 */
+	private static byte[] readBody(HttpExchange exchange, int max) throws IOException {
+		String length = exchange.getRequestHeaders().getFirst("Content-Length");
+		try {
+			if(length != null && Long.parseLong(length.trim()) > max)
+				return null;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		InputStream in = exchange.getRequestBody();
+		byte[] data = new byte[Math.min(max + 1, 8192)];
+		int size = 0;
+		while(true) {
+			if(size == data.length) {
+				if(size > max)
+					return null;
+				data = Arrays.copyOf(data, (int) Math.min((long) max + 1, size * 2L));
+			}
+			int read = in.read(data, size, data.length - size);
+			if(read < 0)
+				break;
+			size += read;
+		}
+		return size > max ? null : Arrays.copyOf(data, size);
+	}
+
+	/**
+	 * Return the value of the token parameter of a query string
+	 *
+	 * @return the decoded token bytes, empty without a token
+	 */
+	private static byte[] token(byte[] query) {
+		int start = 0;
+		while(start < query.length) {
+			int end = start;
+			while(end < query.length && query[end] != '&')
+				end++;
+			int eq = start;
+			while(eq < end && query[eq] != '=')
+				eq++;
+			if(eq < end && matches(query, start, eq, TOKEN))
+				return value(query, eq + 1, end).getBytes(StandardCharsets.UTF_8);
+			start = end + 1;
+		}
+		return new byte[0];
+	}
+
+	/**
+	 * Remember a notification key in a bounded window, the oldest key is forgotten
+	 *
+	 * @return boolean TRUE if the key was not in the window
+	 */
+	private boolean firstSeen(String key) {
+		if(seen.putIfAbsent(key, Boolean.TRUE) != null)
+			return false;
+		AtomicReferenceArray<String> ring = seenRing;
+		String evicted = ring.getAndSet((int) (seenCount.getAndIncrement() % ring.length()), key);
+		if(evicted != null)
+			seen.remove(evicted);
+		return true;
+	}
+
+	/**
+	 * Deliver the queued notifications to the listeners, parking while the queue is empty
+	 */
+	private void dispatch() {
+		while(true) {
+			DeliveryReportRow row = queue.poll();
+			if(row == null) {
+				if(!running)
+					return;
+				LockSupport.park(this);
+				continue;
+			}
+			queued.decrementAndGet();
+			for(DeliveryCallbackListener listener: listeners) {
+				try {
+					listener.onDelivery(row);
+				} catch (RuntimeException e) {
+					// a failing listener does not stop the others
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decode one form url encoded notification
+	 *
+	 * @return the notification, null without a message_id
+	 */
+	private DeliveryReportRow decode(byte[] data, int from, int to) {
+		String messageId = null;
+		String mobileNumber = "";
+		String status = "";
+		String custom = "";
+		String lastUpdated = "";
+		int start = from;
+		while(start < to) {
+			int end = start;
+			int eq = -1;
+			while(end < to && data[end] != '&') {
+				if(eq < 0 && data[end] == '=')
+					eq = end;
+				end++;
+			}
+			if(eq > start) {
+				if(matches(data, start, eq, MESSAGE_ID))
+					messageId = value(data, eq + 1, end);
+				else if(matches(data, start, eq, MOBILE_NUMBER))
+					mobileNumber = value(data, eq + 1, end);
+				else if(matches(data, start, eq, STATUS))
+					status = value(data, eq + 1, end);
+				else if(matches(data, start, eq, CUSTOM))
+					custom = value(data, eq + 1, end);
+				else if(matches(data, start, eq, LAST_UPDATED))
+					lastUpdated = value(data, eq + 1, end);
+			}
+			start = end + 1;
+		}
+		if(messageId == null || messageId.length() == 0)
+			return null;
+		return new DeliveryReportRow(REPORT_NAME, lastUpdated, mobileNumber, messageId, status, custom);
+	}
+
+	private static boolean matches(byte[] data, int from, int to, byte[] name) {
+		if(to - from != name.length)
+			return false;
+		for(int i = 0; i < name.length; i++) {
+			if(data[from + i] != name[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Decode a form url encoded value, without copying when nothing is escaped
+	 */
+	private static String value(byte[] data, int from, int to) {
+		int i = from;
+		while(i < to && data[i] != '%' && data[i] != '+')
+			i++;
+		if(i == to)
+			return new String(data, from, to - from, StandardCharsets.UTF_8);
+		byte[] decoded = new byte[to - from];
+		int length = 0;
+		for(i = from; i < to; i++) {
+			byte b = data[i];
+			if(b == '+')
+				decoded[length++] = ' ';
+			else if(b == '%' && i + 2 < to && hex(data[i + 1]) >= 0 && hex(data[i + 2]) >= 0) {
+				decoded[length++] = (byte) (hex(data[i + 1]) << 4 | hex(data[i + 2]));
+				i += 2;
+			}
+			else
+				decoded[length++] = b;
+		}
+		return new String(decoded, 0, length, StandardCharsets.UTF_8);
+	}
+
+	private static int hex(byte b) {
+		if(b >= '0' && b <= '9')
+			return b - '0';
+		if(b >= 'A' && b <= 'F')
+			return b - 'A' + 10;
+		if(b >= 'a' && b <= 'f')
+			return b - 'a' + 10;
+		return -1;
+	}
+
+	private static byte[] ascii(String name) {
+		return name.getBytes(StandardCharsets.US_ASCII);
+	}
+}
@@ -5,6 +5,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Hashtable;
+import java.util.List;
 
 /**
  * DeliveryReport Class represent a delivery report status from a sent SMS message<p>
@@ -86,6 +87,13 @@ public class DeliveryReport {
 		rows.add(row);
 	}
 	
+	/**
+	 * Add rows already built, e.g. by a parallel parse
+	 */
+	void addRows(List<Hashtable<String, String>> added) {
+		rows.addAll(added);
+	}
+	
 	/**
 	 * Return report rows for this Delivery Report
 	 * 
@@ -0,0 +1,259 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Reader of the binary delivery report files written by {@link DeliveryReportExporter#exportBinary}<p>
+ *
+ * Each block of rows is memory-mapped and the columns are read in place, so an archive is scanned at the speed of
+ * the disk or the page cache. The statuses, report names and custom tags come from the dictionaries and are not
+ * copied. The mobile numbers, message IDs and last update dates are only decoded when their getter is called.<p>
+ *
+ * The reader is not thread safe.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *DeliveryReportArchive archive = new DeliveryReportArchive(Paths.get("reports-20170301.tmdr"));
+ *try {
+ *    int delivered = 0;
+ *    while(archive.next()) {
+ *        if("DELIVERED".equals(archive.getStatus()))
+ *            delivered++;
+ *    }
+ *    System.out.println(delivered + " delivered");
+ *} finally {
+ *    archive.close();
+ *}
+ *</pre></blockquote>
+ */
+public class DeliveryReportArchive implements Closeable {
+	private final FileChannel channel;
+	private final long size;
+	private final ArrayList<String> reportNames = new ArrayList<String>();
+	private final ArrayList<String> statusNames = new ArrayList<String>();
+	private final ArrayList<String> customNames = new ArrayList<String>();
+	private final HashMap<Integer, String> otherDates = new HashMap<Integer, String>();
+	private long position;
+	private MappedByteBuffer block;
+	private int rows;
+	private int row = -1;
+	private int reportsOffset;
+	private int statusesOffset;
+	private int customsOffset;
+	private int datesOffset;
+	private int mobileEndsOffset;
+	private int mobileDataOffset;
+	private int messageEndsOffset;
+	private int messageDataOffset;
+
+	/**
+	 * Constructor for the DeliveryReportArchive class.<p>
+	 *
+	 * @param file the binary file to read
+	 * @throws IOException if the file can not be read or is not a delivery report archive
+	 */
+	public DeliveryReportArchive(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			size = channel.size();
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, 8));
+			if(size < 8 || header.getInt(0) != DeliveryReportExporter.MAGIC)
+				throw new IOException("Not a delivery report archive: " + file);
+			if(header.getInt(4) != DeliveryReportExporter.VERSION)
+				throw new IOException("Unsupported delivery report archive version " + header.getInt(4) + ": " + file);
+			position = 8;
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Move to the next row
+	 *
+	 * @return boolean TRUE if a row was read, FALSE at the end of the archive
+	 * @throws IOException if the archive can not be read
+	 */
+	public boolean next() throws IOException {
+		if(++row < rows)
+			return true;
+		while(position < size) {
+			mapBlock();
+			if(rows > 0) {
+				row = 0;
+				return true;
+			}
+		}
+		row = rows;
+		return false;
+	}
+
+	private void mapBlock() throws IOException {
+		MappedByteBuffer length = channel.map(FileChannel.MapMode.READ_ONLY, position, 4);
+		int blockSize = length.getInt(0);
+		if(blockSize < 4 || position + 4 + blockSize > size)
+			throw new IOException("Truncated delivery report archive at " + position);
+		block = channel.map(FileChannel.MapMode.READ_ONLY, position + 4, blockSize);
+		position += 4 + blockSize;
+
+		rows = block.getInt();
+		readDictionary(reportNames);
+		readDictionary(statusNames);
+		readDictionary(customNames);
+		reportsOffset = block.position();
+		statusesOffset = reportsOffset + 4 * rows;
+		customsOffset = statusesOffset + 2 * rows;
+		datesOffset = customsOffset + 4 * rows;
+		mobileEndsOffset = datesOffset + 8 * rows;
+		mobileDataOffset = mobileEndsOffset + 4 * rows;
+		messageEndsOffset = mobileDataOffset + (rows > 0 ? block.getInt(mobileDataOffset - 4) : 0);
+		messageDataOffset = messageEndsOffset + 4 * rows;
+		block.position(messageDataOffset + (rows > 0 ? block.getInt(messageDataOffset - 4) : 0));
+		otherDates.clear();
+		int count = block.getInt();
+		for(int i = 0; i < count; i++) {
+			int index = block.getInt();
+			otherDates.put(index, readString());
+		}
+	}
+
+	private void readDictionary(ArrayList<String> names) {
+		int count = block.getInt();
+		for(int i = 0; i < count; i++)
+			names.add(readString());
+	}
+
+	private String readString() {
+		byte[] bytes = new byte[block.getShort() & 0xFFFF];
+		block.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private String string(int endsOffset, int dataOffset) {
+		int start = row == 0 ? 0 : block.getInt(endsOffset + 4 * (row - 1));
+		int end = block.getInt(endsOffset + 4 * row);
+		byte[] bytes = new byte[end - start];
+		// the block position is free once the block header is read
+		block.position(dataOffset + start);
+		block.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Return the name of the report holding the current row
+	 *
+	 * @return report name
+	 */
+	public String getReport() {
+		return reportNames.get(block.getInt(reportsOffset + 4 * row));
+	}
+
+	/**
+	 * Return the dictionary code of the status of the current row, see {@link #getStatusName(int)}
+	 *
+	 * @return status code, from 0 to the number of distinct statuses read so far
+	 */
+	public int getStatusCode() {
+		return block.getShort(statusesOffset + 2 * row) & 0xFFFF;
+	}
+
+	/**
+	 * Return the status for a dictionary code
+	 *
+	 * @param code status code returned by {@link #getStatusCode()}
+	 * @return the status, e.g. DELIVERED
+	 */
+	public String getStatusName(int code) {
+		return statusNames.get(code);
+	}
+
+	public String getStatus() {
+		return statusNames.get(getStatusCode());
+	}
+
+	public String getCustom() {
+		return customNames.get(block.getInt(customsOffset + 4 * row));
+	}
+
+	/**
+	 * Return the last update date of the current row as seconds since the epoch, the date being read as UTC
+	 *
+	 * @return seconds since the epoch, or Long.MIN_VALUE if the date was not in the gateway format
+	 */
+	public long getLastUpdatedEpochSecond() {
+		long date = block.getLong(datesOffset + 8 * row);
+		return date == Long.MIN_VALUE ? date : date >> 1;
+	}
+
+	/**
+	 * Return the last update date of the current row, as sent by the gateway
+	 *
+	 * @return date string, e.g. 2017-03-01 10:15:30
+	 */
+	public String getLastUpdated() {
+		long date = block.getLong(datesOffset + 8 * row);
+		if(date == Long.MIN_VALUE)
+			return otherDates.get(row);
+		LocalDateTime time = LocalDateTime.ofEpochSecond(date >> 1, 0, ZoneOffset.UTC);
+		char[] chars = new char[19];
+		digits(chars, 0, time.getYear(), 4);
+		chars[4] = '-';
+		digits(chars, 5, time.getMonthValue(), 2);
+		chars[7] = '-';
+		digits(chars, 8, time.getDayOfMonth(), 2);
+		chars[10] = (date & 1) != 0 ? 'T' : ' ';
+		digits(chars, 11, time.getHour(), 2);
+		chars[13] = ':';
+		digits(chars, 14, time.getMinute(), 2);
+		chars[16] = ':';
+		digits(chars, 17, time.getSecond(), 2);
+		return new String(chars);
+	}
+
+	private static void digits(char[] chars, int start, int value, int count) {
+		for(int i = start + count - 1; i >= start; i--) {
+			chars[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+	}
+
+	public String getMobileNumber() {
+		return string(mobileEndsOffset, mobileDataOffset);
+	}
+
+	public String getMessageId() {
+		return string(messageEndsOffset, messageDataOffset);
+	}
+
+	/**
+	 * Return a copy of the current row
+	 *
+	 * @return DeliveryReportRow object
+	 */
+	public DeliveryReportRow getRow() {
+		return new DeliveryReportRow(getReport(), getLastUpdated(), getMobileNumber(), getMessageId(), getStatus(), getCustom());
+	}
+
+	/**
+	 * Close the archive, the mapped blocks are released by the garbage collector
+	 */
+	public void close() throws IOException {
+		block = null;
+		rows = 0;
+		channel.close();
+	}
+}
@@ -0,0 +1,442 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Exporter writing delivery report rows to CSV or to a compact binary file, as they are read from the response<p>
+ *
+ * The rows go from the DeliveryReportReader to the file through a large direct buffer and a FileChannel, so no report
+ * is held in memory. The binary format stores the rows in blocks of columns, with the report names, statuses and
+ * custom tags encoded with a dictionary and the last update dates as numbers. It is read back with
+ * {@link DeliveryReportArchive}.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see RestClient#openDeliveryReport(String, String)
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *RestClient tmClient = new RestClient("myuser", "mypass", RestClient.ENV_SANDBOX);
+ *DeliveryReportExporter exporter = new DeliveryReportExporter();
+ *DeliveryReportReader reader = tmClient.openDeliveryReport("all", null);
+ *try {
+ *    long rows = exporter.exportBinary(reader, Paths.get("reports-20170301.tmdr"));
+ *    System.out.println("Archived " + rows + " rows");
+ *} finally {
+ *    reader.close();
+ *}
+ *</pre></blockquote>
+ */
+public class DeliveryReportExporter {
+	final static int MAGIC = 0x544D4452;
+	final static int VERSION = 1;
+	final private static int DEFAULT_BUFFER_SIZE = 1 << 20;
+	final private static String CSV_HEADER = "report,last_updated,mobile_number,message_id,status,custom\n";
+
+	private final int bufferSize;
+	private volatile int rowsPerBlock = 65536;
+
+	/**
+	 * Constructor for the DeliveryReportExporter class, with 1MB buffers.
+	 */
+	public DeliveryReportExporter() {
+		this(DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructor for the DeliveryReportExporter class.<p>
+	 *
+	 * @param bufferSize size in bytes of the direct buffer used for each export
+	 */
+	public DeliveryReportExporter(int bufferSize) {
+		if(bufferSize < 1024)
+			throw new IllegalArgumentException("bufferSize must be at least 1024");
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Set the number of rows of a block of the binary format, 65536 by default
+	 *
+	 * @param rowsPerBlock number of rows held in memory before they are written as columns
+	 */
+	public void setRowsPerBlock(int rowsPerBlock) {
+		if(rowsPerBlock < 1)
+			throw new IllegalArgumentException("rowsPerBlock must be at least 1");
+		this.rowsPerBlock = rowsPerBlock;
+	}
+
+	/**
+	 * Write the remaining rows of a reader to a CSV file, with the columns report, last_updated, mobile_number,
+	 * message_id, status and custom
+	 *
+	 * @param reader	the rows to export, the reader is not closed
+	 * @param file		the file to create or replace
+	 * @return number of exported rows
+	 * @throws IOException if the file can not be written
+	 * @throws XMLStreamException if the report XML is invalid
+	 * @throws ParseException if the last update date of a report is invalid
+	 */
+	public long exportCsv(DeliveryReportReader reader, Path file) throws IOException, XMLStreamException, ParseException {
+		long rows = 0;
+		ChannelOutput out = new ChannelOutput(file, bufferSize);
+		try {
+			out.putString(CSV_HEADER);
+			while(reader.next()) {
+				putCsv(out, reader.getReport().getName());
+				out.put((byte) ',');
+				putCsv(out, reader.getLastUpdated());
+				out.put((byte) ',');
+				putCsv(out, reader.getMobileNumber());
+				out.put((byte) ',');
+				putCsv(out, reader.getMessageId());
+				out.put((byte) ',');
+				putCsv(out, reader.getStatus());
+				out.put((byte) ',');
+				putCsv(out, reader.getCustom());
+				out.put((byte) '\n');
+				rows++;
+			}
+		} finally {
+			out.close();
+		}
+		return rows;
+	}
+
+	private static void putCsv(ChannelOutput out, String value) throws IOException {
+		boolean quote = false;
+		for(int i = 0; i < value.length() && !quote; i++) {
+			char c = value.charAt(i);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if(!quote) {
+			out.putString(value);
+			return;
+		}
+		out.put((byte) '"');
+		out.putString(value.replace("\"", "\"\""));
+		out.put((byte) '"');
+	}
+
+	/**
+	 * Write the remaining rows of a reader to a binary file, read back with {@link DeliveryReportArchive}
+	 *
+	 * @param reader	the rows to export, the reader is not closed
+	 * @param file		the file to create or replace
+	 * @return number of exported rows
+	 * @throws IOException if the file can not be written
+	 * @throws XMLStreamException if the report XML is invalid
+	 * @throws ParseException if the last update date of a report is invalid
+	 */
+	public long exportBinary(DeliveryReportReader reader, Path file) throws IOException, XMLStreamException, ParseException {
+		long rows = 0;
+		ChannelOutput out = new ChannelOutput(file, bufferSize);
+		try {
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+			BlockWriter block = new BlockWriter(rowsPerBlock);
+			while(reader.next()) {
+				block.add(reader);
+				rows++;
+				if(block.rows == rowsPerBlock)
+					block.write(out);
+			}
+			if(block.rows > 0)
+				block.write(out);
+		} finally {
+			out.close();
+		}
+		return rows;
+	}
+
+	/**
+	 * Encode a last update date as seconds since the epoch, with the date/time separator in the lowest bit
+	 *
+	 * @param value date formatted as yyyy-MM-dd'T'HH:mm:ss or yyyy-MM-dd HH:mm:ss
+	 * @return the encoded date, or Long.MIN_VALUE if the value has another format
+	 */
+	static long encodeDate(String value) {
+		if(value.length() != 19 || value.charAt(4) != '-' || value.charAt(7) != '-' || value.charAt(13) != ':' || value.charAt(16) != ':')
+			return Long.MIN_VALUE;
+		char separator = value.charAt(10);
+		if(separator != 'T' && separator != ' ')
+			return Long.MIN_VALUE;
+		int year = digits(value, 0, 4);
+		int month = digits(value, 5, 2);
+		int day = digits(value, 8, 2);
+		int hour = digits(value, 11, 2);
+		int minute = digits(value, 14, 2);
+		int second = digits(value, 17, 2);
+		if(year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0)
+			return Long.MIN_VALUE;
+		try {
+			long epoch = LocalDateTime.of(year, month, day, hour, minute, second).toEpochSecond(ZoneOffset.UTC);
+			return epoch << 1 | (separator == 'T' ? 1 : 0);
+		} catch (DateTimeException e) {
+			return Long.MIN_VALUE;
+		}
+	}
+
+	private static int digits(String value, int start, int count) {
+		int result = 0;
+		for(int i = start; i < start + count; i++) {
+			char c = value.charAt(i);
+			if(c < '0' || c > '9')
+				return -1;
+			result = result * 10 + c - '0';
+		}
+		return result;
+	}
+
+	/**
+	 * Rows of the current block, kept as columns until the block is full
+	 */
+	private static class BlockWriter {
+		private final int[] reports;
+		private final short[] statuses;
+		private final int[] customs;
+		private final long[] dates;
+		private final StringColumn mobileNumbers;
+		private final StringColumn messageIds;
+		private final Dictionary reportNames = new Dictionary(Integer.MAX_VALUE);
+		private final Dictionary statusNames = new Dictionary(0xFFFF);
+		private final Dictionary customNames = new Dictionary(Integer.MAX_VALUE);
+		private final ArrayList<Object[]> otherDates = new ArrayList<Object[]>();
+		private int rows;
+
+		BlockWriter(int capacity) {
+			reports = new int[capacity];
+			statuses = new short[capacity];
+			customs = new int[capacity];
+			dates = new long[capacity];
+			mobileNumbers = new StringColumn(capacity, 16);
+			messageIds = new StringColumn(capacity, 16);
+		}
+
+		void add(DeliveryReportReader reader) throws IOException {
+			reports[rows] = reportNames.code(reader.getReport().getName());
+			statuses[rows] = (short) statusNames.code(reader.getStatus());
+			customs[rows] = customNames.code(reader.getCustom());
+			String lastUpdated = reader.getLastUpdated();
+			dates[rows] = encodeDate(lastUpdated);
+			if(dates[rows] == Long.MIN_VALUE)
+				otherDates.add(new Object[] {rows, lastUpdated.getBytes(StandardCharsets.UTF_8)});
+			mobileNumbers.add(rows, reader.getMobileNumber());
+			messageIds.add(rows, reader.getMessageId());
+			rows++;
+		}
+
+		void write(ChannelOutput out) throws IOException {
+			long size = 4 + reportNames.pendingBytes() + statusNames.pendingBytes() + customNames.pendingBytes()
+					+ rows * (4L + 2 + 4 + 8) + mobileNumbers.bytes(rows) + messageIds.bytes(rows) + 4;
+			for(Object[] date: otherDates)
+				size += 4 + 2 + ((byte[]) date[1]).length;
+			if(size > Integer.MAX_VALUE)
+				throw new IOException("Block too large, reduce the rows per block");
+			out.putInt((int) size);
+			out.putInt(rows);
+			reportNames.writePending(out);
+			statusNames.writePending(out);
+			customNames.writePending(out);
+			for(int i = 0; i < rows; i++)
+				out.putInt(reports[i]);
+			for(int i = 0; i < rows; i++)
+				out.putShort(statuses[i]);
+			for(int i = 0; i < rows; i++)
+				out.putInt(customs[i]);
+			for(int i = 0; i < rows; i++)
+				out.putLong(dates[i]);
+			mobileNumbers.write(out, rows);
+			messageIds.write(out, rows);
+			out.putInt(otherDates.size());
+			for(Object[] date: otherDates) {
+				out.putInt((Integer) date[0]);
+				out.putBytes((byte[]) date[1]);
+			}
+			otherDates.clear();
+			rows = 0;
+		}
+	}
+
+	/**
+	 * Dictionary of a column, the values added since the last block are written at the start of the next block
+	 */
+	private static class Dictionary {
+		private final HashMap<String, Integer> codes = new HashMap<String, Integer>();
+		private final ArrayList<byte[]> pending = new ArrayList<byte[]>();
+		private final int maxCodes;
+
+		Dictionary(int maxCodes) {
+			this.maxCodes = maxCodes;
+		}
+
+		int code(String value) throws IOException {
+			Integer code = codes.get(value);
+			if(code == null) {
+				if(codes.size() >= maxCodes)
+					throw new IOException("Too many distinct values for the dictionary: " + value);
+				code = codes.size();
+				codes.put(value, code);
+				pending.add(value.getBytes(StandardCharsets.UTF_8));
+			}
+			return code;
+		}
+
+		long pendingBytes() {
+			long size = 4;
+			for(byte[] value: pending)
+				size += 2 + value.length;
+			return size;
+		}
+
+		void writePending(ChannelOutput out) throws IOException {
+			out.putInt(pending.size());
+			for(byte[] value: pending)
+				out.putBytes(value);
+			pending.clear();
+		}
+	}
+
+	/**
+	 * Column of strings stored as end offsets followed by the UTF-8 bytes
+	 */
+	private static class StringColumn {
+		private final int[] ends;
+		private byte[] data;
+		private int length;
+
+		StringColumn(int capacity, int averageLength) {
+			ends = new int[capacity];
+			data = new byte[capacity * averageLength];
+		}
+
+		void add(int row, String value) {
+			int count = value.length();
+			if(length + count * 3 > data.length)
+				data = Arrays.copyOf(data, Math.max(data.length * 2, length + count * 3));
+			for(int i = 0; i < count; i++) {
+				char c = value.charAt(i);
+				if(c >= 0x80) {
+					byte[] bytes = value.substring(i).getBytes(StandardCharsets.UTF_8);
+					System.arraycopy(bytes, 0, data, length, bytes.length);
+					length += bytes.length;
+					break;
+				}
+				data[length++] = (byte) c;
+			}
+			ends[row] = length;
+		}
+
+		long bytes(int rows) {
+			return 4L * rows + length;
+		}
+
+		void write(ChannelOutput out, int rows) throws IOException {
+			for(int i = 0; i < rows; i++)
+				out.putInt(ends[i]);
+			out.put(data, 0, length);
+			length = 0;
+		}
+	}
+
+	/**
+	 * FileChannel output through a direct buffer
+	 */
+	private static class ChannelOutput implements Closeable {
+		private final FileChannel channel;
+		private final ByteBuffer buffer;
+
+		ChannelOutput(Path file, int bufferSize) throws IOException {
+			channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+			buffer = ByteBuffer.allocateDirect(bufferSize);
+		}
+
+		private void ensure(int bytes) throws IOException {
+			if(buffer.remaining() < bytes)
+				flush();
+		}
+
+		void put(byte value) throws IOException {
+			ensure(1);
+			buffer.put(value);
+		}
+
+		void putShort(short value) throws IOException {
+			ensure(2);
+			buffer.putShort(value);
+		}
+
+		void putInt(int value) throws IOException {
+			ensure(4);
+			buffer.putInt(value);
+		}
+
+		void putLong(long value) throws IOException {
+			ensure(8);
+			buffer.putLong(value);
+		}
+
+		/**
+		 * Write a byte array prefixed by its length as an unsigned short
+		 */
+		void putBytes(byte[] value) throws IOException {
+			if(value.length > 0xFFFF)
+				throw new IOException("Value too long: " + value.length + " bytes");
+			putShort((short) value.length);
+			put(value, 0, value.length);
+		}
+
+		void put(byte[] value, int offset, int length) throws IOException {
+			while(length > 0) {
+				ensure(1);
+				int count = Math.min(length, buffer.remaining());
+				buffer.put(value, offset, count);
+				offset += count;
+				length -= count;
+			}
+		}
+
+		void putString(String value) throws IOException {
+			int count = value.length();
+			for(int i = 0; i < count; i++) {
+				char c = value.charAt(i);
+				if(c >= 0x80) {
+					byte[] bytes = value.substring(i).getBytes(StandardCharsets.UTF_8);
+					put(bytes, 0, bytes.length);
+					return;
+				}
+				put((byte) c);
+			}
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while(buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+
+		public void close() throws IOException {
+			try {
+				flush();
+			} finally {
+				channel.close();
+			}
+		}
+	}
+}
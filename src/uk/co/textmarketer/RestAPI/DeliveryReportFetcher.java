@@ -0,0 +1,262 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetcher downloading and parsing many delivery reports at the same time<p>
+ *
+ * The names returned by {@link RestClient#getDeliveryReports()}, or the given names, are fetched by at most
+ * parallelism workers, each one downloading and parsing one report at a time. A report that fails does not stop the
+ * others: its error is kept in the result, or passed to the listener.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see RestClient#getDeliveryReport(String)
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *{@code
+ *RestClient tmClient = new RestClient("myuser", "mypass", RestClient.ENV_SANDBOX);
+ *DeliveryReportFetcher fetcher = new DeliveryReportFetcher(tmClient, 8);
+ *DeliveryReportFetcher.Result result = fetcher.fetchAll();
+ *for(DeliveryReport report: result.getReports())
+ *    System.out.println(report + ": " + report.getRows().length + " rows");
+ *for(Map.Entry<String, RestClientException> failure: result.getFailures().entrySet())
+ *    System.out.println(failure.getKey() + " failed: " + failure.getValue().getMessage());
+ *}
+ *</pre></blockquote>
+ */
+public class DeliveryReportFetcher {
+	private final RestClient client;
+	private final int parallelism;
+	private final Executor executor;
+	private final ExecutorService ownPool;
+
+	/**
+	 * Constructor for the DeliveryReportFetcher class, with its own pool of up to parallelism daemon threads.<p>
+	 * Idle threads of the pool stop after a minute, {@link #close()} stops the pool.
+	 *
+	 * @param client		client used to fetch the reports
+	 * @param parallelism	maximum number of reports fetched at the same time
+	 */
+	public DeliveryReportFetcher(RestClient client, int parallelism) {
+		this(client, parallelism, newPool(parallelism), true);
+	}
+
+	/**
+	 * Constructor for the DeliveryReportFetcher class.<p>
+	 *
+	 * @param client		client used to fetch the reports
+	 * @param parallelism	maximum number of reports fetched at the same time
+	 * @param executor		executor running the workers, each fetch uses parallelism tasks
+	 */
+	public DeliveryReportFetcher(RestClient client, int parallelism, Executor executor) {
+		this(client, parallelism, executor, false);
+	}
+
+	private DeliveryReportFetcher(RestClient client, int parallelism, Executor executor, boolean owned) {
+		if(parallelism < 1)
+			throw new IllegalArgumentException("parallelism must be at least 1");
+		this.client = client;
+		this.parallelism = parallelism;
+		this.executor = executor;
+		this.ownPool = owned ? (ExecutorService) executor : null;
+	}
+
+	private static ExecutorService newPool(int parallelism) {
+		if(parallelism < 1)
+			throw new IllegalArgumentException("parallelism must be at least 1");
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "tm-report-fetcher-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/**
+	 * Stop the pool created by the fetcher, the running fetches finish. A given executor is not stopped.
+	 */
+	public void close() {
+		if(ownPool != null)
+			ownPool.shutdown();
+	}
+
+	/**
+	 * Fetch every delivery report listed by {@link RestClient#getDeliveryReports()}
+	 *
+	 * @return the fetched reports and the failures
+	 * @throws RestClientException if the list of reports can not be fetched
+	 * @throws InterruptedException if the calling thread is interrupted while waiting
+	 */
+	public Result fetchAll() throws RestClientException, InterruptedException {
+		return fetchAll(client.getDeliveryReports());
+	}
+
+	/**
+	 * Fetch the given delivery reports
+	 *
+	 * @param names names of the reports to fetch
+	 * @return the fetched reports and the failures
+	 * @throws InterruptedException if the calling thread is interrupted while waiting
+	 */
+	public Result fetchAll(String[] names) throws InterruptedException {
+		final Result result = new Result(names);
+		fetchAll(names, new DeliveryReportListener() {
+			public void onReport(String name, DeliveryReport[] reports) {
+				result.put(name, reports);
+			}
+
+			public void onFailure(String name, RestClientException e) {
+				result.fail(name, e);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Fetch the given delivery reports, passing each one to the listener as soon as it is parsed
+	 *
+	 * @param names		names of the reports to fetch
+	 * @param listener	listener called for each report, exceptions thrown by the listener are ignored
+	 * @throws InterruptedException if the calling thread is interrupted while waiting
+	 */
+	public void fetchAll(final String[] names, final DeliveryReportListener listener) throws InterruptedException {
+		final AtomicInteger next = new AtomicInteger();
+		int workers = Math.min(parallelism, names.length);
+		final CountDownLatch done = new CountDownLatch(workers);
+		for(int i = 0; i < workers; i++) {
+			Runnable worker = new Runnable() {
+				public void run() {
+					try {
+						int index;
+						while((index = next.getAndIncrement()) < names.length)
+							fetch(names[index], listener);
+					} finally {
+						done.countDown();
+					}
+				}
+			};
+			try {
+				executor.execute(worker);
+			} catch (RejectedExecutionException e) {
+				// the workers already started take the remaining reports
+				done.countDown();
+				if(i == 0)
+					throw e;
+			}
+		}
+		done.await();
+	}
+
+	private void fetch(String name, DeliveryReportListener listener) {
+		DeliveryReport[] reports;
+		try {
+			reports = client.getDeliveryReport(name);
+		} catch (RestClientException e) {
+			try {
+				listener.onFailure(name, e);
+			} catch (RuntimeException ignored) {
+				// one listener error must not stop the other reports
+			}
+			return;
+		}
+		try {
+			listener.onReport(name, reports);
+		} catch (RuntimeException ignored) {
+			// one listener error must not stop the other reports
+		}
+	}
+
+	/**
+	 * Reports fetched by {@link DeliveryReportFetcher#fetchAll(String[])}, in the order of the names
+	 */
+	public static class Result {
+		private final String[] names;
+		private final DeliveryReport[][] reports;
+		private final Hashtable<String, RestClientException> failures = new Hashtable<String, RestClientException>();
+
+		Result(String[] names) {
+			this.names = names;
+			this.reports = new DeliveryReport[names.length][];
+		}
+
+		private synchronized void put(String name, DeliveryReport[] fetched) {
+			for(int i = 0; i < names.length; i++) {
+				if(names[i].equals(name) && reports[i] == null) {
+					reports[i] = fetched;
+					return;
+				}
+			}
+		}
+
+		private void fail(String name, RestClientException e) {
+			failures.put(name, e);
+		}
+
+		/**
+		 * Return all the fetched reports, merged in the order of the names
+		 *
+		 * @return DeliveryReport object array
+		 */
+		public synchronized DeliveryReport[] getReports() {
+			ArrayList<DeliveryReport> merged = new ArrayList<DeliveryReport>();
+			for(DeliveryReport[] fetched: reports) {
+				if(fetched != null) {
+					for(DeliveryReport report: fetched)
+						merged.add(report);
+				}
+			}
+			return merged.toArray(new DeliveryReport[merged.size()]);
+		}
+
+		/**
+		 * Return the reports fetched for a name
+		 *
+		 * @param name name of the report
+		 * @return DeliveryReport object array, null if the report failed or was not requested
+		 */
+		public synchronized DeliveryReport[] getReports(String name) {
+			for(int i = 0; i < names.length; i++) {
+				if(names[i].equals(name) && reports[i] != null)
+					return reports[i];
+			}
+			return null;
+		}
+
+		/**
+		 * Return the errors of the reports that failed
+		 *
+		 * @return Hash table with the report name as key and the error as value
+		 */
+		public Hashtable<String, RestClientException> getFailures() {
+			return failures;
+		}
+
+		/**
+		 * Return true if every report was fetched
+		 *
+		 * @return boolean TRUE if no report failed
+		 */
+		public boolean isComplete() {
+			return failures.isEmpty();
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package uk.co.textmarketer.RestAPI;
+
+/**
+ * Listener for the delivery reports fetched by a DeliveryReportFetcher.<p>
+ *
+ * Listeners are called on the fetcher threads as each report completes, possibly at the same time for different
+ * reports, they must be thread safe.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see DeliveryReportFetcher#fetchAll(String[], DeliveryReportListener)
+ */
+public interface DeliveryReportListener {
+	/**
+	 * Called when a report was fetched and parsed
+	 *
+	 * @param name		name of the report
+	 * @param reports	the parsed reports, as returned by {@link RestClient#getDeliveryReport(String)}
+	 */
+	void onReport(String name, DeliveryReport[] reports);
+
+	/**
+	 * Called when a report could not be fetched or parsed, the other reports are still fetched
+	 *
+	 * @param name	name of the report
+	 * @param e		the error
+	 */
+	void onFailure(String name, RestClientException e);
+}
@@ -0,0 +1,203 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publisher of the rows of a delivery report, following the java.util.concurrent.Flow contract<p>
+ *
+ * Each subscriber gets its own download of the report, which starts with the first request for rows. The rows are
+ * read from the response stream only as the subscriber requests them, so a slow subscriber slows down the download
+ * instead of filling the memory. Cancelling the subscription closes the connection.<p>
+ *
+ * The download and the onNext, onComplete and onError signals run on the publisher executor.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see DeliveryReportReader
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *{@code
+ *RestClient tmClient = new RestClient("myuser", "mypass", RestClient.ENV_SANDBOX);
+ *new DeliveryReportPublisher(tmClient, "all", null).subscribe(new Flow.Subscriber<DeliveryReportRow>() {
+ *    private Flow.Subscription subscription;
+ *    public void onSubscribe(Flow.Subscription subscription) {
+ *        this.subscription = subscription;
+ *        subscription.request(100);
+ *    }
+ *    public void onNext(DeliveryReportRow row) {
+ *        System.out.println(row.getMessageId() + ": " + row.getStatus());
+ *        subscription.request(1);
+ *    }
+ *    public void onError(Throwable e) {
+ *        System.out.println(e.getMessage());
+ *    }
+ *    public void onComplete() {
+ *        System.out.println("Done");
+ *    }
+ *});
+ *}
+ *</pre></blockquote>
+ */
+public class DeliveryReportPublisher implements Flow.Publisher<DeliveryReportRow> {
+	private static ExecutorService defaultExecutor;
+
+	private final RestClient client;
+	private final String name;
+	private final String custom;
+	private final Executor executor;
+
+	/**
+	 * Constructor for the DeliveryReportPublisher class, using a shared pool of daemon threads.<p>
+	 *
+	 * @param client	client used to download the report
+	 * @param name		name of the delivery report or 'all'
+	 * @param custom	Optional, custom tag restricting the rows, or null
+	 */
+	public DeliveryReportPublisher(RestClient client, String name, String custom) {
+		this(client, name, custom, defaultExecutor());
+	}
+
+	/**
+	 * Constructor for the DeliveryReportPublisher class.<p>
+	 *
+	 * @param client	client used to download the report
+	 * @param name		name of the delivery report or 'all'
+	 * @param custom	Optional, custom tag restricting the rows, or null
+	 * @param executor	executor running the downloads, each subscription blocks one thread while it has demand
+	 */
+	public DeliveryReportPublisher(RestClient client, String name, String custom, Executor executor) {
+		this.client = client;
+		this.name = name;
+		this.custom = custom;
+		this.executor = executor;
+	}
+
+	private static synchronized ExecutorService defaultExecutor() {
+		if(defaultExecutor == null) {
+			defaultExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "tm-report-publisher-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return defaultExecutor;
+	}
+
+	public void subscribe(Flow.Subscriber<? super DeliveryReportRow> subscriber) {
+		if(subscriber == null)
+			throw new NullPointerException("subscriber");
+		RowSubscription subscription = new RowSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+	}
+
+	/**
+	 * Subscription of one subscriber, the rows are read by a single drain loop at a time
+	 */
+	private class RowSubscription implements Flow.Subscription, Runnable {
+		private final Flow.Subscriber<? super DeliveryReportRow> subscriber;
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicInteger pending = new AtomicInteger();
+		private volatile boolean cancelled;
+		private volatile long invalidRequest;
+		// only used by the drain loop
+		private DeliveryReportReader reader;
+		private boolean done;
+
+		RowSubscription(Flow.Subscriber<? super DeliveryReportRow> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		public void request(long n) {
+			if(n <= 0)
+				invalidRequest = n;
+			else {
+				long current;
+				do {
+					current = demand.get();
+					if(current == Long.MAX_VALUE)
+						break;
+				} while(!demand.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+			}
+			schedule();
+		}
+
+		public void cancel() {
+			cancelled = true;
+			schedule();
+		}
+
+		private void schedule() {
+			if(pending.getAndIncrement() == 0)
+				executor.execute(this);
+		}
+
+		public void run() {
+			int missed = 1;
+			do {
+				drain();
+				missed = pending.addAndGet(-missed);
+			} while(missed != 0);
+		}
+
+		private void drain() {
+			if(done)
+				return;
+			if(cancelled) {
+				finish();
+				return;
+			}
+			if(invalidRequest != 0) {
+				finish();
+				subscriber.onError(new IllegalArgumentException("Subscription request must be positive, was " + invalidRequest));
+				return;
+			}
+			try {
+				if(reader == null) {
+					if(demand.get() == 0)
+						return;
+					reader = client.openDeliveryReport(name, custom);
+				}
+				while(demand.get() > 0 && !cancelled) {
+					if(!reader.next()) {
+						finish();
+						subscriber.onComplete();
+						return;
+					}
+					subscriber.onNext(reader.getRow());
+					if(demand.get() != Long.MAX_VALUE)
+						demand.decrementAndGet();
+				}
+				if(cancelled)
+					finish();
+			} catch (Throwable e) {
+				finish();
+				subscriber.onError(e);
+			}
+		}
+
+		private void finish() {
+			done = true;
+			if(reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					// the subscription is over
+				}
+				reader = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming reader of delivery reports, reading one row at a time<p>
+ *
+ * Unlike {@link RestClient#getDeliveryReport(String)}, which builds every report in memory, the reader pulls the rows
+ * from the response as they are read with {@link #next()}, so reports of millions of rows can be processed in constant
+ * memory. The values of the current row are available from the getters until the next call to next().<p>
+ *
+ * The reader is not thread safe. Closing it closes the response stream.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see RestClient#openDeliveryReport(String, String)
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *RestClient tmClient = new RestClient("myuser", "mypass", RestClient.ENV_SANDBOX);
+ *DeliveryReportReader reader = tmClient.openDeliveryReport("all", null);
+ *try {
+ *    while(reader.next())
+ *        System.out.println(reader.getMessageId() + ": " + reader.getStatus());
+ *} finally {
+ *    reader.close();
+ *}
+ *</pre></blockquote>
+ */
+public class DeliveryReportReader implements Closeable {
+	final static XMLInputFactory FACTORY = createFactory();
+
+	private final InputStream in;
+	private final XMLStreamReader xml;
+	private DeliveryReport report;
+	private String lastUpdated;
+	private String mobileNumber;
+	private String messageId;
+	private String status;
+	private String custom;
+	private boolean finished;
+
+	/**
+	 * Constructor for the DeliveryReportReader class.<p>
+	 *
+	 * @param in the delivery report XML, closed by {@link #close()}
+	 * @throws XMLStreamException if the XML can not be read
+	 */
+	public DeliveryReportReader(InputStream in) throws XMLStreamException {
+		this.in = in;
+		this.xml = FACTORY.createXMLStreamReader(in);
+	}
+
+	private static XMLInputFactory createFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+		return factory;
+	}
+
+	/**
+	 * Move to the next row
+	 *
+	 * @return boolean TRUE if a row was read, FALSE at the end of the reports
+	 * @throws XMLStreamException if the XML is invalid
+	 * @throws ParseException if the last update date of a report is invalid
+	 */
+	public boolean next() throws XMLStreamException, ParseException {
+		if(finished)
+			return false;
+		while(xml.hasNext()) {
+			int event = xml.next();
+			if(event == XMLStreamConstants.START_ELEMENT) {
+				if("report".equals(xml.getLocalName()))
+					report = new DeliveryReport(attribute("name"), attribute("last_updated"), attribute("extension"));
+				else if(report != null) {
+					lastUpdated = attribute("last_updated");
+					mobileNumber = attribute("mobile_number");
+					messageId = attribute("message_id");
+					status = attribute("status");
+					custom = attribute("custom");
+					return true;
+				}
+			}
+			else if(event == XMLStreamConstants.END_ELEMENT && "report".equals(xml.getLocalName()))
+				report = null;
+		}
+		finished = true;
+		return false;
+	}
+
+	private String attribute(String name) {
+		String value = xml.getAttributeValue(null, name);
+		return value != null ? value : "";
+	}
+
+	/**
+	 * Return the report of the current row, its rows are not filled in
+	 *
+	 * @return DeliveryReport object with the name, last update and extension of the report
+	 */
+	public DeliveryReport getReport() {
+		return report;
+	}
+
+	public String getLastUpdated() {
+		return lastUpdated;
+	}
+
+	public String getMobileNumber() {
+		return mobileNumber;
+	}
+
+	public String getMessageId() {
+		return messageId;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public String getCustom() {
+		return custom;
+	}
+
+	/**
+	 * Return a copy of the current row
+	 *
+	 * @return DeliveryReportRow object
+	 */
+	public DeliveryReportRow getRow() {
+		return new DeliveryReportRow(report.getName(), lastUpdated, mobileNumber, messageId, status, custom);
+	}
+
+	/**
+	 * Close the reader and the response stream
+	 */
+	public void close() throws IOException {
+		finished = true;
+		try {
+			xml.close();
+		} catch (XMLStreamException e) {
+			// closing the stream below is what releases the connection
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.util.Hashtable;
+
+/**
+ * DeliveryReportRow Class represent one row of a streamed delivery report<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see DeliveryReportReader
+ * @see DeliveryReportPublisher
+ */
+public class DeliveryReportRow {
+	private final String report;
+	private final String lastUpdated;
+	private final String mobileNumber;
+	private final String messageId;
+	private final String status;
+	private final String custom;
+
+	/**
+	 * Constructor for the DeliveryReportRow class.<p>
+	 *
+	 * @param report		name of the report holding the row
+	 * @param lastUpdated	date of the last status update, e.g. 2017-01-31T10:15:00
+	 * @param mobileNumber	mobile number of the recipient
+	 * @param messageId		ID of the message
+	 * @param status		delivery status, e.g. DELIVERED
+	 * @param custom		custom tag of the message, can be empty
+	 */
+	public DeliveryReportRow(String report, String lastUpdated, String mobileNumber, String messageId, String status, String custom) {
+		this.report = report;
+		this.lastUpdated = lastUpdated;
+		this.mobileNumber = mobileNumber;
+		this.messageId = messageId;
+		this.status = status;
+		this.custom = custom;
+	}
+
+	public String getReport() {
+		return report;
+	}
+
+	public String getLastUpdated() {
+		return lastUpdated;
+	}
+
+	public String getMobileNumber() {
+		return mobileNumber;
+	}
+
+	public String getMessageId() {
+		return messageId;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public String getCustom() {
+		return custom;
+	}
+
+	/**
+	 * Return the row as returned by {@link DeliveryReport#getRows()}
+	 *
+	 * @return Hashtable with keys: last_updated, mobile_number, message_id, status and custom
+	 */
+	public Hashtable<String, String> toHashtable() {
+		Hashtable<String, String> row = new Hashtable<String, String>();
+		row.put("last_updated", lastUpdated);
+		row.put("mobile_number", mobileNumber);
+		row.put("message_id", messageId);
+		row.put("status", status);
+		row.put("custom", custom);
+		return row;
+	}
+
+	@Override
+	public String toString() {
+		return "DeliveryReportRow [report=" + report + ", lastUpdated=" + lastUpdated + ", mobileNumber=" + mobileNumber
+				+ ", messageId=" + messageId + ", status=" + status + ", custom=" + custom + "]";
+	}
+}
@@ -0,0 +1,80 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+
+/**
+ * EncodedMessage Class represent a text message rendered by a MessageTemplate, already form url encoded for the
+ * gateway, with its GSM alphabet check and segment count<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see MessageTemplate#render(String...)
+ * @see RestClient#sendSMS(EncodedMessage, String, String)
+ */
+public final class EncodedMessage {
+	private final String encoded;
+	private final int units;
+	private final boolean gsm;
+
+	EncodedMessage(String encoded, int units, boolean gsm) {
+		this.encoded = encoded;
+		this.units = units;
+		this.gsm = gsm;
+	}
+
+	/**
+	 * Return the message form url encoded in UTF-8, as sent to the gateway
+	 *
+	 * @return encoded message
+	 */
+	public String getEncoded() {
+		return encoded;
+	}
+
+	/**
+	 * Return the message text, decoded from the encoded message
+	 *
+	 * @return the message
+	 */
+	public String getText() {
+		try {
+			return URLDecoder.decode(encoded, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Return true if the message only uses the GSM alphabet
+	 *
+	 * @return boolean TRUE for a GSM message, FALSE for a UCS-2 message
+	 */
+	public boolean isGsm() {
+		return gsm;
+	}
+
+	/**
+	 * Return the length of the message as sent
+	 *
+	 * @return number of septets for a GSM message, or of UTF-16 chars for a UCS-2 message
+	 */
+	public int getLength() {
+		return units;
+	}
+
+	/**
+	 * Return the number of SMS segments used by the message
+	 *
+	 * @return number of segments
+	 */
+	public int getSegments() {
+		return GsmCharset.segments(units, gsm);
+	}
+
+	@Override
+	public String toString() {
+		return "EncodedMessage [" + (gsm ? "GSM" : "UCS-2") + ", length=" + units + ", segments=" + getSegments() + "]";
+	}
+}
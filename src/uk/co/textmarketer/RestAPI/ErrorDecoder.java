@@ -0,0 +1,86 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.util.Hashtable;
+
+/**
+ * Lightweight decoder of the gateway error responses.<p>
+ *
+ * Error bodies are small and have a fixed shape, {@code <error code="...">message</error>} elements, so they are
+ * scanned directly instead of building a DOM, which keeps the failure path cheap during error storms.
+ *
+ * @version 1.0
+ */
+final class ErrorDecoder {
+	private ErrorDecoder() {
+	}
+
+	/**
+	 * Decode the errors of a gateway response
+	 *
+	 * @param status	HTTP status code of the response
+	 * @param body		response body
+	 * @return Hashtable with the error codes and messages, or the HTTP status and body if there are no error elements
+	 */
+	static Hashtable<String, String> decode(int status, String body) {
+		Hashtable<String, String> errors = new Hashtable<String, String>();
+		int pos = 0;
+		while((pos = body.indexOf("<error", pos)) >= 0) {
+			int tagEnd = body.indexOf('>', pos);
+			if(tagEnd < 0)
+				break;
+			char next = body.charAt(pos + 6);
+			if(next != ' ' && next != '>' && next != '\t' && next != '\r' && next != '\n') {
+				// <errors> container
+				pos = tagEnd;
+				continue;
+			}
+			String code = attribute(body, "code", pos, tagEnd);
+			String message = "";
+			if(body.charAt(tagEnd - 1) != '/') {
+				int close = body.indexOf("</error>", tagEnd);
+				if(close < 0)
+					break;
+				message = unescape(body.substring(tagEnd + 1, close).trim());
+				pos = close + 8;
+			}
+			else
+				pos = tagEnd + 1;
+			errors.put(code != null ? code : Integer.toString(status), message);
+		}
+		if(errors.isEmpty())
+			errors.put(Integer.toString(status), body);
+		return errors;
+	}
+
+	/**
+	 * Return true if a call failing with this status can succeed when retried later
+	 *
+	 * @param status HTTP status code
+	 * @return boolean TRUE for throttling, timeouts and server errors
+	 */
+	static boolean isRetriable(int status) {
+		return status == 408 || status == 429 || status >= 500;
+	}
+
+	private static String attribute(String body, String name, int from, int to) {
+		int pos = from;
+		while((pos = body.indexOf(name, pos)) >= 0 && pos < to) {
+			int eq = pos + name.length();
+			if(body.charAt(pos - 1) <= ' ' && eq < to && body.charAt(eq) == '=') {
+				char quote = body.charAt(eq + 1);
+				int end = body.indexOf(quote, eq + 2);
+				if(end < 0 || end > to)
+					return null;
+				return unescape(body.substring(eq + 2, end));
+			}
+			pos = eq;
+		}
+		return null;
+	}
+
+	private static String unescape(String text) {
+		if(text.indexOf('&') < 0)
+			return text;
+		return text.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&apos;", "'").replace("&amp;", "&");
+	}
+}
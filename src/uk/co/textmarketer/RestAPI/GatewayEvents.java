@@ -0,0 +1,159 @@
+package uk.co.textmarketer.RestAPI;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events of the SDK, in the Text Marketer category of a recording.<p>
+ *
+ * Events are created and begun on every call, and only filled in when {@link Event#shouldCommit()} is true, so a
+ * disabled event costs a few instructions. Enable them with the uk.co.textmarketer.* names in a JFR settings file,
+ * or all of them with -XX:StartFlightRecording.
+ *
+ * @version 1.0
+ */
+final class GatewayEvents {
+	final private static String CATEGORY = "Text Marketer";
+
+	private GatewayEvents() {
+	}
+
+	/**
+	 * End and commit a throttle event, when it is enabled
+	 */
+	static void commitThrottle(Throttle event, String limiter, double limit) {
+		event.end();
+		if(event.shouldCommit()) {
+			event.limiter = limiter;
+			event.limit = limit;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Commit a pool exhausted event, when it is enabled
+	 */
+	static void poolExhausted(String pool, int capacity) {
+		PoolExhausted event = new PoolExhausted();
+		if(event.shouldCommit()) {
+			event.pool = pool;
+			event.capacity = capacity;
+			event.commit();
+		}
+	}
+
+	/**
+	 * One HTTP request to the gateway, sent by the transport
+	 */
+	@Name("uk.co.textmarketer.GatewayCall")
+	@Label("Gateway Call")
+	@Category({CATEGORY, "REST API"})
+	@Description("HTTP request sent to the TM Rest API Gateway by the transport")
+	@StackTrace(false)
+	static final class Call extends Event {
+		@Label("Service")
+		String service;
+
+		@Label("Method")
+		String method;
+
+		@Label("Status")
+		@Description("HTTP status, 0 when the gateway could not be reached")
+		int status;
+
+		@Label("Bytes Out")
+		@DataAmount
+		long bytesOut;
+
+		@Label("Bytes In")
+		@Description("Bytes of the response body, -1 when streamed")
+		@DataAmount
+		long bytesIn;
+
+		@Label("Connect Time")
+		@Description("Time taken to open the connection, 0 when reused or not measured by the transport")
+		@Timespan
+		long connectTime;
+
+		@Label("Wait Time")
+		@Description("Time from the request sent to the response headers, 0 when not measured by the transport")
+		@Timespan
+		long waitTime;
+
+		@Label("Error")
+		String error;
+	}
+
+	/**
+	 * Parsing of a gateway response
+	 */
+	@Name("uk.co.textmarketer.ResponseParse")
+	@Label("Response Parse")
+	@Category({CATEGORY, "REST API"})
+	@Description("Parsing of a TM Rest API Gateway response")
+	@StackTrace(false)
+	static final class Parse extends Event {
+		@Label("Parser")
+		String parser;
+
+		@Label("Characters")
+		@DataAmount
+		long characters;
+
+		@Label("Parallel")
+		boolean parallel;
+	}
+
+	/**
+	 * Hedge request sent by a HedgingInterceptor
+	 */
+	@Name("uk.co.textmarketer.Hedge")
+	@Label("Hedge Request")
+	@Category({CATEGORY, "Resilience"})
+	@Description("Second request sent because a read-only call was slower than usual")
+	@StackTrace(false)
+	static final class Hedge extends Event {
+		@Label("Endpoint")
+		String endpoint;
+
+		@Label("Delay")
+		@Timespan
+		long delay;
+	}
+
+	/**
+	 * Wait of a call for a client-side limit
+	 */
+	@Name("uk.co.textmarketer.Throttle")
+	@Label("Throttle")
+	@Category({CATEGORY, "Resilience"})
+	@Description("Time a call waited for a rate or concurrency limit")
+	static final class Throttle extends Event {
+		@Label("Limiter")
+		String limiter;
+
+		@Label("Limit")
+		double limit;
+	}
+
+	/**
+	 * Work refused because a queue or pool was full
+	 */
+	@Name("uk.co.textmarketer.PoolExhausted")
+	@Label("Pool Exhausted")
+	@Category({CATEGORY, "Resilience"})
+	@Description("Work refused because a queue or pool was full")
+	static final class PoolExhausted extends Event {
+		@Label("Pool")
+		String pool;
+
+		@Label("Capacity")
+		int capacity;
+	}
+}
@@ -0,0 +1,160 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming reader of the numbers of a group, reading one number at a time<p>
+ *
+ * Unlike {@link RestClient#getGroup(String)}, which builds a DOM of the whole response and then a String for each
+ * number, the reader pulls the numbers from the response as they are read with {@link #next()}. Groups of millions
+ * of numbers can be processed in constant memory, or packed with {@link #readNumbers()} into a long array taking
+ * 8 bytes per number.<p>
+ *
+ * The reader is not thread safe. Closing it closes the response stream.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see RestClient#openGroup(String)
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *RestClient tmClient = new RestClient("myuser", "mypass", RestClient.ENV_SANDBOX);
+ *GroupReader reader = tmClient.openGroup("directors");
+ *try {
+ *    long[] numbers = reader.readNumbers();
+ *    System.out.println(numbers.length + " numbers in " + reader.getGroupName());
+ *} finally {
+ *    reader.close();
+ *}
+ *</pre></blockquote>
+ */
+public class GroupReader implements Closeable {
+	private final InputStream in;
+	private final XMLStreamReader xml;
+	private final StringBuilder number = new StringBuilder(16);
+	private String groupName;
+	private boolean finished;
+
+	/**
+	 * Constructor for the GroupReader class.<p>
+	 *
+	 * @param in the group XML, closed by {@link #close()}
+	 * @throws XMLStreamException if the XML can not be read
+	 */
+	public GroupReader(InputStream in) throws XMLStreamException {
+		this.in = in;
+		this.xml = DeliveryReportReader.FACTORY.createXMLStreamReader(in);
+	}
+
+	/**
+	 * Move to the next number
+	 *
+	 * @return boolean TRUE if a number was read, FALSE at the end of the group
+	 * @throws XMLStreamException if the XML is invalid
+	 */
+	public boolean next() throws XMLStreamException {
+		if(finished)
+			return false;
+		while(xml.hasNext()) {
+			if(xml.next() != XMLStreamConstants.START_ELEMENT)
+				continue;
+			if("group".equals(xml.getLocalName()))
+				groupName = xml.getAttributeValue(null, "name");
+			else if("number".equals(xml.getLocalName())) {
+				// the text of a number can come in more than one event
+				number.setLength(0);
+				int event;
+				while((event = xml.next()) != XMLStreamConstants.END_ELEMENT) {
+					if(event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE)
+						number.append(xml.getTextCharacters(), xml.getTextStart(), xml.getTextLength());
+				}
+				return true;
+			}
+		}
+		finished = true;
+		return false;
+	}
+
+	/**
+	 * Return the name of the group, once the first number has been read
+	 *
+	 * @return name of the group, null if not read yet
+	 */
+	public String getGroupName() {
+		return groupName;
+	}
+
+	/**
+	 * Return the current number
+	 *
+	 * @return the number, as sent by the gateway
+	 */
+	public String getNumber() {
+		return number.toString();
+	}
+
+	/**
+	 * Return the current number as a long, without creating a String
+	 *
+	 * @return the number, e.g. 447777123123
+	 * @throws NumberFormatException if the number is not made of up to 18 digits
+	 */
+	public long getNumberAsLong() {
+		int start = 0;
+		int end = number.length();
+		while(start < end && Character.isWhitespace(number.charAt(start)))
+			start++;
+		while(end > start && Character.isWhitespace(number.charAt(end - 1)))
+			end--;
+		if(start == end || end - start > 18)
+			throw new NumberFormatException("Invalid number: " + number);
+		long value = 0;
+		for(int i = start; i < end; i++) {
+			char c = number.charAt(i);
+			if(c < '0' || c > '9')
+				throw new NumberFormatException("Invalid number: " + number);
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	/**
+	 * Read the remaining numbers into a long array
+	 *
+	 * @return the numbers in the order of the group
+	 * @throws XMLStreamException if the XML is invalid
+	 * @throws NumberFormatException if a number is not made of up to 18 digits
+	 */
+	public long[] readNumbers() throws XMLStreamException {
+		long[] numbers = new long[1024];
+		int count = 0;
+		while(next()) {
+			if(count == numbers.length)
+				numbers = Arrays.copyOf(numbers, count + (count >> 1));
+			numbers[count++] = getNumberAsLong();
+		}
+		return count == numbers.length ? numbers : Arrays.copyOf(numbers, count);
+	}
+
+	/**
+	 * Close the reader and the response stream
+	 */
+	public void close() throws IOException {
+		finished = true;
+		try {
+			xml.close();
+		} catch (XMLStreamException e) {
+			// closing the stream below is what releases the connection
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package uk.co.textmarketer.RestAPI;
+
+/**
+ * GSM 03.38 alphabet, used to count the septets and segments of text messages.<p>
+ *
+ * Characters of the basic table take one septet, characters of the extension table take two (escape and
+ * character). A message with any other character is sent as UCS-2, one 16 bits unit per UTF-16 char.
+ *
+ * @version 1.0
+ */
+final class GsmCharset {
+	final private static String BASIC = "@£$¥èéùìòÇ\nØø\rÅåΔ_ΦΓΛΩΠΨΣΘΞ\u001BÆæßÉ !\"#¤%&'()*+,-./0123456789:;<=>?"
+			+ "¡ABCDEFGHIJKLMNOPQRSTUVWXYZÄÖÑÜ§¿abcdefghijklmnopqrstuvwxyzäöñüà";
+	final private static String EXTENSION = "\f^{}\\[~]|€";
+	final private static int TABLE_SIZE = 0x400;
+	// septets per char below TABLE_SIZE, 0 when the char is not in the alphabet
+	final private static byte[] SEPTETS = new byte[TABLE_SIZE];
+
+	final static int GSM_SINGLE = 160;
+	final static int GSM_MULTI = 153;
+	final static int UCS2_SINGLE = 70;
+	final static int UCS2_MULTI = 67;
+
+	static {
+		for(int i = 0; i < BASIC.length(); i++)
+			SEPTETS[BASIC.charAt(i)] = 1;
+		for(int i = 0; i < EXTENSION.length(); i++) {
+			char c = EXTENSION.charAt(i);
+			if(c < TABLE_SIZE)
+				SEPTETS[c] = 2;
+		}
+		// the escape char is not sent as text
+		SEPTETS[0x1B] = 0;
+	}
+
+	private GsmCharset() {
+	}
+
+	/**
+	 * Return the number of septets of a char in the GSM alphabet
+	 *
+	 * @return 1 or 2, 0 if the char is not in the alphabet
+	 */
+	static int septets(char c) {
+		if(c < TABLE_SIZE)
+			return SEPTETS[c];
+		return c == '€' ? 2 : 0;
+	}
+
+	/**
+	 * Return the number of segments of a message
+	 *
+	 * @param units	septets for a GSM message, UTF-16 chars for a UCS-2 message
+	 * @param gsm	true for a GSM message
+	 */
+	static int segments(int units, boolean gsm) {
+		if(units == 0)
+			return 1;
+		int single = gsm ? GSM_SINGLE : UCS2_SINGLE;
+		int multi = gsm ? GSM_MULTI : UCS2_MULTI;
+		return units <= single ? 1 : (units + multi - 1) / multi;
+	}
+}
@@ -0,0 +1,321 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Interceptor sending a second identical request when a read-only call is slower than usual<p>
+ *
+ * Only GET requests with a buffered response are hedged, e.g. getCredits, getGroups, getKeyword or getDeliveryReports. Calls that change data,
+ * like sendSMS or the credit transfers, always go through once. For each endpoint the interceptor tracks the latency
+ * of recent calls, and when a call has not answered by the configured percentile of that latency a hedge request is
+ * sent. The first successful response wins, an error answer is only returned when both requests failed. A budget
+ * caps the hedges to a percentage of the calls, so hedging can not double the load on a slow gateway.<p>
+ *
+ * Both requests run on the interceptor executor while the calling thread waits for the winner. A hedge request
+ * shares the deadline of the call, it is not sent when the deadline would pass before the hedging delay, and the
+ * calling thread stops waiting when the deadline passes.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see RestClient#addInterceptor(RestInterceptor)
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *HedgingInterceptor hedging = new HedgingInterceptor();
+ *hedging.setPercentile(95);
+ *hedging.setBudget(5);
+ *RestClient tmClient = new RestClient("myuser", "mypass", RestClient.ENV_SANDBOX);
+ *tmClient.addInterceptor(hedging);
+ *</pre></blockquote>
+ */
+public class HedgingInterceptor implements RestInterceptor {
+	final private static int SAMPLES = 256;
+	final private static int RECOMPUTE_EVERY = 32;
+	final private static long BUDGET_SCALE = 1000;
+
+	private final ExecutorService executor;
+	private final ConcurrentHashMap<String, LatencyTracker> trackers = new ConcurrentHashMap<String, LatencyTracker>();
+	private final AtomicLong budget = new AtomicLong();
+	private final AtomicLong hedges = new AtomicLong();
+	private final AtomicLong hedgeWins = new AtomicLong();
+
+	private volatile double percentile = 95;
+	private volatile long minDelayNanos = TimeUnit.MILLISECONDS.toNanos(10);
+	private volatile long initialDelayNanos = TimeUnit.SECONDS.toNanos(1);
+	private volatile long budgetPerCall = 5 * BUDGET_SCALE / 100;
+	private volatile long maxBudget = 10 * BUDGET_SCALE;
+
+	/**
+	 * Constructor for the HedgingInterceptor class, with its own pool of daemon threads.
+	 */
+	public HedgingInterceptor() {
+		this(Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "tm-hedging-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		}));
+	}
+
+	/**
+	 * Constructor for the HedgingInterceptor class.<p>
+	 *
+	 * @param executor executor running the requests, needs up to two threads per concurrent read-only call
+	 */
+	public HedgingInterceptor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Set the latency percentile after which a hedge request is sent, 95 by default
+	 *
+	 * @param percentile value from 50 to 99.9
+	 */
+	public void setPercentile(double percentile) {
+		if(percentile <= 0 || percentile >= 100)
+			throw new IllegalArgumentException("percentile must be between 0 and 100");
+		this.percentile = percentile;
+		for(LatencyTracker tracker: trackers.values())
+			tracker.recompute();
+	}
+
+	/**
+	 * Set the delays used when not enough latency has been recorded for an endpoint, and the minimum delay
+	 *
+	 * @param initialMillis	delay before hedging while an endpoint has few recorded calls, 1000 by default
+	 * @param minMillis		minimum delay before hedging, 10 by default
+	 */
+	public void setDelays(long initialMillis, long minMillis) {
+		this.initialDelayNanos = TimeUnit.MILLISECONDS.toNanos(initialMillis);
+		this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minMillis);
+	}
+
+	/**
+	 * Set the maximum extra load, as a percentage of the read-only calls, 5 by default
+	 *
+	 * @param percentage	value from 0 (no hedging) to 100 (every call can be hedged)
+	 */
+	public void setBudget(double percentage) {
+		this.budgetPerCall = (long) (percentage * BUDGET_SCALE / 100);
+	}
+
+	/**
+	 * Return the number of hedge requests sent
+	 *
+	 * @return number of hedge requests
+	 */
+	public long getHedgeCount() {
+		return hedges.get();
+	}
+
+	/**
+	 * Return the number of calls answered by the hedge request
+	 *
+	 * @return number of calls won by the hedge request
+	 */
+	public long getHedgeWins() {
+		return hedgeWins.get();
+	}
+
+	/**
+	 * Shutdown the executor of the interceptor
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	public RestResponse intercept(Chain chain) throws Exception {
+		RestRequest request = chain.request();
+		if(!request.isReadOnly() || request.isStreaming())
+			return chain.proceed(request);
+
+		String endpoint = RestClient.getEndpoint(request);
+		LatencyTracker tracker = tracker(endpoint);
+		earnBudget();
+		CompletableFuture<RestResponse> result = new CompletableFuture<RestResponse>();
+		AtomicInteger pending = new AtomicInteger(1);
+		executor.execute(new Attempt(chain, request, tracker, result, pending, false));
+		long delay = tracker.delayNanos();
+		Deadline deadline = request.getDeadline();
+		boolean hedging = deadline == null || delay < deadline.remainingNanos();
+		try {
+			return result.get(hedging ? delay : deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			// slower than usual, send the hedge request
+		} catch (ExecutionException e) {
+			throw unwrap(e);
+		}
+		if(hedging && !result.isDone() && spendBudget()) {
+			if(reserveHedge(result, pending)) {
+				hedges.incrementAndGet();
+				GatewayEvents.Hedge event = new GatewayEvents.Hedge();
+				if(event.shouldCommit()) {
+					event.endpoint = endpoint;
+					event.delay = delay;
+					event.commit();
+				}
+				executor.execute(new Attempt(chain, request, tracker, result, pending, true));
+			}
+			else
+				// the first request finished meanwhile, the budget is given back
+				budget.addAndGet(BUDGET_SCALE);
+		}
+		try {
+			if(deadline == null)
+				return result.get();
+			return result.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			// the requests are closed by the transport at the same deadline
+			throw new DeadlineExceededException("Deadline exceeded waiting for " + request);
+		} catch (ExecutionException e) {
+			throw unwrap(e);
+		}
+	}
+
+	private LatencyTracker tracker(String endpoint) {
+		LatencyTracker tracker = trackers.get(endpoint);
+		if(tracker == null) {
+			LatencyTracker created = new LatencyTracker();
+			tracker = trackers.putIfAbsent(endpoint, created);
+			if(tracker == null)
+				tracker = created;
+		}
+		return tracker;
+	}
+
+	private void earnBudget() {
+		long earned = budgetPerCall;
+		long current;
+		do {
+			current = budget.get();
+			if(current >= maxBudget)
+				return;
+		} while(!budget.compareAndSet(current, Math.min(maxBudget, current + earned)));
+	}
+
+	private boolean spendBudget() {
+		long current;
+		do {
+			current = budget.get();
+			if(current < BUDGET_SCALE)
+				return false;
+		} while(!budget.compareAndSet(current, current - BUDGET_SCALE));
+		return true;
+	}
+
+	/**
+	 * Count the hedge request as pending before it is sent, unless the call is already over. Once the first request
+	 * failed pending is 0 and stays there, so the slot can not be taken after the call failed.
+	 *
+	 * @return boolean TRUE if the hedge request must be sent
+	 */
+	private static boolean reserveHedge(CompletableFuture<RestResponse> result, AtomicInteger pending) {
+		int current;
+		do {
+			current = pending.get();
+			if(current == 0)
+				return false;
+		} while(!pending.compareAndSet(current, current + 1));
+		if(!result.isDone())
+			return true;
+		// the first request succeeded meanwhile
+		pending.decrementAndGet();
+		return false;
+	}
+
+	private static Exception unwrap(ExecutionException e) {
+		Throwable cause = e.getCause();
+		if(cause instanceof Exception)
+			return (Exception) cause;
+		if(cause instanceof Error)
+			throw (Error) cause;
+		return e;
+	}
+
+	/**
+	 * One request of a hedged call, the first successful one completes the call
+	 */
+	private class Attempt implements Runnable {
+		private final Chain chain;
+		private final RestRequest request;
+		private final LatencyTracker tracker;
+		private final CompletableFuture<RestResponse> result;
+		private final AtomicInteger pending;
+		private final boolean hedge;
+
+		Attempt(Chain chain, RestRequest request, LatencyTracker tracker, CompletableFuture<RestResponse> result, AtomicInteger pending, boolean hedge) {
+			this.chain = chain;
+			this.request = request;
+			this.tracker = tracker;
+			this.result = result;
+			this.pending = pending;
+			this.hedge = hedge;
+		}
+
+		public void run() {
+			long start = System.nanoTime();
+			try {
+				RestResponse response = chain.proceed(request);
+				if(response.isSuccessful()) {
+					tracker.record(System.nanoTime() - start);
+					if(result.complete(response) && hedge)
+						hedgeWins.incrementAndGet();
+				}
+				// an error answer only completes the call when the other request failed too
+				else if(pending.decrementAndGet() == 0)
+					result.complete(response);
+			} catch (Throwable e) {
+				// the call fails only when all its requests failed
+				if(pending.decrementAndGet() == 0)
+					result.completeExceptionally(e);
+			}
+		}
+	}
+
+	/**
+	 * Recent latencies of one endpoint, and the hedging delay computed from them
+	 */
+	private class LatencyTracker {
+		private final long[] samples = new long[SAMPLES];
+		private int count;
+		private int position;
+		private volatile long delay = -1;
+
+		long delayNanos() {
+			long current = delay;
+			return current < 0 ? initialDelayNanos : Math.max(minDelayNanos, current);
+		}
+
+		synchronized void record(long nanos) {
+			samples[position] = nanos;
+			position = (position + 1) % SAMPLES;
+			if(count < SAMPLES)
+				count++;
+			if(count >= RECOMPUTE_EVERY && position % RECOMPUTE_EVERY == 0)
+				recompute();
+		}
+
+		synchronized void recompute() {
+			if(count < RECOMPUTE_EVERY)
+				return;
+			long[] sorted = Arrays.copyOf(samples, count);
+			Arrays.sort(sorted);
+			int index = (int) Math.ceil(percentile / 100 * count) - 1;
+			delay = sorted[Math.max(0, Math.min(count - 1, index))];
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * RestTransport using java.net.http.HttpClient, with HTTP/2 and asynchronous I/O.<p>
+ *
+ * With HTTP/2 many concurrent calls are multiplexed over a few connections, instead of one connection per call.
+ * The gateway connection falls back to HTTP/1.1 with keep-alive when HTTP/2 is not available.<p>
+ *
+ * HttpClient has no connect timeout per request, so the connect and read timeouts of the request are added up into
+ * the timeout of the whole request, capped to the time left before its deadline. Without a read timeout the request
+ * has no timeout, use the connectTimeout of the HttpClient builder to bound the connection alone. A call over it fails with an
+ * {@link java.net.http.HttpTimeoutException}.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see RestTransport
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *RestClient tmClient = new RestClient("myuser", "mypass", RestClient.ENV_PRODUCTION);
+ *tmClient.setTransport(new HttpClientTransport());
+ *</pre></blockquote>
+ */
+public class HttpClientTransport implements RestTransport {
+	private final HttpClient client;
+
+	/**
+	 * Constructor for the HttpClientTransport class, with a new HTTP/2 client.
+	 */
+	public HttpClientTransport() {
+		this(HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.build());
+	}
+
+	/**
+	 * Constructor for the HttpClientTransport class, with a new HTTP/2 client using the given executor.<p>
+	 *
+	 * @param executor executor for the asynchronous tasks of the client
+	 */
+	public HttpClientTransport(Executor executor) {
+		this(HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.executor(executor)
+				.build());
+	}
+
+	/**
+	 * Constructor for the HttpClientTransport class, with a given client.<p>
+	 *
+	 * @param client HttpClient to send the requests with
+	 */
+	public HttpClientTransport(HttpClient client) {
+		this.client = client;
+	}
+
+	public HttpClient getHttpClient() {
+		return client;
+	}
+
+	public RestResponse execute(RestRequest request, String url, byte[] body) throws IOException {
+		long start = System.nanoTime();
+		try {
+			if(request.isStreaming()) {
+				HttpResponse<InputStream> response = client.send(buildRequest(request, url, body), HttpResponse.BodyHandlers.ofInputStream());
+				if(response.statusCode() >= 200 && response.statusCode() < 300)
+					return new RestResponse(response.statusCode(), response.body(), System.nanoTime() - start, toHeaders(response));
+				// errors are small, read them for the error decoder
+				byte[] bytes = RestClient.getConnectionResponse(response.body());
+				return new RestResponse(response.statusCode(), new String(bytes, StandardCharsets.UTF_8), bytes.length, System.nanoTime() - start, toHeaders(response));
+			}
+			HttpResponse<byte[]> response = client.send(buildRequest(request, url, body), HttpResponse.BodyHandlers.ofByteArray());
+			return toRestResponse(response, start);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for " + request);
+		}
+	}
+
+	/**
+	 * Send a request without blocking the calling thread
+	 *
+	 * @param request	the request, with the HTTP method and extra headers
+	 * @param url		full URL, including the query string for GET, PUT and DELETE
+	 * @param body		form url encoded body for POST, null for the other methods
+	 * @return CompletableFuture completed with the RestResponse, or with the IOException on error
+	 */
+	public CompletableFuture<RestResponse> executeAsync(RestRequest request, String url, byte[] body) {
+		final long start = System.nanoTime();
+		return client.sendAsync(buildRequest(request, url, body), HttpResponse.BodyHandlers.ofByteArray())
+				.thenApply(response -> toRestResponse(response, start));
+	}
+
+	/**
+	 * Send the HEAD requests at the same time, with HTTP/2 they share one connection, with HTTP/1.1 each opens its own
+	 */
+	@Override
+	public void warmUp(RestRequest request, String url, int connections) throws IOException {
+		HttpRequest head = buildRequest(request, url, null);
+		CompletableFuture<?>[] requests = new CompletableFuture<?>[connections];
+		for(int i = 0; i < connections; i++)
+			requests[i] = client.sendAsync(head, HttpResponse.BodyHandlers.discarding());
+		try {
+			CompletableFuture.allOf(requests).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while opening connections to " + url);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static HttpRequest buildRequest(RestRequest request, String url, byte[] body) {
+		HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url));
+		// without a read timeout the request can wait forever, the connect timeout alone can not be applied
+		long total = request.getReadTimeout() > 0 ? (long) request.getConnectTimeout() + request.getReadTimeout() : 0;
+		int timeout = request.timeoutMillis((int) Math.min(total, Integer.MAX_VALUE));
+		if(timeout > 0)
+			builder.timeout(Duration.ofMillis(timeout));
+		for(Map.Entry<String, String> header: request.getHeaders().entrySet()) {
+			if(!isRestricted(header.getKey()))
+				builder.header(header.getKey(), header.getValue());
+		}
+		if(body != null) {
+			builder.header("Content-Type", "application/x-www-form-urlencoded");
+			builder.method(request.getMethod(), HttpRequest.BodyPublishers.ofByteArray(body));
+		}
+		else
+			builder.method(request.getMethod(), HttpRequest.BodyPublishers.noBody());
+		return builder.build();
+	}
+
+	private static RestResponse toRestResponse(HttpResponse<byte[]> response, long start) {
+		byte[] bytes = response.body();
+		return new RestResponse(response.statusCode(), new String(bytes, StandardCharsets.UTF_8), bytes.length, System.nanoTime() - start, toHeaders(response));
+	}
+
+	private static Hashtable<String, String> toHeaders(HttpResponse<?> response) {
+		Hashtable<String, String> headers = new Hashtable<String, String>();
+		for(Map.Entry<String, List<String>> header: response.headers().map().entrySet()) {
+			if(!header.getValue().isEmpty())
+				headers.put(header.getKey().toLowerCase(), header.getValue().get(0));
+		}
+		return headers;
+	}
+
+	private static boolean isRestricted(String header) {
+		return header.equalsIgnoreCase("Content-Length") || header.equalsIgnoreCase("Host")
+				|| header.equalsIgnoreCase("Connection") || header.equalsIgnoreCase("Expect")
+				|| header.equalsIgnoreCase("Upgrade");
+	}
+}
@@ -0,0 +1,35 @@
+package uk.co.textmarketer.RestAPI;
+
+/**
+ * Chain of RestInterceptor for a single call, the last link sends the request to the gateway.<p>
+ *
+ * Each call to proceed creates the next link, so a chain can be proceeded more than once or from other threads.
+ *
+ * @version 1.0
+ */
+class InterceptorChain implements RestInterceptor.Chain {
+	private final RestClient client;
+	private final RestInterceptor[] interceptors;
+	private final int index;
+	private final RestRequest request;
+
+	InterceptorChain(RestClient client, RestInterceptor[] interceptors, int index, RestRequest request) {
+		this.client = client;
+		this.interceptors = interceptors;
+		this.index = index;
+		this.request = request;
+	}
+
+	public RestRequest request() {
+		return request;
+	}
+
+	public RestResponse proceed(RestRequest request) throws Exception {
+		if(index >= interceptors.length)
+			return client.execute(request);
+		RestResponse response = interceptors[index].intercept(new InterceptorChain(client, interceptors, index + 1, request));
+		if(response == null)
+			throw new IllegalStateException("Interceptor " + interceptors[index] + " returned a null response");
+		return response;
+	}
+}
@@ -0,0 +1,321 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Message template with merge fields, compiled once and rendered for each recipient<p>
+ *
+ * Merge fields are written {name}, with names made of letters, digits and underscores; {{ and }} stand for { and }.
+ * Compiling the template encodes its text for the gateway once, so rendering only encodes the field values, straight
+ * into a reusable buffer, and the result is sent by {@link RestClient#sendSMS(EncodedMessage, String, String)}
+ * without any further encoding. The GSM alphabet and the number of segments are checked when the template is
+ * compiled, for its text, and when it is rendered, for the whole message.<p>
+ *
+ * A compiled template is immutable and can be rendered from many threads.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see EncodedMessage
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *{@code
+ *RestClient tmClient = new RestClient("myuser", "mypass", RestClient.ENV_SANDBOX);
+ *MessageTemplate template = MessageTemplate.compile("Hi {first_name}, your code is {code}");
+ *for(Customer customer: customers) {
+ *    EncodedMessage message = template.render(customer.getFirstName(), customer.getCode());
+ *    tmClient.sendSMS(message, customer.getMobile(), "Hello World");
+ *}
+ *}
+ *</pre></blockquote>
+ */
+public class MessageTemplate {
+	final private static int DEFAULT_MAX_SEGMENTS = 4;
+	final private static byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+	final private static ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[2048];
+		}
+	};
+
+	private final String template;
+	private final String[] fields;
+	// literals[i] is the encoded text before parts[i], the last one is the text after the last field
+	private final byte[][] literals;
+	private final int[] parts;
+	private final int literalBytes;
+	private final int literalSeptets;
+	private final int literalChars;
+	private final boolean literalGsm;
+	private final int maxSegments;
+	private final boolean gsmOnly;
+
+	private MessageTemplate(String template, String[] fields, byte[][] literals, int[] parts, int literalSeptets,
+			int literalChars, boolean literalGsm, int maxSegments, boolean gsmOnly) {
+		this.template = template;
+		this.fields = fields;
+		this.literals = literals;
+		this.parts = parts;
+		int bytes = 0;
+		for(byte[] literal: literals)
+			bytes += literal.length;
+		this.literalBytes = bytes;
+		this.literalSeptets = literalSeptets;
+		this.literalChars = literalChars;
+		this.literalGsm = literalGsm;
+		this.maxSegments = maxSegments;
+		this.gsmOnly = gsmOnly;
+	}
+
+	/**
+	 * Compile a template for GSM messages of up to 4 segments (612 chars), the limit of the gateway
+	 *
+	 * @param template the template text
+	 * @return the compiled template
+	 * @throws IllegalArgumentException if the template is invalid, uses chars outside the GSM alphabet or is too long
+	 */
+	public static MessageTemplate compile(String template) {
+		return compile(template, DEFAULT_MAX_SEGMENTS, true);
+	}
+
+	/**
+	 * Compile a template
+	 *
+	 * @param template		the template text
+	 * @param maxSegments	maximum number of segments of a rendered message
+	 * @param gsmOnly		true to reject chars outside the GSM alphabet, false to send such messages as UCS-2
+	 * @return the compiled template
+	 * @throws IllegalArgumentException if the template is invalid, uses chars outside the GSM alphabet or is too long
+	 */
+	public static MessageTemplate compile(String template, int maxSegments, boolean gsmOnly) {
+		if(maxSegments < 1)
+			throw new IllegalArgumentException("maxSegments must be at least 1");
+		ArrayList<String> fields = new ArrayList<String>();
+		ArrayList<byte[]> literals = new ArrayList<byte[]>();
+		ArrayList<Integer> parts = new ArrayList<Integer>();
+		StringBuilder literal = new StringBuilder();
+		StringBuilder text = new StringBuilder();
+		int i = 0;
+		while(i < template.length()) {
+			char c = template.charAt(i);
+			if(c == '{' && i + 1 < template.length() && template.charAt(i + 1) == '{') {
+				literal.append('{');
+				i += 2;
+			}
+			else if(c == '}' && i + 1 < template.length() && template.charAt(i + 1) == '}') {
+				literal.append('}');
+				i += 2;
+			}
+			else if(c == '{') {
+				int end = template.indexOf('}', i);
+				if(end < 0)
+					throw new IllegalArgumentException("Unclosed merge field at " + i + ": " + template);
+				String name = template.substring(i + 1, end);
+				if(!isFieldName(name))
+					throw new IllegalArgumentException("Invalid merge field name '" + name + "' at " + i + ": " + template);
+				literals.add(encode(literal.toString()));
+				text.append(literal);
+				literal.setLength(0);
+				int index = fields.indexOf(name);
+				if(index < 0) {
+					index = fields.size();
+					fields.add(name);
+				}
+				parts.add(index);
+				i = end + 1;
+			}
+			else if(c == '}')
+				throw new IllegalArgumentException("Unopened merge field at " + i + ": " + template);
+			else {
+				literal.append(c);
+				i++;
+			}
+		}
+		literals.add(encode(literal.toString()));
+		text.append(literal);
+
+		int septets = 0;
+		boolean gsm = true;
+		for(int z = 0; z < text.length(); z++) {
+			int count = GsmCharset.septets(text.charAt(z));
+			if(count == 0)
+				gsm = false;
+			septets += count;
+		}
+		if(gsmOnly && !gsm)
+			throw new IllegalArgumentException("Template uses chars outside the GSM alphabet: " + template);
+		int segments = GsmCharset.segments(gsm ? septets : text.length(), gsm);
+		if(segments > maxSegments)
+			throw new IllegalArgumentException("Template text needs " + segments + " segments, more than " + maxSegments + ": " + template);
+
+		int[] partIndexes = new int[parts.size()];
+		for(int z = 0; z < partIndexes.length; z++)
+			partIndexes[z] = parts.get(z);
+		return new MessageTemplate(template, fields.toArray(new String[fields.size()]), literals.toArray(new byte[literals.size()][]),
+				partIndexes, septets, text.length(), gsm, maxSegments, gsmOnly);
+	}
+
+	private static boolean isFieldName(String name) {
+		if(name.length() == 0)
+			return false;
+		for(int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if(!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_'))
+				return false;
+		}
+		return true;
+	}
+
+	private static byte[] encode(String text) {
+		byte[] buffer = new byte[text.length() * 9];
+		int length = encode(text, buffer, 0);
+		byte[] encoded = new byte[length];
+		System.arraycopy(buffer, 0, encoded, 0, length);
+		return encoded;
+	}
+
+	/**
+	 * Form url encode a string in UTF-8, like URLEncoder, the buffer needs 9 bytes per char
+	 *
+	 * @return position after the encoded string
+	 */
+	private static int encode(String value, byte[] buffer, int position) {
+		int length = value.length();
+		for(int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '.' || c == '-' || c == '*' || c == '_')
+				buffer[position++] = (byte) c;
+			else if(c == ' ')
+				buffer[position++] = '+';
+			else if(c < 0x80)
+				position = percent(buffer, position, c);
+			else if(c < 0x800) {
+				position = percent(buffer, position, 0xC0 | c >> 6);
+				position = percent(buffer, position, 0x80 | c & 0x3F);
+			}
+			else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				position = percent(buffer, position, 0xF0 | codePoint >> 18);
+				position = percent(buffer, position, 0x80 | codePoint >> 12 & 0x3F);
+				position = percent(buffer, position, 0x80 | codePoint >> 6 & 0x3F);
+				position = percent(buffer, position, 0x80 | codePoint & 0x3F);
+			}
+			else if(Character.isSurrogate(c))
+				position = percent(buffer, position, '?');
+			else {
+				position = percent(buffer, position, 0xE0 | c >> 12);
+				position = percent(buffer, position, 0x80 | c >> 6 & 0x3F);
+				position = percent(buffer, position, 0x80 | c & 0x3F);
+			}
+		}
+		return position;
+	}
+
+	private static int percent(byte[] buffer, int position, int b) {
+		buffer[position] = '%';
+		buffer[position + 1] = HEX[b >> 4 & 0xF];
+		buffer[position + 2] = HEX[b & 0xF];
+		return position + 3;
+	}
+
+	/**
+	 * Return the merge field names, in the order expected by {@link #render(String...)}
+	 *
+	 * @return field names, in order of first use in the template
+	 */
+	public String[] getFields() {
+		return fields.clone();
+	}
+
+	/**
+	 * Return true if the text of the template only uses the GSM alphabet
+	 *
+	 * @return boolean TRUE if the template text is GSM
+	 */
+	public boolean isGsm() {
+		return literalGsm;
+	}
+
+	/**
+	 * Return the number of segments of the template text, with empty merge fields
+	 *
+	 * @return minimum number of segments of a rendered message
+	 */
+	public int getMinSegments() {
+		return GsmCharset.segments(literalGsm ? literalSeptets : literalChars, literalGsm);
+	}
+
+	/**
+	 * Render the template for a recipient
+	 *
+	 * @param values the merge field values, in the order of {@link #getFields()}
+	 * @return the rendered message, ready to send
+	 * @throws IllegalArgumentException if a value is missing, uses chars outside the GSM alphabet, or if the message is too long
+	 */
+	public EncodedMessage render(String... values) {
+		if(values.length < fields.length)
+			throw new IllegalArgumentException("Missing value for merge field '" + fields[values.length] + "'");
+		int capacity = literalBytes;
+		int septets = literalSeptets;
+		int chars = literalChars;
+		boolean gsm = literalGsm;
+		for(int part: parts) {
+			String value = values[part];
+			if(value == null)
+				throw new IllegalArgumentException("Missing value for merge field '" + fields[part] + "'");
+			capacity += value.length() * 9;
+			chars += value.length();
+			for(int i = 0; i < value.length(); i++) {
+				int count = GsmCharset.septets(value.charAt(i));
+				if(count == 0)
+					gsm = false;
+				septets += count;
+			}
+		}
+		if(gsmOnly && !gsm)
+			throw new IllegalArgumentException("Merge field values use chars outside the GSM alphabet");
+		int units = gsm ? septets : chars;
+		if(GsmCharset.segments(units, gsm) > maxSegments)
+			throw new IllegalArgumentException("Rendered message needs " + GsmCharset.segments(units, gsm) + " segments, more than " + maxSegments);
+
+		byte[] buffer = BUFFER.get();
+		if(buffer.length < capacity) {
+			buffer = new byte[Math.max(capacity, buffer.length * 2)];
+			BUFFER.set(buffer);
+		}
+		int position = 0;
+		for(int i = 0; i < parts.length; i++) {
+			byte[] literal = literals[i];
+			System.arraycopy(literal, 0, buffer, position, literal.length);
+			position += literal.length;
+			position = encode(values[parts[i]], buffer, position);
+		}
+		byte[] last = literals[parts.length];
+		System.arraycopy(last, 0, buffer, position, last.length);
+		position += last.length;
+		return new EncodedMessage(new String(buffer, 0, position, StandardCharsets.ISO_8859_1), units, gsm);
+	}
+
+	/**
+	 * Render the template for a recipient
+	 *
+	 * @param values the merge field values by field name
+	 * @return the rendered message, ready to send
+	 * @throws IllegalArgumentException if a value is missing, uses chars outside the GSM alphabet, or if the message is too long
+	 */
+	public EncodedMessage render(Map<String, String> values) {
+		String[] ordered = new String[fields.length];
+		for(int i = 0; i < fields.length; i++)
+			ordered[i] = values.get(fields[i]);
+		return render(ordered);
+	}
+
+	@Override
+	public String toString() {
+		return "MessageTemplate [" + template + "]";
+	}
+}
@@ -0,0 +1,179 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Parser of large delivery report responses on a ForkJoinPool.<p>
+ *
+ * The response is split at the report elements, and the rows of each report at row element boundaries, into chunks
+ * parsed at the same time with StAX. The rows of the chunks are then added to their report in the order of the
+ * response, so the result is the same as {@link RestClient#parseDeliveryReport(String)} on one thread.
+ *
+ * @version 1.0
+ */
+class ParallelReportParser {
+	final private static String REPORT = "<report";
+	final private static String ROW = "<reportrow";
+	final private static int MIN_CHUNK = 256 * 1024;
+
+	private final ForkJoinPool pool;
+
+	ParallelReportParser(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	DeliveryReport[] parse(String xml) throws Exception {
+		int chunkSize = Math.max(MIN_CHUNK, xml.length() / (pool.getParallelism() * 4));
+		List<DeliveryReport> reports = new ArrayList<DeliveryReport>();
+		List<List<Chunk>> chunks = new ArrayList<List<Chunk>>();
+		int position = 0;
+		while((position = nextReport(xml, position)) >= 0) {
+			int tagEnd = tagEnd(xml, position);
+			if(tagEnd < 0)
+				throw new XMLStreamException("Unterminated report element at " + position);
+			boolean empty = xml.charAt(tagEnd - 1) == '/';
+			reports.add(header(empty ? xml.substring(position, tagEnd + 1) : xml.substring(position, tagEnd) + "/>"));
+			List<Chunk> tasks = new ArrayList<Chunk>();
+			chunks.add(tasks);
+			if(empty) {
+				position = tagEnd + 1;
+				continue;
+			}
+			int end = xml.indexOf("</report>", tagEnd);
+			if(end < 0)
+				throw new XMLStreamException("Unterminated report element at " + position);
+			int start = tagEnd + 1;
+			while(start < end) {
+				int split = start + chunkSize < end ? xml.indexOf(ROW, start + chunkSize) : -1;
+				if(split < 0 || split > end)
+					split = end;
+				Chunk chunk = new Chunk(xml, start, split);
+				chunk.task = pool.submit(chunk);
+				tasks.add(chunk);
+				start = split;
+			}
+			position = end + 9;
+		}
+		DeliveryReport[] result = reports.toArray(new DeliveryReport[0]);
+		for(int i = 0; i < result.length; i++) {
+			for(Chunk chunk: chunks.get(i)) {
+				chunk.task.join();
+				if(chunk.error != null) {
+					for(List<Chunk> tasks: chunks) {
+						for(Chunk other: tasks)
+							other.task.cancel(false);
+					}
+					throw chunk.error;
+				}
+				result[i].addRows(chunk.rows);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Return the start of the next report element, skipping the row elements
+	 */
+	private static int nextReport(String xml, int from) {
+		int position = from;
+		while((position = xml.indexOf(REPORT, position)) >= 0) {
+			int next = position + REPORT.length();
+			if(next < xml.length() && (Character.isWhitespace(xml.charAt(next)) || xml.charAt(next) == '>' || xml.charAt(next) == '/'))
+				return position;
+			position = next;
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the end of the start tag at a position, a '>' inside a quoted attribute value does not end it
+	 */
+	private static int tagEnd(String xml, int from) {
+		char quote = 0;
+		for(int i = from; i < xml.length(); i++) {
+			char c = xml.charAt(i);
+			if(quote != 0) {
+				if(c == quote)
+					quote = 0;
+			}
+			else if(c == '"' || c == '\'')
+				quote = c;
+			else if(c == '>')
+				return i;
+		}
+		return -1;
+	}
+
+	private static DeliveryReport header(String element) throws Exception {
+		XMLStreamReader reader = DeliveryReportReader.FACTORY.createXMLStreamReader(new StringReader(element));
+		try {
+			reader.nextTag();
+			return new DeliveryReport(attribute(reader, "name"), attribute(reader, "last_updated"), attribute(reader, "extension"));
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static String attribute(XMLStreamReader reader, String name) {
+		String value = reader.getAttributeValue(null, name);
+		return value != null ? value : "";
+	}
+
+	/**
+	 * Rows of one chunk of a report, or the error that stopped its parsing
+	 */
+	private static class Chunk implements Runnable {
+		private final String xml;
+		private final int start;
+		private final int end;
+		ForkJoinTask<?> task;
+		List<Hashtable<String, String>> rows;
+		XMLStreamException error;
+
+		Chunk(String xml, int start, int end) {
+			this.xml = xml;
+			this.start = start;
+			this.end = end;
+		}
+
+		public void run() {
+			try {
+				rows = parse();
+			} catch (XMLStreamException e) {
+				error = e;
+			}
+		}
+
+		private List<Hashtable<String, String>> parse() throws XMLStreamException {
+			List<Hashtable<String, String>> rows = new ArrayList<Hashtable<String, String>>();
+			// the chunk holds whole row elements, a wrapper element makes it a document
+			XMLStreamReader reader = DeliveryReportReader.FACTORY.createXMLStreamReader(new StringReader("<rows>" + xml.substring(start, end) + "</rows>"));
+			try {
+				reader.nextTag();
+				while(reader.hasNext()) {
+					if(reader.next() != XMLStreamConstants.START_ELEMENT)
+						continue;
+					Hashtable<String, String> row = new Hashtable<String, String>();
+					row.put("last_updated", attribute(reader, "last_updated"));
+					row.put("mobile_number", attribute(reader, "mobile_number"));
+					row.put("message_id", attribute(reader, "message_id"));
+					row.put("status", attribute(reader, "status"));
+					row.put("custom", attribute(reader, "custom"));
+					rows.add(row);
+				}
+			} finally {
+				reader.close();
+			}
+			return rows;
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * RestTransport answering the calls with the responses recorded by a {@link TrafficRecorder}, without network access<p>
+ *
+ * A call is answered with the next recorded response of the same method and service, e.g. "GET deliveryReport/all",
+ * going back to the first one when they have all been served, so a recording can drive a benchmark loop. With the
+ * original timing each response takes the time the gateway took, otherwise it is returned at once, which measures
+ * the client alone. A call that was never recorded fails with an IOException.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see RestClient#setTransport(RestTransport)
+ * @see TrafficRecorder
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *RestClient tmClient = new RestClient("myuser", "mypass", RestClient.ENV_SANDBOX);
+ *ReplayTransport replay = new ReplayTransport(Paths.get("traffic-20170301.tmtr"));
+ *replay.setOriginalTiming(false);
+ *tmClient.setTransport(replay);
+ *DeliveryReport[] reports = tmClient.getDeliveryReport("all");
+ *</pre></blockquote>
+ */
+public class ReplayTransport implements RestTransport {
+	private final HashMap<String, Recorded[]> recordings = new HashMap<String, Recorded[]>();
+	private final HashMap<String, AtomicInteger> cursors = new HashMap<String, AtomicInteger>();
+	private final int size;
+	private volatile boolean originalTiming = true;
+
+	/**
+	 * Constructor for the ReplayTransport class, loading a recording in memory.<p>
+	 *
+	 * @param file the recording file
+	 * @throws IOException if the file can not be read or is not a recording
+	 */
+	public ReplayTransport(Path file) throws IOException {
+		HashMap<String, List<Recorded>> loaded = new HashMap<String, List<Recorded>>();
+		int count = 0;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file), 65536), 65536));
+		try {
+			if(in.readInt() != TrafficRecorder.MAGIC)
+				throw new IOException(file + " is not a traffic recording");
+			int version = in.readInt();
+			if(version != TrafficRecorder.VERSION)
+				throw new IOException("Unsupported recording version " + version);
+			while(true) {
+				Recorded recorded;
+				try {
+					if(in.readLong() < 0)
+						break;
+					recorded = new Recorded(in);
+				} catch (EOFException e) {
+					// recorder not closed, keep the complete records
+					break;
+				}
+				String key = recorded.method + " " + recorded.service;
+				List<Recorded> list = loaded.get(key);
+				if(list == null) {
+					list = new ArrayList<Recorded>();
+					loaded.put(key, list);
+				}
+				list.add(recorded);
+				count++;
+			}
+		} finally {
+			in.close();
+		}
+		for(String key: loaded.keySet()) {
+			recordings.put(key, loaded.get(key).toArray(new Recorded[0]));
+			cursors.put(key, new AtomicInteger());
+		}
+		this.size = count;
+	}
+
+	/**
+	 * Set if the responses take the time the gateway took, true by default
+	 *
+	 * @param originalTiming boolean TRUE to wait the recorded time, FALSE to answer at once
+	 */
+	public void setOriginalTiming(boolean originalTiming) {
+		this.originalTiming = originalTiming;
+	}
+
+	/**
+	 * Return the number of recorded calls
+	 *
+	 * @return number of calls in the recording
+	 */
+	public int size() {
+		return size;
+	}
+
+	public RestResponse execute(RestRequest request, String url, byte[] body) throws IOException {
+		String key = request.getMethod() + " " + request.getService();
+		Recorded[] recorded = recordings.get(key);
+		if(recorded == null)
+			throw new IOException("No recorded response for " + key);
+		Recorded next = recorded[(cursors.get(key).getAndIncrement() & Integer.MAX_VALUE) % recorded.length];
+		long start = System.nanoTime();
+		if(originalTiming && next.elapsedNanos > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(next.elapsedNanos);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while replaying " + key);
+			}
+		}
+		Hashtable<String, String> headers = new Hashtable<String, String>(next.headers);
+		if(request.isStreaming() && next.status >= 200 && next.status < 300)
+			return new RestResponse(next.status, new ByteArrayInputStream(next.body), System.nanoTime() - start, headers);
+		return new RestResponse(next.status, new String(next.body, StandardCharsets.UTF_8), next.body.length, System.nanoTime() - start, headers);
+	}
+
+	/**
+	 * One recorded call
+	 */
+	private static class Recorded {
+		final long elapsedNanos;
+		final String method;
+		final String service;
+		final int status;
+		final Hashtable<String, String> headers;
+		final byte[] body;
+
+		Recorded(DataInputStream in) throws IOException {
+			this.elapsedNanos = in.readLong();
+			this.method = TrafficRecorder.readString(in);
+			this.service = TrafficRecorder.readString(in);
+			// the request parameters are kept in the file for analysis, the responses are matched by service
+			TrafficRecorder.readParams(in);
+			TrafficRecorder.readParams(in);
+			this.status = in.readInt();
+			this.headers = TrafficRecorder.readParams(in);
+			in.readBoolean();
+			this.body = TrafficRecorder.readBytes(in);
+		}
+	}
+}
@@ -0,0 +1,243 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Interceptor caching the responses of slow-changing read-only endpoints<p>
+ *
+ * Only the endpoints given a time to live with {@link #setTtl(String, long)} are cached, e.g. "GET keywords",
+ * "GET groups" or "GET deliveryReports". A cached response is returned from memory until its time to live is over.
+ * After that, if the gateway sent an ETag or Last-Modified header, the response is revalidated with a conditional
+ * request and a 304 answer keeps the cached body. The cache holds a maximum number of entries and evicts the least
+ * recently used one.<p>
+ *
+ * Successful writes made through the same client invalidate the entries they change, e.g. addGroup and
+ * addNumbersToGroup invalidate the groups and the group, sendSMS and the credit transfers invalidate the credits.
+ * Other entries can be invalidated with {@link #invalidate(String)}.<p>
+ *
+ * Requests are not keyed by account, use one instance per RestClient.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see RestClient#addInterceptor(RestInterceptor)
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *ResponseCache cache = new ResponseCache(1000);
+ *cache.setTtl("GET keywords", 3600000);
+ *cache.setTtl("GET groups", 60000);
+ *cache.setTtl("GET deliveryReports", 60000);
+ *RestClient tmClient = new RestClient("myuser", "mypass", RestClient.ENV_SANDBOX);
+ *tmClient.addInterceptor(cache);
+ *</pre></blockquote>
+ */
+public class ResponseCache implements RestInterceptor {
+	private final int maxEntries;
+	private final ConcurrentHashMap<String, Long> ttls = new ConcurrentHashMap<String, Long>();
+	private final LinkedHashMap<String, Cached> entries;
+	private final ArrayList<Fetch> fetches = new ArrayList<Fetch>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong revalidated = new AtomicLong();
+
+	/**
+	 * Constructor for the ResponseCache class.<p>
+	 *
+	 * @param maxEntries maximum number of cached responses
+	 */
+	public ResponseCache(final int maxEntries) {
+		if(maxEntries < 1)
+			throw new IllegalArgumentException("maxEntries must be at least 1");
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+				return size() > ResponseCache.this.maxEntries;
+			}
+
+			private static final long serialVersionUID = 1L;
+		};
+	}
+
+	/**
+	 * Set the time to live of the responses of an endpoint, endpoints without a time to live are not cached
+	 *
+	 * @param endpoint		the endpoint, e.g. "GET keywords" or "GET deliveryReport"
+	 * @param ttlMillis		time to live in milliseconds, 0 to stop caching the endpoint
+	 */
+	public void setTtl(String endpoint, long ttlMillis) {
+		if(ttlMillis > 0)
+			ttls.put(endpoint, TimeUnit.MILLISECONDS.toNanos(ttlMillis));
+		else
+			ttls.remove(endpoint);
+	}
+
+	/**
+	 * Remove the cached responses of the services starting with a prefix
+	 *
+	 * @param servicePrefix start of the service, e.g. "group/" or "deliveryReport/all"
+	 */
+	public synchronized void invalidate(String servicePrefix) {
+		Iterator<Cached> it = entries.values().iterator();
+		while(it.hasNext()) {
+			if(it.next().service.startsWith(servicePrefix))
+				it.remove();
+		}
+		// a response read before the invalidation must not be cached after it
+		for(Fetch fetch: fetches) {
+			if(fetch.service.startsWith(servicePrefix))
+				fetch.stale = true;
+		}
+	}
+
+	/**
+	 * Remove all the cached responses
+	 */
+	public synchronized void invalidateAll() {
+		entries.clear();
+		for(Fetch fetch: fetches)
+			fetch.stale = true;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Return the number of expired responses kept after a 304 answer
+	 *
+	 * @return number of revalidated responses
+	 */
+	public long getRevalidatedCount() {
+		return revalidated.get();
+	}
+
+	public RestResponse intercept(Chain chain) throws Exception {
+		RestRequest request = chain.request();
+		if(!request.isReadOnly()) {
+			RestResponse response = chain.proceed(request);
+			if(response.isSuccessful())
+				invalidateAfterWrite(request);
+			return response;
+		}
+		Long ttl = ttls.get(RestClient.getEndpoint(request));
+		if(ttl == null || request.isStreaming())
+			return chain.proceed(request);
+
+		String key = SingleFlightInterceptor.key(request);
+		Cached entry;
+		synchronized(this) {
+			entry = entries.get(key);
+		}
+		long now = System.nanoTime();
+		if(entry != null && now < entry.expires) {
+			hits.incrementAndGet();
+			return entry.response;
+		}
+		misses.incrementAndGet();
+		if(entry != null) {
+			if(entry.etag != null)
+				request.setHeader("If-None-Match", entry.etag);
+			if(entry.lastModified != null)
+				request.setHeader("If-Modified-Since", entry.lastModified);
+		}
+		Fetch fetch = begin(request.getService());
+		try {
+			RestResponse response = chain.proceed(request);
+			if(response.getStatus() == 304 && entry != null) {
+				revalidated.incrementAndGet();
+				put(key, fetch, new Cached(request.getService(), entry.response, entry.etag, entry.lastModified, System.nanoTime() + ttl));
+				return entry.response;
+			}
+			if(response.getStatus() == 200)
+				put(key, fetch, new Cached(request.getService(), new RestResponse(200, response.getBody(), response.getBytes(), 0, response.getHeaders()),
+						response.getHeader("ETag"), response.getHeader("Last-Modified"), System.nanoTime() + ttl));
+			return response;
+		} finally {
+			end(fetch);
+		}
+	}
+
+	private synchronized Fetch begin(String service) {
+		Fetch fetch = new Fetch(service);
+		fetches.add(fetch);
+		return fetch;
+	}
+
+	private synchronized void end(Fetch fetch) {
+		fetches.remove(fetch);
+	}
+
+	/**
+	 * Cache a response, unless its service was invalidated while it was read
+	 */
+	private synchronized void put(String key, Fetch fetch, Cached entry) {
+		if(!fetch.stale)
+			entries.put(key, entry);
+	}
+
+	/**
+	 * Invalidate the responses changed by a successful write
+	 */
+	private void invalidateAfterWrite(RestRequest request) {
+		String service = request.getService();
+		if(service.startsWith("group/")) {
+			invalidate("groups");
+			invalidate(service);
+		}
+		else if(service.equals("sms") || service.startsWith("sms/")) {
+			invalidate("credits");
+			invalidate("deliveryReport");
+		}
+		else if(service.equals("credits"))
+			invalidate("credits");
+		else
+			invalidate(service);
+	}
+
+	/**
+	 * Request sent for a cache miss, marked stale when its service is invalidated before it is answered
+	 */
+	private static class Fetch {
+		final String service;
+		boolean stale;
+
+		Fetch(String service) {
+			this.service = service;
+		}
+	}
+
+	/**
+	 * Cached response with its validators
+	 */
+	private static class Cached {
+		final String service;
+		final RestResponse response;
+		final String etag;
+		final String lastModified;
+		final long expires;
+
+		Cached(String service, RestResponse response, String etag, String lastModified, long expires) {
+			this.service = service;
+			this.response = response;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.expires = expires;
+		}
+	}
+}
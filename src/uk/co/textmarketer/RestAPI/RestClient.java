@@ -1,12 +1,12 @@
 package uk.co.textmarketer.RestAPI;
 
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.StringReader;
-import java.net.HttpURLConnection;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.text.ParseException;
@@ -15,6 +15,12 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.Hashtable;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -43,20 +49,31 @@ import org.xml.sax.SAXException;
  * @version {@value #VERSION}
  */
 public class RestClient {
-	final private static int HTTP_GET		= 1;
-	final private static int HTTP_POST		= 2;
-	final private static int HTTP_PUT		= 3;
-	final private static int HTTP_DELETE	= 4;
+	final private static String HTTP_GET	= "GET";
+	final private static String HTTP_POST	= "POST";
+	final private static String HTTP_PUT	= "PUT";
+	final private static String HTTP_DELETE	= "DELETE";
 	
-	final private static String PROD_URL = "https://api.textmarketer.co.uk/services/rest/";
-	final private static String SAND_URL = "http://sandbox.api.textmarketer.co.uk/services/rest/";
+	final static String PROD_URL = "https://api.textmarketer.co.uk/services/rest/";
+	final static String SAND_URL = "http://sandbox.api.textmarketer.co.uk/services/rest/";
 	final private static String APICLIENT = "tm-java-";
 	final private static String VERSION = "1.4.1";
+	final private static int PARALLEL_PARSE_THRESHOLD = 4 * 1024 * 1024;
+	final private static int DEFAULT_CONNECT_TIMEOUT = 10000;
+	final private static int DEFAULT_READ_TIMEOUT = 60000;
 	
-	private String xmlResponse;
+	// last successful response, for getXML only
+	private volatile String xmlResponse;
 	private Hashtable<String, String> params;
-	private Hashtable<String, String> errors;
-	private boolean production;
+	private volatile Hashtable<String, String> errors;
+	private volatile boolean businessErrorStackTraces = true;
+	private String baseUrl;
+	private volatile RestInterceptor[] interceptors = new RestInterceptor[0];
+	private volatile RestTransport transport = new UrlConnectionTransport();
+	private volatile CircuitBreaker circuitBreaker;
+	private volatile ParallelReportParser reportParser;
+	private volatile Timeouts timeouts = new Timeouts(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT, 0);
+	private final ConcurrentHashMap<String, Timeouts> endpointTimeouts = new ConcurrentHashMap<String, Timeouts>();
 	
 	final public static boolean ENV_SANDBOX = false;
 	final public static boolean ENV_PRODUCTION = true;
@@ -74,7 +91,23 @@ public class RestClient {
 	 *</pre></blockquote>
 	 */
 	public RestClient(String username, String password, boolean env) {
-		this.production = env;
+		this(username, password, env ? PROD_URL : SAND_URL);
+	}
+	
+	/**
+	 * Constructor for the RestClient class, using a given gateway base URL, e.g. a {@link StubServer} for offline tests.<p>
+	 * 
+	 * @param username 	your API Gateway Username
+	 * @param password 	your API Gateway Password
+	 * @param baseUrl	base URL of the REST services, e.g. https://api.textmarketer.co.uk/services/rest/
+	 *
+	 *<p><b>Example:</b></p>
+	 *<blockquote><pre>
+	 *RestClient tmClient = new RestClient("myuser", "mypass", "http://127.0.0.1:8080/services/rest/");
+	 *</pre></blockquote>
+	 */
+	public RestClient(String username, String password, String baseUrl) {
+		this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
 		errors = new Hashtable<String, String>();
 		params = new Hashtable<String, String>();
 		params.put("password", password);
@@ -126,19 +159,33 @@ public class RestClient {
 	 *</pre></blockquote>
      */
     public int getCredits() throws RestClientException {
+    	return readCredits(false);
+    }
+    
+    /**
+     * Get the number of credits currently available on the account
+     * 
+     * @param required	true to fail when the response has no credits element, instead of returning 0
+     * @return number of credits
+     * @throws RestClientException on error
+     */
+    int readCredits(boolean required) throws RestClientException {
         int credits = 0;
+    	String xml;
     	try {
-    		xmlResponse = restGatewayCall("credits", HTTP_GET, null);
+    		xml = restGatewayCall("credits", HTTP_GET, null);
         	DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
         	DocumentBuilder docBuilder;
 			try {
 				docBuilder = docBuilderFactory.newDocumentBuilder();
-				Document doc = docBuilder.parse (new InputSource(new StringReader(xmlResponse)));
+				Document doc = docBuilder.parse (new InputSource(new StringReader(xml)));
 				
 				NodeList creditsList = doc.getElementsByTagName("credits");
 				if(creditsList.getLength() > 0) {
 					credits = Integer.parseInt(creditsList.item(0).getTextContent());
 				}
+				else if(required)
+					throw new RestClientException("Response has no credits element", 0, null, false, true);
 			} catch (Exception e) {
 				throw new RestClientException(e);
 			}
@@ -180,6 +227,13 @@ public class RestClient {
 	 *</pre></blockquote>
      */
     public Hashtable<String, String> sendSMS(String message, String mobile_number, String originator, int validity, String email, String custom, Date schedule, boolean checkStop)  throws RestClientException {
+    	return postSMS(message, null, mobile_number, originator, validity, email, custom, schedule, checkStop, null);
+    }
+    
+    /**
+     * Send a text message, given as text or as a message rendered by a MessageTemplate
+     */
+    private Hashtable<String, String> postSMS(String message, EncodedMessage encoded, String mobile_number, String originator, int validity, String email, String custom, Date schedule, boolean checkStop, Deadline deadline)  throws RestClientException {
     	if(validity < 1 || validity > 72)
     		validity = 72;
     	if(email == null)
@@ -188,7 +242,8 @@ public class RestClient {
     		custom = "";
     	
     	Hashtable<String, String> extraparams = new Hashtable<String, String>();
-    	extraparams.put("message", message);
+    	if(encoded == null)
+    		extraparams.put("message", message);
     	extraparams.put("mobile_number", mobile_number);
     	extraparams.put("originator", originator);
     	extraparams.put("validity", Integer.toString(validity));
@@ -200,12 +255,17 @@ public class RestClient {
     		SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssz");
     		extraparams.put("schedule", df.format(schedule));
     	}
+    	RestRequest request = new RestRequest("sms", HTTP_POST, extraparams);
+    	if(encoded != null)
+    		request.setEncodedParam("message", encoded.getEncoded());
+    	request.setDeadline(deadline);
+    	String xml;
     	try {
-    		xmlResponse = restGatewayCall("sms", HTTP_POST, extraparams);
+    		xml = restGatewayCall(request);
     	} catch (Exception e) {
 			throw new RestClientException(e);
 		}
-    	return parseResponseXML(xmlResponse, "");
+    	return parseResponseXML(xml, "");
     }
     
     /**
@@ -221,6 +281,33 @@ public class RestClient {
     	return sendSMS(message, mobile_number, originator, 0, null, null, null, false);
     }
     
+    /**
+     * Send a text message described by a SmsRequest.
+     * 
+     * @param request		the message, recipient, originator and optional parameters
+     * @return Hash table with keys: message_id, scheduled_id, credits_used and status
+     * @throws RestClientException on error
+     */
+    public Hashtable<String, String> sendSMS(SmsRequest request)  throws RestClientException {
+    	EncodedMessage encoded = request.getEncodedMessage();
+    	return postSMS(encoded == null ? request.getMessage() : null, encoded, request.getMobileNumber(), request.getOriginator(), request.getValidity(),
+    			request.getEmail(), request.getCustom(), request.getSchedule(), request.isCheckStop(), request.getDeadline());
+    }
+    
+    /**
+     * Send a text message rendered by a MessageTemplate, without encoding it again.
+     * 
+     * @param message		the rendered message
+     * @param mobile_number	The mobile number of the intended recipient, in international format, e.g. 447777123123.
+     * @param originator	A string (up to 11 alpha-numeric characters) or the international mobile number (up to 16 digits) of the sender.
+     * @return Hash table with keys: message_id, scheduled_id, credits_used and status
+     * @throws RestClientException on error
+     * @see MessageTemplate
+     */
+    public Hashtable<String, String> sendSMS(EncodedMessage message, String mobile_number, String originator)  throws RestClientException {
+    	return postSMS(null, message, mobile_number, originator, 0, null, null, null, false, null);
+    }
+    
     /**
      * Send a text message to the specified recipient, with a limited validity to be delivered.
      * 
@@ -309,12 +396,13 @@ public class RestClient {
     	Hashtable<String, String> extraparams = new Hashtable<String, String>();
     	extraparams.put("quantity", Integer.toString(quantity));
     	extraparams.put("target", target);
+    	String xml;
     	try {
-    		xmlResponse = restGatewayCall("credits", HTTP_POST, extraparams);
+    		xml = restGatewayCall("credits", HTTP_POST, extraparams);
     	} catch (Exception e) {
 			throw new RestClientException(e);
 		}
-    	return parseResponseXML(xmlResponse, "");
+    	return parseResponseXML(xml, "");
     }
     
     /**
@@ -344,12 +432,13 @@ public class RestClient {
     	extraparams.put("quantity", Integer.toString(quantity));
     	extraparams.put("target_username", target_username);
     	extraparams.put("target_password", target_password);
+    	String xml;
     	try {
-    		xmlResponse = restGatewayCall("credits", HTTP_POST, extraparams);
+    		xml = restGatewayCall("credits", HTTP_POST, extraparams);
     	} catch (Exception e) {
 			throw new RestClientException(e);
 		}
-    	return parseResponseXML(xmlResponse, "");
+    	return parseResponseXML(xml, "");
     }
     
     /**
@@ -374,12 +463,13 @@ public class RestClient {
 	 *</pre></blockquote>
      */
     public Hashtable<String, String> getKeyword(String keyword) throws RestClientException {
+    	String xml;
     	try {
-    		xmlResponse = restGatewayCall("keywords/" + URLEncoder.encode(keyword, "UTF-8"), HTTP_GET, null);
+    		xml = restGatewayCall("keywords/" + URLEncoder.encode(keyword, "UTF-8"), HTTP_GET, null);
     	} catch (Exception e) {
 			throw new RestClientException(e);
 		}
-    	return parseResponseXML(xmlResponse, "");
+    	return parseResponseXML(xml, "");
     }
     
     /**
@@ -409,12 +499,13 @@ public class RestClient {
 	 *</pre></blockquote>
      */
     public Hashtable<String, String>[] getGroups() throws RestClientException {
+    	String xml;
     	try {
-    		xmlResponse = restGatewayCall("groups", HTTP_GET, null);
+    		xml = restGatewayCall("groups", HTTP_GET, null);
     	} catch (Exception e) {
 			throw new RestClientException(e);
 		}
-    	return parseResponseGroupsXML(xmlResponse, "group");
+    	return parseResponseGroupsXML(xml, "group");
     }
     
     /**
@@ -437,15 +528,19 @@ public class RestClient {
 	 *}
 	 *}
 	 *</pre></blockquote>
+	 * @see #openGroup(String)
      */
     public String[] getGroup(String group) throws RestClientException {
+    	String xml;
     	try {
-    		xmlResponse = restGatewayCall("group/" + URLEncoder.encode(group, "UTF-8"), HTTP_GET, null);
+    		xml = restGatewayCall("group/" + URLEncoder.encode(group, "UTF-8"), HTTP_GET, null);
     		
+    		GatewayEvents.Parse event = new GatewayEvents.Parse();
+    		event.begin();
     		DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
         	DocumentBuilder docBuilder;
     		docBuilder = docBuilderFactory.newDocumentBuilder();
-			Document doc = docBuilder.parse (new InputSource(new StringReader(xmlResponse)));
+			Document doc = docBuilder.parse (new InputSource(new StringReader(xml)));
 			
 			NodeList nodes = doc.getElementsByTagName("number");
 			String[] numbers = new String[nodes.getLength()];
@@ -453,12 +548,36 @@ public class RestClient {
 				Node node = nodes.item(i);
 				numbers[i] = node.getTextContent();
 			}
+			commitParse(event, "group", xml, false);
     		return numbers;
     	} catch (Exception e) {
 			throw new RestClientException(e);
 		}
     }
     
+    /**
+     * Open the numbers of a group as a stream, without loading the group in memory.<p>
+     * The numbers are read from the response while iterating, so the reader must be closed to release the connection.
+     * 
+     * @param group group name or group ID to retrieve
+     * @return GroupReader positioned before the first number
+     * @throws RestClientException
+     * @see GroupReader
+     */
+    public GroupReader openGroup(String group) throws RestClientException {
+    	try {
+    		InputStream in = restGatewayStream("group/" + URLEncoder.encode(group, "UTF-8"), HTTP_GET, null);
+    		try {
+    			return new GroupReader(in);
+    		} catch (Exception e) {
+    			in.close();
+    			throw e;
+    		}
+    	} catch (Exception e) {
+			throw new RestClientException(e);
+		}
+    }
+    
     /**
      * Add a number/numbers to a 'send group' (excluding 'merge' groups).
      * 
@@ -485,12 +604,13 @@ public class RestClient {
     public int addNumbersToGroup(String group, String numbers) throws RestClientException {
     	Hashtable<String, String> extraparams = new Hashtable<String, String>();
     	extraparams.put("numbers", numbers);
+    	String xml;
     	try {
-    		xmlResponse = restGatewayCall("group/" + URLEncoder.encode(group, "UTF-8"), HTTP_POST, extraparams);
+    		xml = restGatewayCall("group/" + URLEncoder.encode(group, "UTF-8"), HTTP_POST, extraparams);
     		DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
         	DocumentBuilder docBuilder;
     		docBuilder = docBuilderFactory.newDocumentBuilder();
-			Document doc = docBuilder.parse (new InputSource(new StringReader(xmlResponse)));
+			Document doc = docBuilder.parse (new InputSource(new StringReader(xml)));
 			
 			NodeList nodes = doc.getElementsByTagName("added");
 			Node node = nodes.item(0);
@@ -525,8 +645,9 @@ public class RestClient {
      * 
      */
     public boolean addGroup(String group) throws RestClientException {
+    	String xml;
     	try {
-    		xmlResponse = restGatewayCall("group/" + URLEncoder.encode(group, "UTF-8"), HTTP_PUT, null);
+    		xml = restGatewayCall("group/" + URLEncoder.encode(group, "UTF-8"), HTTP_PUT, null);
     	} catch (Exception e) {
 			throw new RestClientException(e);
 		}
@@ -554,13 +675,16 @@ public class RestClient {
 	 *</pre></blockquote>
      */
     public String [] getDeliveryReports() throws RestClientException {
+    	String xml;
     	try {
-    		xmlResponse = restGatewayCall("deliveryReports", HTTP_GET, null);
+    		xml = restGatewayCall("deliveryReports", HTTP_GET, null);
     		
+    		GatewayEvents.Parse event = new GatewayEvents.Parse();
+    		event.begin();
     		DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
         	DocumentBuilder docBuilder;
     		docBuilder = docBuilderFactory.newDocumentBuilder();
-			Document doc = docBuilder.parse (new InputSource(new StringReader(xmlResponse)));
+			Document doc = docBuilder.parse (new InputSource(new StringReader(xml)));
 			
 			NodeList nodes = doc.getElementsByTagName("report");
 			String[] reports = new String[nodes.getLength()];
@@ -568,6 +692,7 @@ public class RestClient {
 				Node node = nodes.item(i).getAttributes().getNamedItem("name");
 				reports[i] = node.getTextContent();
 			}
+			commitParse(event, "deliveryReports", xml, false);
     		return reports;
     	} catch (Exception e) {
 			throw new RestClientException(e);
@@ -605,10 +730,11 @@ public class RestClient {
 	 *
      */
     public DeliveryReport[] getDeliveryReport(String name) throws RestClientException {
+    	String xml;
     	try {
-    		xmlResponse = restGatewayCall("deliveryReport/" + URLEncoder.encode(name, "UTF-8"), HTTP_GET, null);
+    		xml = restGatewayCall("deliveryReport/" + URLEncoder.encode(name, "UTF-8"), HTTP_GET, null);
     		
-    		return parseDeliveryReport(xmlResponse);
+    		return parseReports(xml);
     	} catch (Exception e) {
 			throw new RestClientException(e);
 		}
@@ -646,10 +772,11 @@ public class RestClient {
 	 *</pre></blockquote>
      */
     public DeliveryReport[] getDeliveryReport(String name, String custom) throws RestClientException {
+    	String xml;
     	try {
-    		xmlResponse = restGatewayCall("deliveryReport/" + URLEncoder.encode(name, "UTF-8") + "/custom/" + URLEncoder.encode(custom, "UTF-8"), HTTP_GET, null);
+    		xml = restGatewayCall("deliveryReport/" + URLEncoder.encode(name, "UTF-8") + "/custom/" + URLEncoder.encode(custom, "UTF-8"), HTTP_GET, null);
     		
-    		return parseDeliveryReport(xmlResponse);
+    		return parseReports(xml);
     	} catch (Exception e) {
 			throw new RestClientException(e);
 		}
@@ -691,10 +818,11 @@ public class RestClient {
 	 *</pre></blockquote>
      */
     public DeliveryReport[] getDeliveryReport(String name, Date start, Date end) throws RestClientException {
+    	String xml;
     	try {
     		SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssz");
-    		xmlResponse = restGatewayCall("deliveryReport/" + URLEncoder.encode(name, "UTF-8") + "/" + URLEncoder.encode(df.format(start), "UTF-8") + "/" + URLEncoder.encode(df.format(end), "UTF-8"), HTTP_GET, null);
-    		return parseDeliveryReport(xmlResponse);
+    		xml = restGatewayCall("deliveryReport/" + URLEncoder.encode(name, "UTF-8") + "/" + URLEncoder.encode(df.format(start), "UTF-8") + "/" + URLEncoder.encode(df.format(end), "UTF-8"), HTTP_GET, null);
+    		return parseReports(xml);
     	} catch (Exception e) {
 			throw new RestClientException(e);
 		}
@@ -737,10 +865,38 @@ public class RestClient {
 	 *</pre></blockquote>
      */
     public DeliveryReport[] getDeliveryReport(String name, String custom, Date start, Date end) throws RestClientException {
+    	String xml;
     	try {
     		SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssz");
-    		xmlResponse = restGatewayCall("deliveryReport/" + URLEncoder.encode(name, "UTF-8") + "/custom/" + URLEncoder.encode(custom, "UTF-8") + "/" + URLEncoder.encode(df.format(start), "UTF-8") + "/" + URLEncoder.encode(df.format(end), "UTF-8"), HTTP_GET, null);
-    		return parseDeliveryReport(xmlResponse);
+    		xml = restGatewayCall("deliveryReport/" + URLEncoder.encode(name, "UTF-8") + "/custom/" + URLEncoder.encode(custom, "UTF-8") + "/" + URLEncoder.encode(df.format(start), "UTF-8") + "/" + URLEncoder.encode(df.format(end), "UTF-8"), HTTP_GET, null);
+    		return parseReports(xml);
+    	} catch (Exception e) {
+			throw new RestClientException(e);
+		}
+    }
+    
+    /**
+     * Open a delivery report as a stream of rows, without loading the report in memory.<p>
+     * The rows are read from the response while iterating, so the reader must be closed to release the connection.
+     * 
+     * @param name Name of the delivery report to retrieve or 'all' to retrieve all campaign/API report data
+     * @param custom Optional, restrict the search to the messages with this custom 'tag', or null
+     * @return DeliveryReportReader positioned before the first row
+     * @throws RestClientException
+     * @see DeliveryReportReader
+     */
+    public DeliveryReportReader openDeliveryReport(String name, String custom) throws RestClientException {
+    	try {
+    		String service = "deliveryReport/" + URLEncoder.encode(name, "UTF-8");
+    		if(custom != null && custom.length() > 0)
+    			service += "/custom/" + URLEncoder.encode(custom, "UTF-8");
+    		InputStream in = restGatewayStream(service, HTTP_GET, null);
+    		try {
+    			return new DeliveryReportReader(in);
+    		} catch (Exception e) {
+    			in.close();
+    			throw e;
+    		}
     	} catch (Exception e) {
 			throw new RestClientException(e);
 		}
@@ -797,16 +953,22 @@ public class RestClient {
         if(promoCode != null)
             extraparams.put("promo_code", promoCode);
         extraparams.put("override_pricing", Boolean.toString(overrideRates));
+    	String xml;
     	try {
-    		xmlResponse = restGatewayCall("account/sub", HTTP_POST, extraparams);
+    		xml = restGatewayCall("account/sub", HTTP_POST, extraparams);
     	} catch (Exception e) {
 			throw new RestClientException(e);
 		}
-    	return parseResponseXML(xmlResponse, "account");
+    	return parseResponseXML(xml, "account");
     }
     
     /**
-     * Return the last xml string returned from the last RestClient call
+     * Return the last xml string returned from the last RestClient call<p>
+     * When the client is used by many threads this is the response of the last successful call of any thread, the
+     * methods of the client parse their own response.<p>
+     * The response is returned as the gateway sent it, decoded as UTF-8. Up to version 1.4 it was decoded with the
+     * platform charset, which broke non-ASCII text on platforms that do not default to UTF-8, and its line breaks were
+     * replaced by '\r'.
      * 
      * @return Xml string from the last call to RestClient API
      * 
@@ -834,6 +996,7 @@ public class RestClient {
      * @return Error code integer or 0 if there is no error
      */
     public int getLastErrorCode() {
+    	Hashtable<String, String> errors = this.errors;
     	if(!errors.isEmpty()) {
     		Map.Entry<String, String> error = errors.entrySet().iterator().next();
     		return Integer.parseInt(error.getKey());
@@ -847,6 +1010,7 @@ public class RestClient {
      * @return Error message String or "" if there is no error
      */
     public String getLastErrorMessage() {
+    	Hashtable<String, String> errors = this.errors;
     	if(!errors.isEmpty()) {
     		Map.Entry<String, String> error = errors.entrySet().iterator().next();
     		return error.getValue();
@@ -877,126 +1041,480 @@ public class RestClient {
     public Hashtable<String, String> getLastErrors() {
     	return errors;
     }
-    	
+    
+    /**
+     * Set if the exceptions of expected business errors (HTTP 4xx, e.g. invalid number or not enough credits) 
+     * capture a stack trace, true by default.<p>
+     * Skipping the stack trace makes the failure path much cheaper when many calls fail. The errors are still 
+     * available from the RestClientException.
+     * 
+     * @param capture false to skip the stack trace capture of business errors
+     * @see RestClientException#getErrors()
+     */
+    public void setBusinessErrorStackTraces(boolean capture) {
+    	this.businessErrorStackTraces = capture;
+    }
+
+    /**
+     * Set the transport used to send the requests to the gateway, by default an {@link UrlConnectionTransport}
+     * 
+     * @param transport the RestTransport to use, e.g. an {@link HttpClientTransport}
+     * 
+     *<p><b>Example:</b></p>
+     *<blockquote><pre>
+     *RestClient tmClient = new RestClient("myuser", "mypass", RestClient.ENV_SANDBOX);
+     *tmClient.setTransport(new HttpClientTransport());
+     *</pre></blockquote>
+     */
+    public void setTransport(RestTransport transport) {
+    	if(transport == null)
+    		throw new IllegalArgumentException("transport can not be null");
+    	this.transport = transport;
+    }
+    
+    public RestTransport getTransport() {
+    	return transport;
+    }
+    
+    /**
+     * Prepare the client for its first calls, e.g. before a newly started instance takes traffic.<p>
+     * The gateway host is resolved and the transport opens connections to the gateway, while the XML parsers and the
+     * encoders are loaded on another thread. TLS sessions are cached by the JDK, so later connections resume them.
+     * No call is made through the interceptors or the circuit breaker.
+     * 
+     * @param connections number of connections to open, e.g. the expected number of concurrent calls
+     * @throws RestClientException if the gateway host can not be resolved or reached
+     * 
+     *<p><b>Example:</b></p>
+     *<blockquote><pre>
+     *RestClient tmClient = new RestClient("myuser", "mypass", RestClient.ENV_PRODUCTION);
+     *tmClient.setTransport(new HttpClientTransport());
+     *tmClient.warmUp(4);
+     *</pre></blockquote>
+     */
+    public void warmUp(int connections) throws RestClientException {
+    	if(connections < 1)
+    		throw new IllegalArgumentException("connections must be at least 1");
+    	FutureTask<Void> loading = new FutureTask<Void>(new Callable<Void>() {
+    		public Void call() throws Exception {
+    			warmUpParsers();
+    			return null;
+    		}
+    	});
+    	Thread thread = new Thread(loading, "tm-warmup-parsers");
+    	thread.setDaemon(true);
+    	thread.start();
+    	try {
+    		InetAddress.getAllByName(new URL(baseUrl).getHost());
+    		RestRequest head = new RestRequest("", "HEAD", null);
+    		applyTimeouts(head);
+    		transport.warmUp(head, baseUrl, connections);
+    		loading.get();
+    	} catch (ExecutionException e) {
+    		// class loading can fail with an Error, e.g. NoClassDefFoundError
+    		Throwable cause = e.getCause();
+    		if(cause instanceof Error)
+    			throw (Error) cause;
+    		throw new RestClientException(cause instanceof Exception ? (Exception) cause : e);
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		throw new RestClientException(e);
+    	} catch (IOException e) {
+    		throw new RestClientException(e);
+    	}
+    }
+    
+    /**
+     * Load the XML parsers and the encoders by using them on sample responses and messages
+     */
+    private void warmUpParsers() throws Exception {
+    	parseResponseXML("<response><credits>0</credits></response>", null);
+    	ErrorDecoder.decode(400, "<response><errors><error code=\"1\">warm up</error></errors></response>");
+    	String report = "<response><report name=\"warmup\" last_updated=\"2017-01-01T00:00:00\" extension=\"csv\">"
+    			+ "<reportrow last_updated=\"2017-01-01 00:00:00\" mobile_number=\"447777123123\" message_id=\"1\" status=\"delivered\"/>"
+    			+ "</report></response>";
+    	DeliveryReportReader reader = new DeliveryReportReader(new ByteArrayInputStream(report.getBytes("UTF-8")));
+    	try {
+    		while(reader.next())
+    			reader.getRow();
+    	} finally {
+    		reader.close();
+    	}
+    	Hashtable<String, String> sample = new Hashtable<String, String>();
+    	sample.put("originator", "Warm up \u20ac");
+    	Hashtable<String, String> encoded = new Hashtable<String, String>();
+    	encoded.put("message", MessageTemplate.compile("Warm up {name}").render("\u00e9").getEncoded());
+    	encodeParams(sample, encoded);
+    }
+    
+    /**
+     * Set the circuit breaker used to fail fast when the gateway endpoints are failing or slow, none by default.<p>
+     * A call rejected by an open circuit throws a RestClientException caused by a {@link CircuitBreakerOpenException}.
+     * 
+     * @param circuitBreaker the CircuitBreaker to use, can be shared by many clients, or null to disable it
+     * @see CircuitBreaker
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+    	this.circuitBreaker = circuitBreaker;
+    }
+    
+    public CircuitBreaker getCircuitBreaker() {
+    	return circuitBreaker;
+    }
+    
+    /**
+     * Set the pool parsing the large delivery report responses on many cores, none by default.<p>
+     * The responses of getDeliveryReport larger than 4MB are split into chunks of rows parsed at the same time, and
+     * the rows are merged back in order. Smaller responses are parsed on the calling thread.
+     * 
+     * @param pool the ForkJoinPool to parse with, e.g. ForkJoinPool.commonPool(), null to parse on the calling thread
+     * 
+     *<p><b>Example:</b></p>
+     *<blockquote><pre>
+     *RestClient tmClient = new RestClient("myuser", "mypass", RestClient.ENV_SANDBOX);
+     *tmClient.setParallelParsing(ForkJoinPool.commonPool());
+     *DeliveryReport[] reports = tmClient.getDeliveryReport("all");
+     *</pre></blockquote>
+     */
+    public void setParallelParsing(ForkJoinPool pool) {
+    	this.reportParser = pool != null ? new ParallelReportParser(pool) : null;
+    }
+    
+    /**
+     * Set the timeouts of every call, unless the endpoint of the call has its own timeouts.<p>
+     * The connect timeout bounds the opening of a connection and the read timeout each wait for data from the
+     * gateway, 10 and 60 seconds by default. The call timeout is a deadline for the whole call, through the
+     * interceptors, the limits and the hedge requests, none by default. A call also gets the earliest of that deadline
+     * and the deadline given with its request, e.g. {@link SmsRequest#setDeadline(Deadline)}.<p>
+     * A call over a timeout fails with a RestClientException, caused by a {@link DeadlineExceededException} when the
+     * deadline has passed.
+     * 
+     * @param connectMillis	connect timeout in milliseconds, 0 for none
+     * @param readMillis	read timeout in milliseconds, 0 for none
+     * @param callMillis	call timeout in milliseconds, 0 for none
+     * @see Deadline
+     * 
+     *<p><b>Example:</b></p>
+     *<blockquote><pre>
+     *RestClient tmClient = new RestClient("myuser", "mypass", RestClient.ENV_PRODUCTION);
+     *tmClient.setTimeouts(2000, 5000, 8000);
+     *tmClient.setTimeouts("GET deliveryReport", 2000, 30000, 120000);
+     *</pre></blockquote>
+     */
+    public void setTimeouts(int connectMillis, int readMillis, long callMillis) {
+    	this.timeouts = new Timeouts(connectMillis, readMillis, callMillis);
+    }
+    
+    /**
+     * Set the timeouts of the calls to an endpoint, see {@link #setTimeouts(int, int, long)}
+     * 
+     * @param endpoint		the endpoint, e.g. "POST sms" or "GET deliveryReport"
+     * @param connectMillis	connect timeout in milliseconds, 0 for none
+     * @param readMillis	read timeout in milliseconds, 0 for none
+     * @param callMillis	call timeout in milliseconds, 0 for none
+     */
+    public void setTimeouts(String endpoint, int connectMillis, int readMillis, long callMillis) {
+    	endpointTimeouts.put(endpoint, new Timeouts(connectMillis, readMillis, callMillis));
+    }
+    
+    /**
+     * Remove the timeouts of an endpoint, its calls use the timeouts of the client again
+     * 
+     * @param endpoint the endpoint, e.g. "POST sms" or "GET deliveryReport"
+     */
+    public void removeTimeouts(String endpoint) {
+    	endpointTimeouts.remove(endpoint);
+    }
+    
+    /**
+     * Add an interceptor to be called around every call to the TM Rest API Gateway.<p>
+     * Interceptors are called in the order they are added.
+     *
+     * @param interceptor the RestInterceptor to add
+     * @see RestInterceptor
+     */
+    public synchronized void addInterceptor(RestInterceptor interceptor) {
+    	if(interceptor == null)
+    		throw new IllegalArgumentException("interceptor can not be null");
+    	RestInterceptor[] current = interceptors;
+    	RestInterceptor[] updated = new RestInterceptor[current.length + 1];
+    	System.arraycopy(current, 0, updated, 0, current.length);
+    	updated[current.length] = interceptor;
+    	interceptors = updated;
+    }
+
+    /**
+     * Remove a previously added interceptor
+     *
+     * @param interceptor the RestInterceptor to remove
+     * @return boolean TRUE if the interceptor was removed
+     */
+    public synchronized boolean removeInterceptor(RestInterceptor interceptor) {
+    	RestInterceptor[] current = interceptors;
+    	for(int i = 0; i < current.length; i++) {
+    		if(current[i] == interceptor) {
+    			RestInterceptor[] updated = new RestInterceptor[current.length - 1];
+    			System.arraycopy(current, 0, updated, 0, i);
+    			System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+    			interceptors = updated;
+    			return true;
+    		}
+    	}
+    	return false;
+    }
+
 	/**
-	 * Make the HTTP call to the REST API
+	 * Make the HTTP call to the REST API, through the registered interceptors
 	 * 
 	 * @param service 	e.g. credits, sms, group, etc...
-	 * @param method	HTTP method to use HTTP_GET, HTTP_POST or HTTP_PUT
+	 * @param method	HTTP method to use HTTP_GET, HTTP_POST, HTTP_PUT or HTTP_DELETE
+	 * 
+	 * @throws Exception
+	 */
+	private String restGatewayCall(String service, String method, Hashtable<String, String> extraparams) throws IOException, Exception {
+		return restGatewayCall(new RestRequest(service, method, extraparams));
+	}
+	
+	/**
+	 * Make the HTTP call to the REST API, through the registered interceptors
+	 * 
+	 * @param request	the request to send
+	 * 
+	 * @throws Exception
+	 */
+	private String restGatewayCall(RestRequest request) throws IOException, Exception {
+		applyTimeouts(request);
+		RestInterceptor[] chain = interceptors;
+		RestResponse response;
+		if(chain.length == 0)
+			response = execute(request);
+		else
+			response = new InterceptorChain(this, chain, 0, request).proceed(request);
+		
+		if(response.isSuccessful()) {
+			String body = response.getBody();
+			xmlResponse = body;
+			return body;
+		}
+		throw gatewayError(request, response);
+	}
+	
+	/**
+	 * Make the HTTP call to the REST API, through the registered interceptors, and return the response body stream
+	 * 
+	 * @param service 	e.g. deliveryReport/all, group/mygroup, etc...
+	 * @param method	HTTP method to use HTTP_GET, HTTP_POST, HTTP_PUT or HTTP_DELETE
+	 * @return the body stream, the caller must close it
 	 * 
 	 * @throws Exception
 	 */
-	private String restGatewayCall(String service, int method, Hashtable<String, String> extraparams) throws IOException, Exception {
-		HttpURLConnection 	connection = null;  
-		String 				strurl;
-	    
-		if(production)
-			strurl = PROD_URL + service;
+	InputStream restGatewayStream(String service, String method, Hashtable<String, String> extraparams) throws Exception {
+		RestRequest request = new RestRequest(service, method, extraparams);
+		request.setStreaming(true);
+		applyTimeouts(request);
+		RestInterceptor[] chain = interceptors;
+		RestResponse response;
+		if(chain.length == 0)
+			response = execute(request);
 		else
-			strurl = SAND_URL + service;
+			response = new InterceptorChain(this, chain, 0, request).proceed(request);
 		
-		// Construct data
+		if(response.isSuccessful())
+			return response.getBodyStream();
+		if(response.isStreamed())
+			response = new RestResponse(response.getStatus(), new String(getConnectionResponse(response.getBodyStream()), "UTF-8"));
+		throw gatewayError(request, response);
+	}
+	
+	/**
+	 * Set the timeouts of the client or of the endpoint on a request, and its deadline
+	 */
+	private void applyTimeouts(RestRequest request) {
+		Timeouts current = endpointTimeouts.isEmpty() ? null : endpointTimeouts.get(getEndpoint(request));
+		if(current == null)
+			current = timeouts;
+		request.setConnectTimeout(current.connect);
+		request.setReadTimeout(current.read);
+		Deadline deadline = request.getDeadline();
+		if(deadline == null)
+			deadline = Deadline.CURRENT.get();
+		if(current.call > 0)
+			deadline = Deadline.after(current.call, TimeUnit.MILLISECONDS).min(deadline);
+		request.setDeadline(deadline);
+	}
+	
+	/**
+	 * Decode the errors of a failed call, they become the last errors of the client
+	 */
+	private RestClientException gatewayError(RestRequest request, RestResponse response) {
+		int httpCode = response.getStatus();
+		Hashtable<String, String> decoded = ErrorDecoder.decode(httpCode, response.getBody());
+		errors = decoded;
+		boolean retriable = ErrorDecoder.isRetriable(httpCode);
+		return new RestClientException("Server returned HTTP response code: " + httpCode + " for service: " + request.getService(),
+				httpCode, decoded, retriable, retriable || businessErrorStackTraces);
+	}
+	
+	/**
+	 * Send the request to the gateway with the transport, this is the last link of the interceptor chain
+	 * 
+	 * @param request the request to send
+	 * @return RestResponse with the HTTP status and body, also for HTTP error codes
+	 * 
+	 * @throws IOException when the gateway can not be reached
+	 */
+	RestResponse execute(RestRequest request) throws IOException {
+		CircuitBreaker breaker = circuitBreaker;
+		if(breaker == null)
+			return send(request);
+		
+		String endpoint = getEndpoint(request);
+		breaker.acquirePermission(endpoint);
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			RestResponse response = send(request);
+			failed = response.getStatus() >= 500;
+			return response;
+		} finally {
+			breaker.onResult(endpoint, System.nanoTime() - start, failed);
+		}
+	}
+	
+	/**
+	 * Send the request with the transport
+	 */
+	private RestResponse send(RestRequest request) throws IOException {
+		String strurl = baseUrl + request.getService();
+		String method = request.getMethod();
+		String strparams = encodeParams(request.getParams(), request.getEncodedParams());
+		Deadline deadline = request.getDeadline();
+		if(deadline != null)
+			deadline.check("before sending " + request);
+		
+		GatewayEvents.Call event = new GatewayEvents.Call();
+		event.begin();
+		RestResponse response = null;
+		IOException error = null;
 		try {
-			// Add class params
-			StringBuffer strparams = new StringBuffer(); 
-			for(Map.Entry<String, String> param: params.entrySet()) {
+			if(HTTP_POST.equals(method))
+				response = transport.execute(request, strurl, strparams.getBytes("UTF-8"));
+			else
+				response = transport.execute(request, strurl + "?" + strparams, null);
+			return response;
+		} catch (IOException e) {
+			// the transport gives up on a socket timeout, or when its watchdog closes the connection
+			if(deadline != null && deadline.isExpired() && !(e instanceof DeadlineExceededException))
+				e = new DeadlineExceededException("Deadline exceeded waiting for " + request, e);
+			error = e;
+			throw e;
+		} finally {
+			event.end();
+			if(event.shouldCommit()) {
+				event.service = request.getService();
+				event.method = method;
+				// the encoded parameters are ASCII, one byte per character
+				event.bytesOut = strparams.length();
+				if(response != null) {
+					event.status = response.getStatus();
+					event.bytesIn = response.getBytes();
+					event.connectTime = response.getConnectNanos();
+					event.waitTime = response.getWaitNanos();
+				}
+				if(error != null)
+					event.error = error.toString();
+				event.commit();
+			}
+		}
+	}
+	
+	/**
+	 * Return the endpoint of a request, the HTTP method and the first part of the service, e.g. "GET deliveryReport"
+	 */
+	static String getEndpoint(RestRequest request) {
+		String service = request.getService();
+		int slash = service.indexOf('/');
+		if(slash > 0 && !service.startsWith("account/"))
+			service = service.substring(0, slash);
+		return request.getMethod() + " " + service;
+	}
+	
+	/**
+	 * Encode the class params (credentials) and the request params as a form url encoded string
+	 * 
+	 * @param extraparams request params
+	 * @return encoded params, each one followed by '&amp;'
+	 * 
+	 * @throws UnsupportedEncodingException
+	 */
+	String encodeParams(Hashtable<String, String> extraparams) throws UnsupportedEncodingException {
+		return encodeParams(extraparams, null);
+	}
+	
+	/**
+	 * Encode the class params (credentials) and the request params as a form url encoded string, followed by the
+	 * params already encoded
+	 * 
+	 * @param extraparams request params
+	 * @param encodedparams request params already form url encoded, can be null
+	 * @return encoded params, each one followed by '&amp;'
+	 * 
+	 * @throws UnsupportedEncodingException
+	 */
+	String encodeParams(Hashtable<String, String> extraparams, Hashtable<String, String> encodedparams) throws UnsupportedEncodingException {
+		int capacity = 256;
+		if(encodedparams != null) {
+			for(String value: encodedparams.values())
+				capacity += value.length() + 16;
+		}
+		StringBuilder strparams = new StringBuilder(capacity); 
+		// Add class params
+		for(Map.Entry<String, String> param: params.entrySet()) {
+			strparams.append(param.getKey());
+			strparams.append('=');
+			strparams.append(URLEncoder.encode(param.getValue(), "UTF-8"));
+			strparams.append('&');
+		}
+		// Add extra params
+		for(Map.Entry<String, String> param: extraparams.entrySet()) {
+			strparams.append(param.getKey());
+			strparams.append('=');
+			strparams.append(URLEncoder.encode(param.getValue(), "UTF-8"));
+			strparams.append('&');
+		}
+		// Add encoded params as they are
+		if(encodedparams != null) {
+			for(Map.Entry<String, String> param: encodedparams.entrySet()) {
 				strparams.append(param.getKey());
 				strparams.append('=');
-				strparams.append(URLEncoder.encode(param.getValue(), "UTF-8"));
+				strparams.append(param.getValue());
 				strparams.append('&');
 			}
-			// Add extra params
-			if(extraparams != null) {
-				for(Map.Entry<String, String> param: extraparams.entrySet()) {
-					strparams.append(param.getKey());
-					strparams.append('=');
-					strparams.append(URLEncoder.encode(param.getValue(), "UTF-8"));
-					strparams.append('&');
-				}
-			}
-			// Build URL
-			if(method == HTTP_GET || method == HTTP_PUT || method == HTTP_DELETE)  
-				strurl += "?" + strparams.toString();
-			URL url = new URL(strurl);
-			connection = (HttpURLConnection) url.openConnection();
-			connection.setUseCaches (false);
-			connection.setDoOutput(true);
-			switch(method) {
-				case HTTP_GET:
-					connection.setRequestMethod("GET");
-					break;
-					
-				case HTTP_POST:
-					connection.setRequestMethod("POST");
-					connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-					connection.setRequestProperty("Content-Length", Integer.toString(strparams.toString().getBytes().length));
-					connection.setDoInput(true);
-					// Send request
-					DataOutputStream wr = new DataOutputStream(connection.getOutputStream ());
-					wr.writeBytes(strparams.toString());
-					wr.flush ();
-					wr.close ();
-					break;
-					
-				case HTTP_PUT:
-					connection.setRequestMethod("PUT");
-					break;
-				case HTTP_DELETE:
-					connection.setRequestMethod("DELETE");
-					break;
-			}
-			// Get Response	
-			return getConnectionResponse(connection.getInputStream()); 
-		} catch (IOException e) {
-			int httpCode = connection.getResponseCode();
-			String errorResponse = getConnectionResponse(connection.getErrorStream());
-			errors.clear();
-			if(httpCode == 400) {
-				DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
-	        	DocumentBuilder docBuilder;
-				try {
-					docBuilder = docBuilderFactory.newDocumentBuilder();
-					Document doc = docBuilder.parse (new InputSource(new StringReader(errorResponse)));
-					
-					NodeList errorsList = doc.getElementsByTagName("error");
-					for(int i = 0; i < errorsList.getLength(); i++) {
-						Node errorMsg = errorsList.item(i);
-						Node errorCode = errorsList.item(i).getAttributes().getNamedItem("code");
-						errors.put(errorCode.getTextContent(), errorMsg.getTextContent());
-					}
-				} catch (Exception ex) {
-					throw new RestClientException(e);
-				}
-			}
-			else
-				errors.put(Integer.toString(httpCode), errorResponse);
-			throw e;
-		} catch (Exception e) {
-			throw e;
-		} finally {
-			if(connection != null)
-				connection.disconnect(); 
 		}
+		return strparams.toString();
 	}
 	
 	/**
 	 * Read the response from InputStream
 	 * 
-	 * @param connection to read from
-	 * @return String with the response
+	 * @param is to read from, can be null
+	 * @return byte array with the response
 	 * 
-	 * @throws Exception
+	 * @throws IOException
 	 */
-	private String getConnectionResponse(InputStream is) throws IOException {
-		BufferedReader rd = new BufferedReader(new InputStreamReader(is));
-		String line;
-		StringBuffer response = new StringBuffer(); 
-		while((line = rd.readLine()) != null) {
-			response.append(line);
-	        response.append('\r');
+	static byte[] getConnectionResponse(InputStream is) throws IOException {
+		if(is == null)
+			return new byte[0];
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		try {
+			while((read = is.read(buffer)) != -1)
+				response.write(buffer, 0, read);
+		} finally {
+			is.close();
 		}
-		rd.close();
-		return response.toString();
+		return response.toByteArray();
 	}
 	
 	/**
@@ -1006,12 +1524,14 @@ public class RestClient {
 	 * @param group Child group to parse
 	 * @return hashtable with node name as key and node text content as value
 	 */
-	private Hashtable<String, String> parseResponseXML(String xml, String group) {
+	Hashtable<String, String> parseResponseXML(String xml, String group) {
 		Hashtable<String, String> retValues = new Hashtable<String, String>();
 		
 		if(xml == null)
 			return retValues;
 		
+		GatewayEvents.Parse event = new GatewayEvents.Parse();
+		event.begin();
 		DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
     	DocumentBuilder docBuilder;
 		try {
@@ -1019,7 +1539,7 @@ public class RestClient {
 			Document doc = docBuilder.parse (new InputSource(new StringReader(xml)));
 			NodeList nodes;
 			if(group == null || group.compareTo("") == 0)
-				nodes = doc.getChildNodes().item(1).getChildNodes();
+				nodes = doc.getDocumentElement().getChildNodes();
 			else
 				nodes = doc.getElementsByTagName(group).item(0).getChildNodes();
 			for(int i = 0; i < nodes.getLength(); i++) {
@@ -1028,6 +1548,7 @@ public class RestClient {
 					retValues.put(node.getNodeName(), node.getTextContent());
 			}
 		} catch (Exception ex) { }
+		commitParse(event, "response", xml, false);
 		
 		return retValues;
 	}
@@ -1045,6 +1566,8 @@ public class RestClient {
 		if(xml == null)
 			return (Hashtable<String, String>[]) hashArr.toArray();
 		
+		GatewayEvents.Parse event = new GatewayEvents.Parse();
+		event.begin();
 		DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
     	DocumentBuilder docBuilder;
 		try {
@@ -1062,6 +1585,7 @@ public class RestClient {
 				hashArr.add(retValues);
 			}
 		} catch (Exception ex) { }
+		commitParse(event, group, xml, false);
 		
 		Hashtable<?, ?>[] arr = new Hashtable<?, ?>[hashArr.size()];
 		int i = 0;
@@ -1070,6 +1594,34 @@ public class RestClient {
 		return (Hashtable<String, String>[]) arr;
 	}
 	
+	/**
+	 * Parse a delivery report response, on the parallel parsing pool when it is set and the response is large
+	 */
+	private DeliveryReport[] parseReports(String xml) throws Exception {
+		ParallelReportParser parser = reportParser;
+		boolean parallel = parser != null && xml.length() >= PARALLEL_PARSE_THRESHOLD;
+		GatewayEvents.Parse event = new GatewayEvents.Parse();
+		event.begin();
+		try {
+			return parallel ? parser.parse(xml) : parseDeliveryReport(xml);
+		} finally {
+			commitParse(event, "deliveryReport", xml, parallel);
+		}
+	}
+	
+	/**
+	 * Commit the JFR event of a response parse, when it is enabled
+	 */
+	private static void commitParse(GatewayEvents.Parse event, String parser, String xml, boolean parallel) {
+		event.end();
+		if(event.shouldCommit()) {
+			event.parser = parser;
+			event.characters = xml != null ? xml.length() : 0;
+			event.parallel = parallel;
+			event.commit();
+		}
+	}
+	
 	/**
 	 * Parse Delivery Reports xml string and return a array of DeliveryReport Objects
 	 * 
@@ -1080,7 +1632,7 @@ public class RestClient {
 	 * @throws DOMException
 	 * @throws ParseException
 	 */
-	private DeliveryReport[] parseDeliveryReport(String xml) throws ParserConfigurationException, SAXException, IOException, DOMException, ParseException {
+	DeliveryReport[] parseDeliveryReport(String xml) throws ParserConfigurationException, SAXException, IOException, DOMException, ParseException {
     	DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
         DocumentBuilder docBuilder;
     	docBuilder = docBuilderFactory.newDocumentBuilder();
@@ -1131,11 +1683,29 @@ public class RestClient {
 	 *</pre></blockquote>
      */
     public Hashtable<String, String> deleteSMS(String scheduled_id)  throws RestClientException {
+    	String xml;
     	try {
-    		xmlResponse = restGatewayCall("sms/"+URLEncoder.encode(scheduled_id, "UTF-8"), HTTP_DELETE, null);
+    		xml = restGatewayCall("sms/"+URLEncoder.encode(scheduled_id, "UTF-8"), HTTP_DELETE, null);
     	} catch (Exception e) {
 			throw new RestClientException(e);
 		}
-    	return parseResponseXML(xmlResponse, "");
+    	return parseResponseXML(xml, "");
+    }
+    
+    /**
+     * Connect, read and call timeouts of the client or of an endpoint, in milliseconds
+     */
+    private static class Timeouts {
+    	final int connect;
+    	final int read;
+    	final long call;
+    	
+    	Timeouts(int connect, int read, long call) {
+    		if(connect < 0 || read < 0 || call < 0)
+    			throw new IllegalArgumentException("timeouts can not be negative");
+    		this.connect = connect;
+    		this.read = read;
+    		this.call = call;
+    	}
     }
 }
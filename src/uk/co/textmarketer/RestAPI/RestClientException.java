@@ -1,5 +1,9 @@
 package uk.co.textmarketer.RestAPI;
 
+import java.io.IOException;
+import java.util.Hashtable;
+import java.util.Map;
+
 /**
  * <a href='http://www.textmarketer.co.uk/developers/restful-api.htm'>RESTful
  * API</a>
@@ -9,15 +13,103 @@ package uk.co.textmarketer.RestAPI;
  * </p>
  * 
  * This is an exception that is thrown whenever a RestClient call generates a
- * error.
+ * error.<p>
+ * 
+ * When the gateway answered with an error, the exception carries the HTTP status, the error codes and messages, and
+ * whether the call can succeed if retried later (throttling, timeouts, server errors and network errors).
  * 
  * @author Marco Morais
  * @version 1.0
  */
 
 public class RestClientException extends Exception {
+	private final int httpStatus;
+	private final Hashtable<String, String> errors;
+	private final boolean retriable;
+	private final boolean stackTrace;
+
 	public RestClientException(Exception e) {
-		super(e);
+		super(e instanceof RestClientException ? e.getMessage() : e.toString(), e, true, captureStackTrace(e));
+		if(e instanceof RestClientException) {
+			RestClientException cause = (RestClientException) e;
+			this.httpStatus = cause.httpStatus;
+			this.errors = cause.errors;
+			this.retriable = cause.retriable;
+			this.stackTrace = cause.stackTrace;
+		}
+		else {
+			this.httpStatus = 0;
+			this.errors = new Hashtable<String, String>();
+			this.retriable = e instanceof IOException;
+			this.stackTrace = true;
+		}
+	}
+
+	/**
+	 * Constructor for an error answered by the gateway.<p>
+	 * 
+	 * @param message			exception message
+	 * @param httpStatus		HTTP status code of the response
+	 * @param errors			error codes and messages
+	 * @param retriable			true if the call can succeed when retried later
+	 * @param stackTrace		false to skip the stack trace capture, for expected business errors
+	 */
+	public RestClientException(String message, int httpStatus, Hashtable<String, String> errors, boolean retriable, boolean stackTrace) {
+		super(message, null, true, stackTrace);
+		this.httpStatus = httpStatus;
+		this.errors = errors != null ? errors : new Hashtable<String, String>();
+		this.retriable = retriable;
+		this.stackTrace = stackTrace;
+	}
+
+	/**
+	 * Return the HTTP status code of the gateway response
+	 * 
+	 * @return HTTP status code, or 0 if the gateway did not answer
+	 */
+	public int getHttpStatus() {
+		return httpStatus;
+	}
+
+	/**
+	 * Return the errors answered by the gateway
+	 * 
+	 * @return Errors Hashtable with all the errors codes and messages, empty if the gateway did not answer
+	 */
+	public Hashtable<String, String> getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Return the first error code answered by the gateway
+	 * 
+	 * @return Error code integer or 0 if there is no error code
+	 */
+	public int getErrorCode() {
+		for(Map.Entry<String, String> error: errors.entrySet()) {
+			try {
+				return Integer.parseInt(error.getKey());
+			} catch (NumberFormatException e) {
+				return 0;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Return true if the call can succeed when retried later, e.g. on throttling, server or network errors
+	 * 
+	 * @return boolean TRUE if the call can be retried
+	 */
+	public boolean isRetriable() {
+		return retriable;
+	}
+
+	/**
+	 * Keep the cost of wrapping low, a wrapped exception without stack trace is not given one
+	 */
+	private static boolean captureStackTrace(Exception e) {
+		return !(e instanceof RestClientException) || ((RestClientException) e).stackTrace;
 	}
 
 	private static final long serialVersionUID = 1851079605510716440L;
@@ -0,0 +1,59 @@
+package uk.co.textmarketer.RestAPI;
+
+/**
+ * Interceptor called around every call from RestClient to the TM Rest API Gateway<p>
+ *
+ * Interceptors can observe, change or answer the requests. Calling {@link Chain#proceed(RestRequest)} hands the
+ * request to the next interceptor, or to the gateway after the last one. Returning a RestResponse without calling
+ * proceed short-circuits the call.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see RestClient#addInterceptor(RestInterceptor)
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *{@code
+ *RestClient tmClient = new RestClient("myuser", "mypass", RestClient.ENV_SANDBOX);
+ *tmClient.addInterceptor(new RestInterceptor() {
+ *    public RestResponse intercept(Chain chain) throws Exception {
+ *        RestResponse response = chain.proceed(chain.request());
+ *        System.out.println(chain.request() + " took " + response.getElapsedMillis() + "ms");
+ *        return response;
+ *    }
+ *});
+ *}
+ *</pre></blockquote>
+ */
+public interface RestInterceptor {
+	/**
+	 * Intercept a call to the gateway
+	 *
+	 * @param chain the call chain, with the current request
+	 * @return the response for the call
+	 * @throws Exception on error, the call fails with a RestClientException
+	 */
+	RestResponse intercept(Chain chain) throws Exception;
+
+	/**
+	 * Chain of interceptors for a single call
+	 */
+	interface Chain {
+		/**
+		 * Return the request for this call
+		 *
+		 * @return RestRequest object
+		 */
+		RestRequest request();
+
+		/**
+		 * Pass the request to the next interceptor, or to the gateway
+		 *
+		 * @param request the request to send
+		 * @return the response for the request
+		 * @throws Exception on error
+		 */
+		RestResponse proceed(RestRequest request) throws Exception;
+	}
+}
@@ -0,0 +1,184 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.util.Hashtable;
+
+/**
+ * RestRequest Class represent an outgoing call to the TM Rest API Gateway, as seen by a {@link RestInterceptor}<p>
+ *
+ * The account credentials are not part of the request parameters, they are added by the RestClient when the
+ * request is sent.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see RestInterceptor
+ */
+public class RestRequest {
+	private String service;
+	private String method;
+	private Hashtable<String, String> params;
+	private Hashtable<String, String> headers;
+	private Hashtable<String, String> encodedParams;
+	private boolean streaming;
+	private int connectTimeout;
+	private int readTimeout;
+	private Deadline deadline;
+
+	/**
+	 * Constructor for the RestRequest class.<p>
+	 *
+	 * @param service	e.g. credits, sms, group/mygroup, etc...
+	 * @param method	HTTP method, GET, POST, PUT or DELETE
+	 * @param params	request parameters, can be null
+	 */
+	public RestRequest(String service, String method, Hashtable<String, String> params) {
+		this.service = service;
+		this.method = method;
+		this.params = params != null ? params : new Hashtable<String, String>();
+		this.headers = new Hashtable<String, String>();
+	}
+
+	@Override
+	public String toString() {
+		return "RestRequest [service=" + service + ", method=" + method + "]";
+	}
+
+	public String getService() {
+		return service;
+	}
+
+	public void setService(String service) {
+		this.service = service;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public void setMethod(String method) {
+		this.method = method;
+	}
+
+	/**
+	 * Return the request parameters, without the account credentials
+	 *
+	 * @return Hashtable with the parameter names and values, changes are sent with the request
+	 */
+	public Hashtable<String, String> getParams() {
+		return params;
+	}
+
+	/**
+	 * Return the request parameters whose values are already form url encoded, e.g. a rendered MessageTemplate
+	 *
+	 * @return Hashtable with the parameter names and encoded values, null if there are none
+	 */
+	public Hashtable<String, String> getEncodedParams() {
+		return encodedParams;
+	}
+
+	/**
+	 * Set a request parameter whose value is already form url encoded, it is sent as it is
+	 *
+	 * @param name		parameter name
+	 * @param encoded	form url encoded value
+	 */
+	public void setEncodedParam(String name, String encoded) {
+		if(encodedParams == null)
+			encodedParams = new Hashtable<String, String>();
+		encodedParams.put(name, encoded);
+	}
+
+	/**
+	 * Return the extra HTTP headers to send with the request, e.g. tracing headers
+	 *
+	 * @return Hashtable with the header names and values, changes are sent with the request
+	 */
+	public Hashtable<String, String> getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * Set an extra HTTP header to send with the request
+	 *
+	 * @param name	header name
+	 * @param value	header value
+	 */
+	public void setHeader(String name, String value) {
+		headers.put(name, value);
+	}
+
+	/**
+	 * Return true if the request only reads data from the gateway (GET)
+	 *
+	 * @return boolean TRUE if the request is a GET
+	 */
+	public boolean isReadOnly() {
+		return "GET".equals(method);
+	}
+
+	/**
+	 * Return true if the response body is read as a stream, see {@link RestResponse#getBodyStream()}.<p>
+	 * Streamed responses can only be read once, interceptors must not keep or share them.
+	 *
+	 * @return boolean TRUE if the response body is streamed
+	 */
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	/**
+	 * Return the timeout for opening a connection to the gateway, set by the RestClient from its timeouts
+	 *
+	 * @return timeout in milliseconds, 0 for none
+	 * @see RestClient#setTimeouts(int, int, long)
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * Return the timeout for each read of the response, set by the RestClient from its timeouts
+	 *
+	 * @return timeout in milliseconds, 0 for none
+	 * @see RestClient#setTimeouts(int, int, long)
+	 */
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * Return the deadline of the call, shared by all the requests sent for it, e.g. a hedge request
+	 *
+	 * @return Deadline object, null if the call has no deadline
+	 */
+	public Deadline getDeadline() {
+		return deadline;
+	}
+
+	public void setDeadline(Deadline deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Return a socket timeout capped to the time left before the deadline
+	 *
+	 * @param millis the configured timeout in milliseconds, 0 for none
+	 * @return the timeout to use, 0 for none
+	 */
+	int timeoutMillis(int millis) {
+		return deadline != null ? deadline.capTimeout(millis) : millis;
+	}
+}
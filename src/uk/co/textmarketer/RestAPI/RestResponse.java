@@ -0,0 +1,180 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Hashtable;
+
+/**
+ * RestResponse Class represent a response from the TM Rest API Gateway, as seen by a {@link RestInterceptor}<p>
+ *
+ * An interceptor can create its own RestResponse to answer a call without reaching the gateway.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see RestInterceptor
+ */
+public class RestResponse {
+	private int status;
+	private String body;
+	private long bytes;
+	private long elapsedNanos;
+	private Hashtable<String, String> headers;
+	private InputStream stream;
+	private long connectNanos;
+	private long waitNanos;
+
+	/**
+	 * Constructor for the RestResponse class.<p>
+	 *
+	 * @param status		HTTP status code, e.g. 200
+	 * @param body			response body (xml)
+	 * @param bytes			number of bytes received
+	 * @param elapsedNanos	time taken by the call in nanoseconds
+	 */
+	public RestResponse(int status, String body, long bytes, long elapsedNanos) {
+		this(status, body, bytes, elapsedNanos, null);
+	}
+	
+	/**
+	 * Constructor for the RestResponse class, with the response headers.<p>
+	 *
+	 * @param status		HTTP status code, e.g. 200
+	 * @param body			response body (xml)
+	 * @param bytes			number of bytes received
+	 * @param elapsedNanos	time taken by the call in nanoseconds
+	 * @param headers		response headers, with lower case names, can be null
+	 */
+	public RestResponse(int status, String body, long bytes, long elapsedNanos, Hashtable<String, String> headers) {
+		this.status = status;
+		this.body = body != null ? body : "";
+		this.bytes = bytes;
+		this.elapsedNanos = elapsedNanos;
+		this.headers = headers != null ? headers : new Hashtable<String, String>();
+	}
+	
+	/**
+	 * Constructor for the RestResponse class, with a streamed body.<p>
+	 *
+	 * @param status		HTTP status code, e.g. 200
+	 * @param stream		response body stream, closing it releases the connection
+	 * @param elapsedNanos	time taken until the response headers were received, in nanoseconds
+	 * @param headers		response headers, with lower case names, can be null
+	 */
+	public RestResponse(int status, InputStream stream, long elapsedNanos, Hashtable<String, String> headers) {
+		this(status, "", -1, elapsedNanos, headers);
+		this.stream = stream;
+	}
+
+	/**
+	 * Constructor for the RestResponse class, to short-circuit a call from an interceptor.<p>
+	 *
+	 * @param status	HTTP status code, e.g. 200
+	 * @param body		response body (xml)
+	 */
+	public RestResponse(int status, String body) {
+		this(status, body, 0, 0);
+	}
+
+	@Override
+	public String toString() {
+		return "RestResponse [status=" + status + ", bytes=" + bytes
+				+ ", elapsedNanos=" + elapsedNanos + "]";
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * Return the response body
+	 *
+	 * @return response body, empty for a streamed response
+	 */
+	public String getBody() {
+		return body;
+	}
+
+	/**
+	 * Return the response body as a stream, the caller must close it
+	 *
+	 * @return the body stream of a streamed response, or a stream over the body
+	 */
+	public InputStream getBodyStream() {
+		return stream != null ? stream : new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Return true if the body has not been read yet and is available with {@link #getBodyStream()}
+	 *
+	 * @return boolean TRUE for a streamed response
+	 */
+	public boolean isStreamed() {
+		return stream != null;
+	}
+
+	/**
+	 * Return the number of bytes received
+	 *
+	 * @return number of bytes, -1 for a streamed response
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedNanos / 1000000L;
+	}
+
+	/**
+	 * Set the phases of the elapsed time measured by the transport, for the JFR gateway call events
+	 *
+	 * @param connectNanos	time taken to open the connection, 0 when reused
+	 * @param waitNanos		time from the request sent to the response headers
+	 */
+	void setTimings(long connectNanos, long waitNanos) {
+		this.connectNanos = connectNanos;
+		this.waitNanos = waitNanos;
+	}
+
+	long getConnectNanos() {
+		return connectNanos;
+	}
+
+	long getWaitNanos() {
+		return waitNanos;
+	}
+
+	/**
+	 * Return a response header
+	 *
+	 * @param name header name, e.g. ETag
+	 * @return header value, or null if the response does not have the header
+	 */
+	public String getHeader(String name) {
+		return headers.get(name.toLowerCase());
+	}
+
+	/**
+	 * Return the response headers
+	 *
+	 * @return Hashtable with the lower case header names and their (first) value
+	 */
+	public Hashtable<String, String> getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * Return true if the gateway answered with a 2xx HTTP status code
+	 *
+	 * @return boolean TRUE if the call was successful
+	 */
+	public boolean isSuccessful() {
+		return status >= 200 && status < 300;
+	}
+}
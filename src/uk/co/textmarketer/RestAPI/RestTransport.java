@@ -0,0 +1,41 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.io.IOException;
+
+/**
+ * Transport used by RestClient to send the HTTP requests to the TM Rest API Gateway<p>
+ *
+ * Implementations must be thread safe, one transport can be shared by many RestClient objects.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see RestClient#setTransport(RestTransport)
+ * @see UrlConnectionTransport
+ * @see HttpClientTransport
+ */
+public interface RestTransport {
+	/**
+	 * Send a request and read the full response
+	 *
+	 * @param request	the request, with the HTTP method and extra headers
+	 * @param url		full URL, including the query string for GET, PUT and DELETE
+	 * @param body		form url encoded body for POST, null for the other methods
+	 * @return RestResponse with the HTTP status and body, also for HTTP error codes
+	 * @throws IOException when the gateway can not be reached
+	 */
+	RestResponse execute(RestRequest request, String url, byte[] body) throws IOException;
+
+	/**
+	 * Open connections to the gateway before the first calls, so they do not pay for the TCP and TLS handshakes.
+	 * The default implementation does nothing.
+	 *
+	 * @param request		HEAD request to send on each connection, with the timeouts of the client
+	 * @param url			base URL of the gateway
+	 * @param connections	number of connections to open
+	 * @throws IOException when the gateway can not be reached
+	 * @see RestClient#warmUp(int)
+	 */
+	default void warmUp(RestRequest request, String url, int connections) throws IOException {
+	}
+}
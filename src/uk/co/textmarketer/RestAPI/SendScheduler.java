@@ -0,0 +1,382 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * SendScheduler sends text messages from separate priority lanes, so that bulk campaigns can not delay urgent messages<p>
+ *
+ * Each lane has its own bounded queue. The shared workers take the next message from the lanes by strict priority,
+ * or by weight, and some workers are reserved for the HIGH lane: even when every shared worker is busy with a big
+ * LOW backlog, a HIGH message waits at most for a reserved worker to finish its current send. Messages whose validity
+ * or deadline is over by the time they leave their queue are dropped, and their result carries the error. The time
+ * spent queued counts against the deadline of the message, see {@link SmsRequest#setDeadline(Deadline)}.<p>
+ *
+ * All the workers send with the same RestClient, which is safe for concurrent callers: each result carries the
+ * response of its own send.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see SmsRequest
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *{@code
+ *RestClient tmClient = new RestClient("myuser", "mypass", RestClient.ENV_SANDBOX);
+ *SendScheduler scheduler = new SendScheduler(tmClient, 16, 2);
+ *scheduler.setWeights(8, 3, 1);
+ *for(String number: campaignNumbers)
+ *    scheduler.submit(new SmsRequest("Our spring sale starts today!", number, "Shop"), SendScheduler.Priority.LOW);
+ *CompletableFuture<SmsResult> otp = scheduler.submit(new SmsRequest("Your code is 1234", "447777123123", "Shop"), SendScheduler.Priority.HIGH);
+ *System.out.println(otp.get());
+ *}
+ *</pre></blockquote>
+ */
+public class SendScheduler {
+	/**
+	 * Priority lane of a message
+	 */
+	public enum Priority {
+		/** transactional messages, e.g. one-time passcodes */
+		HIGH,
+		/** regular messages */
+		NORMAL,
+		/** bulk and marketing messages */
+		LOW
+	}
+
+	final private static int MAX_VALIDITY_HOURS = 72;
+
+	private final RestClient client;
+	private final ExecutorService executor;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition highQueued = lock.newCondition();
+	private final Condition anyQueued = lock.newCondition();
+	private final Lane[] lanes = new Lane[Priority.values().length];
+	private final AtomicLong expired = new AtomicLong();
+	private boolean strict;
+	private boolean closed;
+
+	/**
+	 * Constructor for the SendScheduler class.<p>
+	 *
+	 * @param client		client used to send the messages
+	 * @param workers		number of threads sending messages
+	 * @param reservedHigh	number of those threads only sending HIGH messages, less than workers
+	 */
+	public SendScheduler(RestClient client, int workers, int reservedHigh) {
+		if(workers < 1 || reservedHigh < 0 || reservedHigh >= workers)
+			throw new IllegalArgumentException("invalid workers " + workers + " with " + reservedHigh + " reserved");
+		this.client = client;
+		for(Priority priority: Priority.values())
+			lanes[priority.ordinal()] = new Lane(10000);
+		setWeights(8, 3, 1);
+		final AtomicInteger count = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "tm-send-scheduler-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		for(int i = 0; i < workers; i++)
+			executor.execute(new Worker(i < reservedHigh));
+	}
+
+	/**
+	 * Set the maximum number of messages waiting in a lane, 10000 by default
+	 *
+	 * @param priority	the lane
+	 * @param capacity	maximum number of waiting messages
+	 */
+	public void setQueueCapacity(Priority priority, int capacity) {
+		if(capacity < 1)
+			throw new IllegalArgumentException("capacity must be at least 1");
+		lock.lock();
+		try {
+			lanes[priority.ordinal()].capacity = capacity;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Set the share of the shared workers given to each lane while they all have messages waiting, 8, 3 and 1 by
+	 * default. Weights are used unless strict priority is set.
+	 *
+	 * @param high		weight of the HIGH lane
+	 * @param normal	weight of the NORMAL lane
+	 * @param low		weight of the LOW lane
+	 */
+	public void setWeights(int high, int normal, int low) {
+		if(high < 1 || normal < 1 || low < 1)
+			throw new IllegalArgumentException("weights must be at least 1");
+		lock.lock();
+		try {
+			lanes[Priority.HIGH.ordinal()].weight = high;
+			lanes[Priority.NORMAL.ordinal()].weight = normal;
+			lanes[Priority.LOW.ordinal()].weight = low;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Set strict priority: a lane is only served when the lanes above it are empty, false by default
+	 *
+	 * @param strict boolean TRUE for strict priority, FALSE for weighted dispatch
+	 */
+	public void setStrictPriority(boolean strict) {
+		lock.lock();
+		try {
+			this.strict = strict;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Queue a message in a lane
+	 *
+	 * @param request	the message to send
+	 * @param priority	the lane
+	 * @return CompletableFuture completed with the result, which carries the error if the send failed or the message expired
+	 * @throws RejectedExecutionException if the scheduler is closed or the lane is full
+	 */
+	public CompletableFuture<SmsResult> submit(SmsRequest request, Priority priority) {
+		int validity = request.getValidity();
+		if(validity < 1 || validity > MAX_VALIDITY_HOURS)
+			validity = MAX_VALIDITY_HOURS;
+		long expiresIn = TimeUnit.HOURS.toNanos(validity);
+		if(request.getDeadline() != null)
+			expiresIn = Math.min(expiresIn, request.getDeadline().remainingNanos());
+		Queued queued = new Queued(request, System.nanoTime() + expiresIn);
+		lock.lock();
+		try {
+			if(closed)
+				throw new RejectedExecutionException("SendScheduler is closed");
+			Lane lane = lanes[priority.ordinal()];
+			if(lane.queue.size() >= lane.capacity && purgeExpired(lane) == 0) {
+				GatewayEvents.poolExhausted("SendScheduler lane " + priority, lane.capacity);
+				throw new RejectedExecutionException("Queue of lane " + priority + " is full");
+			}
+			lane.queue.add(queued);
+			if(priority == Priority.HIGH)
+				highQueued.signal();
+			anyQueued.signal();
+		} finally {
+			lock.unlock();
+		}
+		return queued.future;
+	}
+
+	/**
+	 * Return the number of messages waiting in a lane
+	 *
+	 * @param priority the lane
+	 * @return number of waiting messages
+	 */
+	public int getQueued(Priority priority) {
+		lock.lock();
+		try {
+			return lanes[priority.ordinal()].queue.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Return the number of messages dropped because their validity or deadline was over
+	 *
+	 * @return number of expired messages
+	 */
+	public long getExpiredCount() {
+		return expired.get();
+	}
+
+	/**
+	 * Stop the scheduler, waiting messages are cancelled and running sends finish
+	 */
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			for(Lane lane: lanes) {
+				for(Queued queued: lane.queue)
+					queued.future.cancel(false);
+				lane.queue.clear();
+			}
+			highQueued.signalAll();
+			anyQueued.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		executor.shutdown();
+	}
+
+	/**
+	 * Wait for the running sends to finish after {@link #close()}
+	 *
+	 * @param timeout	maximum time to wait
+	 * @param unit		unit of the timeout
+	 * @return boolean TRUE if all the sends finished
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+
+	/**
+	 * Take the next message for a worker, waiting for one, holding the lock
+	 *
+	 * @return the message, null when the scheduler is closed
+	 */
+	private Queued take(boolean reserved) throws InterruptedException {
+		while(!closed) {
+			Lane lane = reserved ? lanes[Priority.HIGH.ordinal()] : next();
+			if(lane != null && !lane.queue.isEmpty())
+				return lane.queue.poll();
+			if(reserved)
+				highQueued.await();
+			else
+				anyQueued.await();
+		}
+		return null;
+	}
+
+	/**
+	 * Choose the lane served next by a shared worker, by strict priority or smooth weighted round-robin
+	 */
+	private Lane next() {
+		if(strict) {
+			for(Lane lane: lanes) {
+				if(!lane.queue.isEmpty())
+					return lane;
+			}
+			return null;
+		}
+		Lane best = null;
+		int total = 0;
+		for(Lane lane: lanes) {
+			if(lane.queue.isEmpty())
+				continue;
+			lane.current += lane.weight;
+			total += lane.weight;
+			if(best == null || lane.current > best.current)
+				best = lane;
+		}
+		if(best != null)
+			best.current -= total;
+		return best;
+	}
+
+	/**
+	 * Remove the expired messages of a lane, holding the lock
+	 *
+	 * @return number of removed messages
+	 */
+	private int purgeExpired(Lane lane) {
+		long now = System.nanoTime();
+		int removed = 0;
+		Iterator<Queued> it = lane.queue.iterator();
+		while(it.hasNext()) {
+			Queued queued = it.next();
+			if(now - queued.expires >= 0) {
+				it.remove();
+				expire(queued);
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	private void expire(Queued queued) {
+		expired.incrementAndGet();
+		Deadline deadline = queued.request.getDeadline();
+		if(deadline != null && deadline.isExpired())
+			queued.future.complete(new SmsResult(queued.request, null,
+					new RestClientException(new DeadlineExceededException("Deadline exceeded while queued"))));
+		else
+			queued.future.complete(new SmsResult(queued.request, null,
+					new RestClientException("Message validity expired while queued", 0, null, false, false)));
+	}
+
+	/**
+	 * Messages waiting in one priority lane
+	 */
+	private static class Lane {
+		final ArrayDeque<Queued> queue = new ArrayDeque<Queued>();
+		int capacity;
+		int weight;
+		int current;
+
+		Lane(int capacity) {
+			this.capacity = capacity;
+		}
+	}
+
+	/**
+	 * Queued message with its expiry time
+	 */
+	private static class Queued {
+		final SmsRequest request;
+		final long expires;
+		final CompletableFuture<SmsResult> future = new CompletableFuture<SmsResult>();
+
+		Queued(SmsRequest request, long expires) {
+			this.request = request;
+			this.expires = expires;
+		}
+	}
+
+	/**
+	 * Worker thread sending messages, a reserved worker only serves the HIGH lane
+	 */
+	private class Worker implements Runnable {
+		private final boolean reserved;
+
+		Worker(boolean reserved) {
+			this.reserved = reserved;
+		}
+
+		public void run() {
+			while(true) {
+				Queued queued;
+				lock.lock();
+				try {
+					queued = take(reserved);
+				} catch (InterruptedException e) {
+					return;
+				} finally {
+					lock.unlock();
+				}
+				if(queued == null)
+					return;
+				if(System.nanoTime() - queued.expires >= 0) {
+					expire(queued);
+					continue;
+				}
+				if(queued.future.isCancelled())
+					continue;
+				try {
+					queued.future.complete(new SmsResult(queued.request, client.sendSMS(queued.request), null));
+				} catch (RestClientException e) {
+					queued.future.complete(new SmsResult(queued.request, null, e));
+				} catch (RuntimeException e) {
+					queued.future.complete(new SmsResult(queued.request, null, new RestClientException(e)));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Interceptor merging concurrent identical read-only calls into one gateway request<p>
+ *
+ * When a GET request is already in flight, an identical request (same service and parameters) made by another
+ * thread waits for it and receives the same response, instead of sending its own. Only overlapping calls are merged,
+ * a call made after the response arrived goes to the gateway again, so no stale data is returned.<p>
+ *
+ * Requests are not keyed by account, use one instance per RestClient.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see RestClient#addInterceptor(RestInterceptor)
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *RestClient tmClient = new RestClient("myuser", "mypass", RestClient.ENV_SANDBOX);
+ *tmClient.addInterceptor(new SingleFlightInterceptor());
+ *</pre></blockquote>
+ */
+public class SingleFlightInterceptor implements RestInterceptor {
+	private final ConcurrentHashMap<String, CompletableFuture<RestResponse>> inFlight = new ConcurrentHashMap<String, CompletableFuture<RestResponse>>();
+	private final AtomicLong merged = new AtomicLong();
+
+	/**
+	 * Return the number of calls answered by the request of another call
+	 *
+	 * @return number of merged calls
+	 */
+	public long getMergedCount() {
+		return merged.get();
+	}
+
+	public RestResponse intercept(Chain chain) throws Exception {
+		RestRequest request = chain.request();
+		if(!request.isReadOnly() || request.isStreaming())
+			return chain.proceed(request);
+
+		String key = key(request);
+		CompletableFuture<RestResponse> flight = new CompletableFuture<RestResponse>();
+		CompletableFuture<RestResponse> leader = inFlight.putIfAbsent(key, flight);
+		if(leader != null) {
+			merged.incrementAndGet();
+			Deadline deadline = request.getDeadline();
+			try {
+				// the leader has its own deadline, a follower waits for the leader within its own
+				if(deadline == null)
+					return leader.get();
+				return leader.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+			} catch (TimeoutException e) {
+				throw new DeadlineExceededException("Deadline exceeded waiting for " + request);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if(cause instanceof Exception)
+					throw (Exception) cause;
+				throw (Error) cause;
+			}
+		}
+		try {
+			RestResponse response = chain.proceed(request);
+			inFlight.remove(key, flight);
+			flight.complete(response);
+			return response;
+		} catch (Throwable e) {
+			inFlight.remove(key, flight);
+			flight.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Key of a request, the service and the sorted parameters
+	 */
+	static String key(RestRequest request) {
+		StringBuilder key = new StringBuilder(64);
+		key.append(request.getMethod()).append(' ').append(request.getService());
+		Map<String, String> params = request.getParams();
+		if(!params.isEmpty()) {
+			key.append('?');
+			for(Map.Entry<String, String> param: new TreeMap<String, String>(params).entrySet())
+				key.append(param.getKey()).append('=').append(param.getValue()).append('&');
+		}
+		return key.toString();
+	}
+}
@@ -0,0 +1,165 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.util.Date;
+
+/**
+ * SmsRequest Class represent a text message to send, with the parameters of {@link RestClient#sendSMS(String, String, String, int, String, String, Date, boolean)}<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see RestClient#sendSMS(SmsRequest)
+ * @see SmsSendProcessor
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *SmsRequest request = new SmsRequest("Hello SMS World!", "447777123123", "Hello World");
+ *request.setValidity(24);
+ *request.setCustom("campaign1");
+ *</pre></blockquote>
+ */
+public class SmsRequest {
+	private String message;
+	private EncodedMessage encodedMessage;
+	private String mobileNumber;
+	private String originator;
+	private int validity;
+	private String email;
+	private String custom;
+	private Date schedule;
+	private boolean checkStop;
+	private Deadline deadline;
+
+	/**
+	 * Constructor for the SmsRequest class.<p>
+	 *
+	 * @param message		textual content of the message, up to 612 characters from the GSM alphabet
+	 * @param mobileNumber	mobile number of the recipient, in international format, e.g. 447777123123
+	 * @param originator	up to 11 alpha-numeric characters or the international mobile number of the sender
+	 */
+	public SmsRequest(String message, String mobileNumber, String originator) {
+		this.message = message;
+		this.mobileNumber = mobileNumber;
+		this.originator = originator;
+	}
+
+	/**
+	 * Constructor for the SmsRequest class, with a message rendered by a MessageTemplate.<p>
+	 *
+	 * @param message		the rendered message
+	 * @param mobileNumber	mobile number of the recipient, in international format, e.g. 447777123123
+	 * @param originator	up to 11 alpha-numeric characters or the international mobile number of the sender
+	 */
+	public SmsRequest(EncodedMessage message, String mobileNumber, String originator) {
+		this.encodedMessage = message;
+		this.mobileNumber = mobileNumber;
+		this.originator = originator;
+	}
+
+	/**
+	 * Return the textual content of the message
+	 *
+	 * @return the message, decoded from the rendered message if there is one
+	 */
+	public String getMessage() {
+		return encodedMessage != null ? encodedMessage.getText() : message;
+	}
+
+	public void setMessage(String message) {
+		this.message = message;
+		this.encodedMessage = null;
+	}
+
+	/**
+	 * Return the message rendered by a MessageTemplate
+	 *
+	 * @return the rendered message, null if the message was given as text
+	 */
+	public EncodedMessage getEncodedMessage() {
+		return encodedMessage;
+	}
+
+	public void setEncodedMessage(EncodedMessage encodedMessage) {
+		this.encodedMessage = encodedMessage;
+	}
+
+	public String getMobileNumber() {
+		return mobileNumber;
+	}
+
+	public void setMobileNumber(String mobileNumber) {
+		this.mobileNumber = mobileNumber;
+	}
+
+	public String getOriginator() {
+		return originator;
+	}
+
+	public void setOriginator(String originator) {
+		this.originator = originator;
+	}
+
+	public int getValidity() {
+		return validity;
+	}
+
+	/**
+	 * Set the validity of the message
+	 *
+	 * @param validity number of hours from 1 to 72, 0 for the default 72 hours
+	 */
+	public void setValidity(int validity) {
+		this.validity = validity;
+	}
+
+	public String getEmail() {
+		return email;
+	}
+
+	public void setEmail(String email) {
+		this.email = email;
+	}
+
+	public String getCustom() {
+		return custom;
+	}
+
+	public void setCustom(String custom) {
+		this.custom = custom;
+	}
+
+	public Date getSchedule() {
+		return schedule;
+	}
+
+	public void setSchedule(Date schedule) {
+		this.schedule = schedule;
+	}
+
+	public boolean isCheckStop() {
+		return checkStop;
+	}
+
+	public void setCheckStop(boolean checkStop) {
+		this.checkStop = checkStop;
+	}
+
+	public Deadline getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * Set the deadline of the send, the time spent queued counts against it
+	 *
+	 * @param deadline the Deadline, null for the timeouts of the client only
+	 * @see SendScheduler
+	 */
+	public void setDeadline(Deadline deadline) {
+		this.deadline = deadline;
+	}
+
+	@Override
+	public String toString() {
+		return "SmsRequest [mobileNumber=" + mobileNumber + ", originator=" + originator + ", custom=" + custom + "]";
+	}
+}
@@ -0,0 +1,56 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.util.Hashtable;
+
+/**
+ * SmsResult Class represent the outcome of sending a SmsRequest, the gateway result or the error<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see SmsSendProcessor
+ */
+public class SmsResult {
+	private final SmsRequest request;
+	private final Hashtable<String, String> result;
+	private final RestClientException error;
+
+	/**
+	 * Constructor for the SmsResult class.<p>
+	 *
+	 * @param request	the sent request
+	 * @param result	the gateway result, null on error
+	 * @param error		the error, null on success
+	 */
+	public SmsResult(SmsRequest request, Hashtable<String, String> result, RestClientException error) {
+		this.request = request;
+		this.result = result;
+		this.error = error;
+	}
+
+	public SmsRequest getRequest() {
+		return request;
+	}
+
+	/**
+	 * Return the gateway result
+	 *
+	 * @return Hash table with keys: message_id, scheduled_id, credits_used and status, null on error
+	 */
+	public Hashtable<String, String> getResult() {
+		return result;
+	}
+
+	public RestClientException getError() {
+		return error;
+	}
+
+	public boolean isSuccessful() {
+		return error == null;
+	}
+
+	@Override
+	public String toString() {
+		return "SmsResult [request=" + request + ", " + (error == null ? "result=" + result : "error=" + error.getMessage()) + "]";
+	}
+}
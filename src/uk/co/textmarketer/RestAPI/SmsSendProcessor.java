@@ -0,0 +1,314 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processor sending the SmsRequest it receives and publishing a SmsResult for each one, following the
+ * java.util.concurrent.Flow contract<p>
+ *
+ * At most maxInFlight requests are requested from upstream, sent or waiting for the downstream subscriber at any
+ * time, so a fast source can not queue more messages than that and a slow subscriber slows down the sending. A failed
+ * send does not end the stream, its SmsResult carries the error. The results are published in completion order, which
+ * is not the request order when more than one send runs at a time.<p>
+ *
+ * The processor accepts one upstream subscription and one downstream subscriber.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see SmsRequest
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *{@code
+ *RestClient tmClient = new RestClient("myuser", "mypass", RestClient.ENV_SANDBOX);
+ *SubmissionPublisher<SmsRequest> source = new SubmissionPublisher<SmsRequest>();
+ *SmsSendProcessor processor = new SmsSendProcessor(tmClient, 8);
+ *source.subscribe(processor);
+ *processor.subscribe(mySubscriber);
+ *for(String number: numbers)
+ *    source.submit(new SmsRequest("Hello SMS World!", number, "Hello World"));
+ *source.close();
+ *}
+ *</pre></blockquote>
+ */
+public class SmsSendProcessor implements Flow.Processor<SmsRequest, SmsResult> {
+	private final RestClient client;
+	private final int maxInFlight;
+	private final Executor executor;
+	private final ExecutorService ownPool;
+
+	private Flow.Subscription upstream;
+	private Flow.Subscriber<? super SmsResult> downstream;
+	private final ArrayDeque<SmsResult> ready = new ArrayDeque<SmsResult>();
+	private long requested;
+	private int sending;
+	private long demand;
+	private boolean upstreamDone;
+	private Throwable upstreamError;
+	private Throwable requestError;
+	private boolean subscribed;
+	private boolean terminated;
+	// drain guard, the subscriber and the source are only called by the thread that moved it from 0
+	private final AtomicInteger wip = new AtomicInteger();
+
+	/**
+	 * Constructor for the SmsSendProcessor class, with its own pool of up to maxInFlight daemon threads.<p>
+	 * Idle threads of the pool stop after a minute, {@link #close()} stops the pool.
+	 *
+	 * @param client		client used to send the messages
+	 * @param maxInFlight	maximum number of requests requested, sent or waiting for the subscriber
+	 */
+	public SmsSendProcessor(RestClient client, int maxInFlight) {
+		this(client, maxInFlight, newPool(maxInFlight), true);
+	}
+
+	/**
+	 * Constructor for the SmsSendProcessor class.<p>
+	 *
+	 * @param client		client used to send the messages
+	 * @param maxInFlight	maximum number of requests requested, sent or waiting for the subscriber
+	 * @param executor		executor running the sends
+	 */
+	public SmsSendProcessor(RestClient client, int maxInFlight, Executor executor) {
+		this(client, maxInFlight, executor, false);
+	}
+
+	private SmsSendProcessor(RestClient client, int maxInFlight, Executor executor, boolean owned) {
+		if(maxInFlight < 1)
+			throw new IllegalArgumentException("maxInFlight must be at least 1");
+		this.client = client;
+		this.maxInFlight = maxInFlight;
+		this.executor = executor;
+		this.ownPool = owned ? (ExecutorService) executor : null;
+	}
+
+	private static ExecutorService newPool(int maxInFlight) {
+		if(maxInFlight < 1)
+			throw new IllegalArgumentException("maxInFlight must be at least 1");
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(maxInFlight, maxInFlight, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "tm-sms-processor-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/**
+	 * Stop the pool created by the processor, the running sends finish. A given executor is not stopped.
+	 */
+	public void close() {
+		if(ownPool != null)
+			ownPool.shutdown();
+	}
+
+	public void subscribe(Flow.Subscriber<? super SmsResult> subscriber) {
+		if(subscriber == null)
+			throw new NullPointerException("subscriber");
+		boolean first;
+		synchronized(this) {
+			first = !subscribed;
+			subscribed = true;
+		}
+		if(first) {
+			subscriber.onSubscribe(new ResultSubscription());
+			// nothing is emitted before onSubscribe returns
+			synchronized(this) {
+				downstream = subscriber;
+			}
+			drain();
+			return;
+		}
+		subscriber.onSubscribe(new Flow.Subscription() {
+			public void request(long n) { }
+			public void cancel() { }
+		});
+		subscriber.onError(new IllegalStateException("SmsSendProcessor already has a subscriber"));
+	}
+
+	public void onSubscribe(Flow.Subscription subscription) {
+		boolean accepted;
+		synchronized(this) {
+			accepted = upstream == null && !terminated;
+			if(accepted)
+				upstream = subscription;
+		}
+		if(!accepted) {
+			subscription.cancel();
+			return;
+		}
+		drain();
+	}
+
+	public void onNext(final SmsRequest request) {
+		synchronized(this) {
+			if(terminated)
+				return;
+			requested--;
+			sending++;
+		}
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					SmsResult result = null;
+					try {
+						result = new SmsResult(request, client.sendSMS(request), null);
+					} catch (RestClientException e) {
+						result = new SmsResult(request, null, e);
+					} catch (RuntimeException e) {
+						result = new SmsResult(request, null, new RestClientException(e));
+					} finally {
+						// an Error still frees the slot, or the stream would never complete
+						if(result == null)
+							result = new SmsResult(request, null, new RestClientException("Send failed with an error", 0, null, false, true));
+						sent(result);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// closed, the message is not sent
+			sent(new SmsResult(request, null, new RestClientException(e)));
+		}
+	}
+
+	private void sent(SmsResult result) {
+		synchronized(this) {
+			sending--;
+			if(!terminated)
+				ready.add(result);
+		}
+		drain();
+	}
+
+	public void onError(Throwable e) {
+		synchronized(this) {
+			upstreamDone = true;
+			upstreamError = e;
+		}
+		drain();
+	}
+
+	public void onComplete() {
+		synchronized(this) {
+			upstreamDone = true;
+		}
+		drain();
+	}
+
+	/**
+	 * Emit the ready results, complete when everything is sent, and request more from upstream.<p>
+	 * The state is read under the lock, the subscriber and the source are called outside of it by one thread at a
+	 * time. Calls made while a thread drains, re-entrant or from other threads, make that thread loop again.
+	 */
+	private void drain() {
+		if(wip.getAndIncrement() != 0)
+			return;
+		int missed = 1;
+		do {
+			while(true) {
+				Flow.Subscriber<? super SmsResult> subscriber;
+				Flow.Subscription source = null;
+				SmsResult next = null;
+				Throwable error = null;
+				boolean complete = false;
+				long free = 0;
+				synchronized(this) {
+					subscriber = downstream;
+					if(subscriber == null || terminated)
+						break;
+					if(requestError != null) {
+						terminated = true;
+						ready.clear();
+						source = upstream;
+						error = requestError;
+					}
+					else if(demand > 0 && !ready.isEmpty()) {
+						demand--;
+						next = ready.poll();
+					}
+					else if(upstreamDone && sending == 0 && ready.isEmpty()) {
+						terminated = true;
+						complete = true;
+						error = upstreamError;
+					}
+					else {
+						free = maxInFlight - requested - sending - ready.size();
+						if(free > 0 && upstream != null && !upstreamDone) {
+							requested += free;
+							source = upstream;
+						}
+					}
+				}
+				if(next != null)
+					subscriber.onNext(next);
+				else if(complete) {
+					if(error != null)
+						subscriber.onError(error);
+					else
+						subscriber.onComplete();
+					break;
+				}
+				else if(error != null) {
+					if(source != null)
+						source.cancel();
+					subscriber.onError(error);
+					break;
+				}
+				else if(source != null)
+					// the source may answer synchronously, the loop picks it up
+					source.request(free);
+				else
+					break;
+			}
+			missed = wip.addAndGet(-missed);
+		} while(missed != 0);
+	}
+
+	/**
+	 * Subscription of the downstream subscriber
+	 */
+	private class ResultSubscription implements Flow.Subscription {
+		public void request(long n) {
+			synchronized(SmsSendProcessor.this) {
+				if(terminated)
+					return;
+				if(n <= 0) {
+					// signalled by the draining thread, never from inside request
+					if(requestError == null)
+						requestError = new IllegalArgumentException("Subscription request must be positive, was " + n);
+				}
+				else
+					demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+			}
+			drain();
+		}
+
+		public void cancel() {
+			Flow.Subscription source;
+			synchronized(SmsSendProcessor.this) {
+				if(terminated)
+					return;
+				terminated = true;
+				ready.clear();
+				source = upstream;
+			}
+			if(source != null)
+				source.cancel();
+		}
+	}
+}
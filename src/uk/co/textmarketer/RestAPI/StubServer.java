@@ -0,0 +1,583 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * StubServer is an embedded stand-in for the TM Rest API Gateway, to run load and failure tests without network access<p>
+ *
+ * It answers the sms, credits, groups, group, keywords, deliveryReports, deliveryReport and account/sub services with
+ * the same XML as the gateway, keeping credits, groups and scheduled messages in memory. Latency, error rate, throttling
+ * and delivery report sizes can be changed while the server runs.<p>
+ *
+ * The JDK server sends small answers without TCP_NODELAY, so they wait for the delayed ACK of the client and
+ * measured latencies are about 40ms too high. For load tests start the JVM with -Dsun.net.httpserver.nodelay=true,
+ * the server does not change that JVM-wide setting itself.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see RestClient#RestClient(String, String, String)
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *StubServer stub = new StubServer();
+ *stub.setLatency(20, 80);
+ *stub.setErrorRate(0.01);
+ *stub.start();
+ *RestClient tmClient = new RestClient("myuser", "mypass", stub.getBaseUrl());
+ *tmClient.sendSMS("Hello SMS World!", "447777123123", "Hello World");
+ *stub.stop();
+ *</pre></blockquote>
+ */
+public class StubServer {
+	final private static String CONTEXT = "/services/rest/";
+	final private static String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+	final private static String[] STATUSES = {"DELIVERED", "DELIVERED", "DELIVERED", "DELIVERED", "DELIVERED", "DELIVERED", "SENT", "SENT", "FAILED", "EXPIRED"};
+
+	private int port;
+	private HttpServer server;
+	private ExecutorService executor;
+	private ExecutorService pushExecutor;
+
+	private volatile int minLatency = 0;
+	private volatile int maxLatency = 0;
+	private volatile double errorRate = 0;
+	private volatile int errorStatus = 500;
+	private volatile int throttleLimit = 0;
+	private volatile int reportRows = 100;
+	private volatile int campaignReports = 1;
+	private volatile String username = null;
+	private volatile String password = null;
+	private volatile String callbackUrl = null;
+
+	private final AtomicInteger credits;
+	private final AtomicLong messageIds = new AtomicLong(3000000000L);
+	private final AtomicInteger accountIds = new AtomicInteger(1000);
+	private final AtomicLong throttleWindow = new AtomicLong();
+	private final AtomicInteger throttleCount = new AtomicInteger();
+	private final AtomicLong requests = new AtomicLong();
+	private final Map<String, List<String>> groups = new ConcurrentHashMap<String, List<String>>();
+	private final Map<String, String> scheduled = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * Constructor for the StubServer class, listening on a free loopback port.
+	 */
+	public StubServer() {
+		this(0);
+	}
+
+	/**
+	 * Constructor for the StubServer class.<p>
+	 *
+	 * @param port loopback port to listen on, 0 for any free port
+	 */
+	public StubServer(int port) {
+		this.port = port;
+		this.credits = new AtomicInteger(1000000);
+		groups.put("STOP", new ArrayList<String>());
+	}
+
+	/**
+	 * Start the server
+	 *
+	 * @throws IOException if the port can not be opened
+	 */
+	public synchronized void start() throws IOException {
+		if(server != null)
+			return;
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+		server.createContext(CONTEXT, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					dispatch(exchange);
+				} catch (Exception e) {
+					sendXML(exchange, 500, XML_HEADER + "<response><errors><error code=\"500\">" + escape(String.valueOf(e.getMessage())) + "</error></errors></response>");
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		// cached pool, so the simulated latency does not limit the concurrency
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.start();
+		port = server.getAddress().getPort();
+		// one thread, the notifications of a message are pushed in order
+		pushExecutor = Executors.newSingleThreadExecutor();
+	}
+
+	/**
+	 * Stop the server
+	 */
+	public synchronized void stop() {
+		if(server == null)
+			return;
+		server.stop(0);
+		executor.shutdownNow();
+		if(pushExecutor != null)
+			pushExecutor.shutdownNow();
+		pushExecutor = null;
+		server = null;
+	}
+
+	/**
+	 * Return the base URL to use with {@link RestClient#RestClient(String, String, String)}
+	 *
+	 * @return base URL of the REST services, e.g. http://127.0.0.1:8080/services/rest/
+	 */
+	public String getBaseUrl() {
+		return "http://127.0.0.1:" + port + CONTEXT;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Return the number of requests received since the server started
+	 *
+	 * @return number of requests
+	 */
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	/**
+	 * Set the latency added to every response, picked at random between min and max
+	 *
+	 * @param min minimum latency in milliseconds
+	 * @param max maximum latency in milliseconds
+	 */
+	public void setLatency(int min, int max) {
+		this.minLatency = Math.max(0, min);
+		this.maxLatency = Math.max(this.minLatency, max);
+	}
+
+	/**
+	 * Set the fraction of requests answered with an error status
+	 *
+	 * @param errorRate value from 0 (no errors) to 1 (all requests fail)
+	 */
+	public void setErrorRate(double errorRate) {
+		this.errorRate = errorRate;
+	}
+
+	/**
+	 * Set the HTTP status code used for the random errors, 500 by default
+	 *
+	 * @param errorStatus HTTP status code, e.g. 500 or 503
+	 */
+	public void setErrorStatus(int errorStatus) {
+		this.errorStatus = errorStatus;
+	}
+
+	/**
+	 * Set the maximum number of requests per second, requests over the limit are answered with HTTP 429
+	 *
+	 * @param requestsPerSecond maximum number of requests per second, 0 for no limit
+	 */
+	public void setThrottle(int requestsPerSecond) {
+		this.throttleLimit = requestsPerSecond;
+	}
+
+	/**
+	 * Set the number of rows of each delivery report
+	 *
+	 * @param rows number of rows per report
+	 */
+	public void setReportRows(int rows) {
+		this.reportRows = rows;
+	}
+
+	/**
+	 * Set the number of campaign reports listed by the deliveryReports service, next to the daily report
+	 *
+	 * @param count number of campaign reports, 1 by default
+	 */
+	public void setCampaignReports(int count) {
+		this.campaignReports = count;
+	}
+
+	/**
+	 * Set the only username and password accepted, by default any credentials are accepted
+	 *
+	 * @param username API Gateway Username
+	 * @param password API Gateway Password
+	 */
+	public void setCredentials(String username, String password) {
+		this.username = username;
+		this.password = password;
+	}
+
+	/**
+	 * Set the URL the delivery notifications are pushed to, e.g. of a {@link DeliveryCallbackReceiver}, none by default.
+	 * Each message sent is followed by a DELIVERED notification, pushed in the background after the response.
+	 *
+	 * @param url callback URL, null to stop pushing
+	 */
+	public void setCallbackUrl(String url) {
+		this.callbackUrl = url;
+	}
+
+	public int getCredits() {
+		return credits.get();
+	}
+
+	public void setCredits(int credits) {
+		this.credits.set(credits);
+	}
+
+	private void dispatch(HttpExchange exchange) throws Exception {
+		requests.incrementAndGet();
+		String method = exchange.getRequestMethod();
+		String path = exchange.getRequestURI().getRawPath().substring(CONTEXT.length());
+		String[] segments = path.split("/");
+		for(int i = 0; i < segments.length; i++)
+			segments[i] = URLDecoder.decode(segments[i], "UTF-8");
+		Hashtable<String, String> params = parseParams(exchange.getRequestURI().getRawQuery());
+		if("POST".equals(method))
+			params.putAll(parseParams(new String(readBody(exchange.getRequestBody()), "UTF-8")));
+
+		simulateLatency();
+		if(isThrottled()) {
+			sendError(exchange, 429, "429", "Too many requests");
+			return;
+		}
+		if(errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+			sendXML(exchange, errorStatus, "Internal Server Error");
+			return;
+		}
+		if(username != null && !(username.equals(params.get("username")) && password.equals(params.get("password")))) {
+			sendXML(exchange, 401, "Unauthorised");
+			return;
+		}
+
+		String service = segments[0];
+		if("sms".equals(service))
+			sms(exchange, method, segments, params);
+		else if("credits".equals(service))
+			credits(exchange, method, params);
+		else if("groups".equals(service))
+			groups(exchange);
+		else if("group".equals(service) && segments.length > 1)
+			group(exchange, method, segments[1], params);
+		else if("keywords".equals(service) && segments.length > 1)
+			keyword(exchange, segments[1]);
+		else if("deliveryReports".equals(service))
+			deliveryReports(exchange);
+		else if("deliveryReport".equals(service) && segments.length > 1)
+			deliveryReport(exchange, segments);
+		else if("account".equals(service) && segments.length > 1 && "sub".equals(segments[1]))
+			subAccount(exchange, params);
+		else
+			sendXML(exchange, 404, "Not Found");
+	}
+
+	private void sms(HttpExchange exchange, String method, String[] segments, Hashtable<String, String> params) throws IOException {
+		if("DELETE".equals(method)) {
+			String id = segments.length > 1 ? segments[1] : "";
+			if(scheduled.remove(id) == null) {
+				sendError(exchange, 400, "1", "Scheduled message " + id + " not found");
+				return;
+			}
+			sendXML(exchange, 200, response("<scheduled_id>" + escape(id) + "</scheduled_id><status>DELETED</status>"));
+			return;
+		}
+		String message = params.get("message");
+		String mobile = params.get("mobile_number");
+		if(message == null || message.length() == 0 || mobile == null || mobile.length() == 0) {
+			sendError(exchange, 400, "2", "message and mobile_number are required");
+			return;
+		}
+		int used = message.length() <= 160 ? 1 : (message.length() + 152) / 153;
+		if(credits.addAndGet(-used) < 0) {
+			credits.addAndGet(used);
+			sendError(exchange, 400, "3", "Not enough credits");
+			return;
+		}
+		String id = Long.toString(messageIds.incrementAndGet());
+		String scheduledId = "";
+		String status = "SENT";
+		if(params.get("schedule") != null) {
+			scheduledId = id;
+			scheduled.put(id, mobile);
+			status = "SCHEDULED";
+		}
+		sendXML(exchange, 200, response("<message_id>" + id + "</message_id><scheduled_id>" + scheduledId
+				+ "</scheduled_id><credits_used>" + used + "</credits_used><status>" + status + "</status>"));
+		String url = callbackUrl;
+		if(url != null && scheduledId.length() == 0)
+			pushCallback(url, "message_id=" + id + "&mobile_number=" + URLEncoder.encode(mobile, "UTF-8") + "&status=DELIVERED&custom="
+					+ URLEncoder.encode(value(params, "custom"), "UTF-8") + "&last_updated=" + URLEncoder.encode(now(), "UTF-8"));
+	}
+
+	/**
+	 * Push a delivery notification to the callback URL, in the background
+	 */
+	private void pushCallback(final String url, final String notification) {
+		ExecutorService push = pushExecutor;
+		if(push == null)
+			return;
+		push.execute(new Runnable() {
+			public void run() {
+				try {
+					HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+					connection.setDoOutput(true);
+					connection.setRequestMethod("POST");
+					connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+					OutputStream os = connection.getOutputStream();
+					os.write(notification.getBytes("UTF-8"));
+					os.close();
+					connection.getResponseCode();
+					readBody(connection.getInputStream());
+				} catch (IOException e) {
+					// the gateway does not retry in the stub, the notification is lost
+				}
+			}
+		});
+	}
+
+	private void credits(HttpExchange exchange, String method, Hashtable<String, String> params) throws IOException {
+		if(!"POST".equals(method)) {
+			sendXML(exchange, 200, response("<credits>" + credits.get() + "</credits>"));
+			return;
+		}
+		int quantity;
+		try {
+			quantity = Integer.parseInt(params.get("quantity"));
+		} catch (NumberFormatException e) {
+			sendError(exchange, 400, "4", "Invalid quantity");
+			return;
+		}
+		int after = credits.addAndGet(-quantity);
+		if(quantity <= 0 || after < 0) {
+			credits.addAndGet(quantity);
+			sendError(exchange, 400, "3", "Not enough credits");
+			return;
+		}
+		sendXML(exchange, 200, response("<source_credits_before>" + (after + quantity) + "</source_credits_before><source_credits_after>" + after
+				+ "</source_credits_after><target_credits_before>0</target_credits_before><target_credits_after>" + quantity + "</target_credits_after>"));
+	}
+
+	private void groups(HttpExchange exchange) throws IOException {
+		StringBuilder xml = new StringBuilder("<groups>");
+		int id = 1;
+		for(Map.Entry<String, List<String>> group: groups.entrySet()) {
+			xml.append("<group id=\"").append(id++).append("\" numbers=\"").append(group.getValue().size())
+				.append("\" name=\"").append(escape(group.getKey())).append("\" is_stop=\"")
+				.append("STOP".equals(group.getKey())).append("\"/>");
+		}
+		xml.append("</groups>");
+		sendXML(exchange, 200, response(xml.toString()));
+	}
+
+	private void group(HttpExchange exchange, String method, String name, Hashtable<String, String> params) throws IOException {
+		if("PUT".equals(method)) {
+			if(groups.putIfAbsent(name, new ArrayList<String>()) != null) {
+				sendError(exchange, 400, "5", "Group " + name + " already exists");
+				return;
+			}
+			sendXML(exchange, 200, response("<group name=\"" + escape(name) + "\"/>"));
+			return;
+		}
+		List<String> numbers = groups.get(name);
+		if(numbers == null) {
+			sendError(exchange, 400, "6", "Group " + name + " not found");
+			return;
+		}
+		if("POST".equals(method)) {
+			StringBuilder xml = new StringBuilder();
+			int added = 0;
+			String list = params.get("numbers");
+			synchronized(numbers) {
+				for(String number: (list == null ? "" : list).split(",")) {
+					number = number.trim();
+					if(number.length() > 0 && !numbers.contains(number)) {
+						numbers.add(number);
+						xml.append("<number>").append(escape(number)).append("</number>");
+						added++;
+					}
+				}
+			}
+			sendXML(exchange, 200, response("<added quantity=\"" + added + "\">" + xml + "</added>"));
+			return;
+		}
+		StringBuilder xml = new StringBuilder("<group name=\"" + escape(name) + "\">");
+		synchronized(numbers) {
+			for(String number: numbers)
+				xml.append("<number>").append(escape(number)).append("</number>");
+		}
+		xml.append("</group>");
+		sendXML(exchange, 200, response(xml.toString()));
+	}
+
+	private void keyword(HttpExchange exchange, String keyword) throws IOException {
+		boolean available = (keyword.hashCode() & 1) == 0;
+		sendXML(exchange, 200, response("<available>" + available + "</available><recycle>false</recycle>"));
+	}
+
+	private void deliveryReports(HttpExchange exchange) throws IOException {
+		StringBuilder list = new StringBuilder("<replist>");
+		list.append("<report name=\"GB").append(new SimpleDateFormat("yyyyMMdd").format(new Date())).append("\" last_updated=\"").append(now()).append("\" extension=\"csv\"/>");
+		for(int i = 1; i <= campaignReports; i++)
+			list.append("<report name=\"campaign-").append(i).append("\" last_updated=\"").append(now()).append("\" extension=\"csv\"/>");
+		sendXML(exchange, 200, response(list.append("</replist>").toString()));
+	}
+
+	private void deliveryReport(HttpExchange exchange, String[] segments) throws IOException {
+		String name = segments[1];
+		String custom = segments.length > 3 && "custom".equals(segments[2]) ? segments[3] : null;
+		int rows = reportRows;
+		String updated = now();
+
+		// stream the rows, big reports are not built in memory
+		exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+		exchange.sendResponseHeaders(200, 0);
+		Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), "UTF-8"), 65536);
+		out.write(XML_HEADER);
+		out.write("<response processed_date=\"" + updated + "\">\n");
+		out.write("<report name=\"" + escape(name) + "\" last_updated=\"" + updated + "\" extension=\"csv\">\n");
+		StringBuilder row = new StringBuilder(160);
+		for(int i = 0; i < rows; i++) {
+			row.setLength(0);
+			row.append("<reportrow last_updated=\"").append(updated.replace('T', ' '))
+				.append("\" mobile_number=\"4477").append(10000000 + i)
+				.append("\" message_id=\"").append(3000000000L + i)
+				.append("\" status=\"").append(STATUSES[i % STATUSES.length])
+				.append("\" custom=\"").append(escape(custom != null ? custom : "campaign-" + (i % 8)))
+				.append("\"/>\n");
+			out.append(row);
+		}
+		out.write("</report>\n</response>");
+		out.close();
+	}
+
+	private void subAccount(HttpExchange exchange, Hashtable<String, String> params) throws IOException {
+		String company = params.get("company_name");
+		if(company == null || company.length() == 0) {
+			sendError(exchange, 400, "7", "company_name is required");
+			return;
+		}
+		int id = accountIds.incrementAndGet();
+		String user = params.containsKey("account_username") ? params.get("account_username") : "sub" + id;
+		String pass = params.containsKey("account_password") ? params.get("account_password") : "pass" + id;
+		sendXML(exchange, 200, response("<account>"
+				+ "<account_id>" + id + "</account_id>"
+				+ "<company_name>" + escape(company) + "</company_name>"
+				+ "<create_date>" + now() + "</create_date>"
+				+ "<credits>0</credits>"
+				+ "<notification_email>" + escape(value(params, "notification_email")) + "</notification_email>"
+				+ "<notification_mobile>" + escape(value(params, "notification_mobile")) + "</notification_mobile>"
+				+ "<username>" + escape(user) + "</username>"
+				+ "<password>" + escape(pass) + "</password>"
+				+ "<api_username>" + escape(user) + "</api_username>"
+				+ "<api_password>" + escape(pass) + "</api_password>"
+				+ "</account>"));
+	}
+
+	private void simulateLatency() throws InterruptedException {
+		int min = minLatency, max = maxLatency;
+		if(max > 0)
+			Thread.sleep(min == max ? min : min + ThreadLocalRandom.current().nextInt(max - min + 1));
+	}
+
+	private boolean isThrottled() {
+		int limit = throttleLimit;
+		if(limit <= 0)
+			return false;
+		long second = System.currentTimeMillis() / 1000;
+		long window = throttleWindow.get();
+		if(window != second && throttleWindow.compareAndSet(window, second))
+			throttleCount.set(0);
+		return throttleCount.incrementAndGet() > limit;
+	}
+
+	private static String response(String content) {
+		return XML_HEADER + "<response processed_date=\"" + now() + "\">" + content + "</response>";
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String code, String message) throws IOException {
+		sendXML(exchange, status, XML_HEADER + "<response processed_date=\"" + now() + "\"><errors><error code=\"" + code + "\">"
+				+ escape(message) + "</error></errors></response>");
+	}
+
+	private static void sendXML(HttpExchange exchange, int status, String body) throws IOException {
+		if(status == 200 && "GET".equals(exchange.getRequestMethod())) {
+			// strong validator for conditional requests, the processed_date changes every second
+			String etag = "\"" + Integer.toHexString(body.replaceFirst("processed_date=\"[^\"]*\"", "").hashCode()) + "\"";
+			exchange.getResponseHeaders().set("ETag", etag);
+			if(etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+		}
+		byte[] bytes = body.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+		if("HEAD".equals(exchange.getRequestMethod())) {
+			// connection warm up, headers only
+			exchange.sendResponseHeaders(status, -1);
+			exchange.close();
+			return;
+		}
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream os = exchange.getResponseBody();
+		os.write(bytes);
+		os.close();
+	}
+
+	private static Hashtable<String, String> parseParams(String query) throws IOException {
+		Hashtable<String, String> params = new Hashtable<String, String>();
+		if(query == null)
+			return params;
+		for(String pair: query.split("&")) {
+			int eq = pair.indexOf('=');
+			if(eq > 0)
+				params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+		}
+		return params;
+	}
+
+	private static byte[] readBody(InputStream is) throws IOException {
+		return RestClient.getConnectionResponse(is);
+	}
+
+	private static String value(Hashtable<String, String> params, String name) {
+		String value = params.get(name);
+		return value != null ? value : "";
+	}
+
+	private static String now() {
+		return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date());
+	}
+
+	private static String escape(String value) {
+		return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+	}
+}
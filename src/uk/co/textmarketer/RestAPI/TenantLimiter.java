@@ -0,0 +1,136 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interceptor enforcing the request rate and the in-flight quota of one ClientRegistry account.<p>
+ *
+ * Calls over the limits wait for their turn on the calling thread.
+ *
+ * @version 1.0
+ * @see ClientRegistry#setLimits(String, double, int)
+ */
+class TenantLimiter implements RestInterceptor {
+	private final Permits inFlight;
+	private volatile int maxInFlight;
+	private double ratePerNano;
+	private double burst;
+	private double tokens;
+	private long refilled;
+
+	TenantLimiter(double requestsPerSecond, int maxInFlight) {
+		this.inFlight = new Permits(maxInFlight);
+		this.maxInFlight = maxInFlight;
+		this.refilled = System.nanoTime();
+		setRate(requestsPerSecond);
+		this.tokens = burst;
+	}
+
+	synchronized void setRate(double requestsPerSecond) {
+		refill(System.nanoTime());
+		this.ratePerNano = requestsPerSecond > 0 ? requestsPerSecond / TimeUnit.SECONDS.toNanos(1) : 0;
+		// allow bursts of up to a second of traffic
+		this.burst = Math.max(1, requestsPerSecond);
+		this.tokens = Math.min(tokens, burst);
+	}
+
+	synchronized void setMaxInFlight(int max) {
+		int delta = max - maxInFlight;
+		maxInFlight = max;
+		if(delta > 0)
+			inFlight.release(delta);
+		else if(delta < 0)
+			// without waiting, the permits of the running calls are absorbed as they finish
+			inFlight.reducePermits(-delta);
+	}
+
+	int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * Return how long a call would have to wait for the rate limit, without taking a permit
+	 *
+	 * @return wait time in nanoseconds, 0 if a call can go now
+	 */
+	synchronized long nanosUntilPermit() {
+		if(ratePerNano == 0)
+			return 0;
+		refill(System.nanoTime());
+		return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / ratePerNano);
+	}
+
+	public RestResponse intercept(Chain chain) throws Exception {
+		Deadline deadline = chain.request().getDeadline();
+		acquireRate(deadline);
+		// a timed tryAcquire keeps the fairness of the semaphore
+		if(!inFlight.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+			GatewayEvents.Throttle event = new GatewayEvents.Throttle();
+			event.begin();
+			if(deadline == null)
+				inFlight.acquire();
+			else if(!inFlight.tryAcquire(deadline.remainingNanos(), TimeUnit.NANOSECONDS))
+				throw new DeadlineExceededException("Deadline exceeded waiting for the in-flight limit");
+			GatewayEvents.commitThrottle(event, "tenant in-flight", maxInFlight);
+		}
+		try {
+			return chain.proceed(chain.request());
+		} finally {
+			inFlight.release();
+		}
+	}
+
+	private void acquireRate(Deadline deadline) throws InterruptedIOException, DeadlineExceededException {
+		long wait;
+		double rate;
+		synchronized(this) {
+			if(ratePerNano == 0)
+				return;
+			rate = ratePerNano * TimeUnit.SECONDS.toNanos(1);
+			refill(System.nanoTime());
+			// take the token now, waiting for it if the bucket is in debt
+			tokens -= 1;
+			wait = tokens >= 0 ? 0 : (long) Math.ceil(-tokens / ratePerNano);
+			if(wait > 0 && deadline != null && wait > deadline.remainingNanos()) {
+				// the call would miss its deadline, give the token back to the calls that can make it
+				tokens += 1;
+				throw new DeadlineExceededException("Deadline exceeded waiting for the rate limit");
+			}
+		}
+		if(wait > 0) {
+			GatewayEvents.Throttle event = new GatewayEvents.Throttle();
+			event.begin();
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+				GatewayEvents.commitThrottle(event, "tenant rate", rate);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the rate limit");
+			}
+		}
+	}
+
+	private void refill(long now) {
+		if(ratePerNano > 0)
+			tokens = Math.min(burst, tokens + (now - refilled) * ratePerNano);
+		refilled = now;
+	}
+
+	/**
+	 * Fair semaphore whose permits can be taken away without waiting for them
+	 */
+	private static class Permits extends Semaphore {
+		Permits(int permits) {
+			super(permits, true);
+		}
+
+		@Override
+		protected void reducePermits(int reduction) {
+			super.reducePermits(reduction);
+		}
+
+		private static final long serialVersionUID = 1L;
+	}
+}
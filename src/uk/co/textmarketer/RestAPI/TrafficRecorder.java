@@ -0,0 +1,262 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Interceptor recording the calls to the gateway to a file, to replay them offline with a {@link ReplayTransport}<p>
+ *
+ * Each call is written with its start time, method, service, parameters, status, headers, body and the time taken
+ * by the gateway. The file is a gzip compressed binary stream. The account credentials are never part of the
+ * request parameters; the other parameters whose name contains password or username, and the password elements of
+ * the response bodies, are replaced by ***. Streamed responses, e.g. from {@link RestClient#openDeliveryReport(String, String)},
+ * are copied while they are read and written when they are closed, up to a maximum size: a bigger body is not kept in
+ * memory and its call is skipped.<p>
+ *
+ * Recording never fails a call: the gateway has already processed it, and a caller retrying it would send it twice.
+ * A write error, e.g. a full disk, stops the recording and is counted by {@link #getFailedCount()}.<p>
+ *
+ * Add the recorder as the last interceptor, so it records what the gateway answered. Calls answered by an earlier
+ * interceptor, e.g. a {@link ResponseCache} hit, are not recorded.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see RestClient#addInterceptor(RestInterceptor)
+ * @see ReplayTransport
+ *
+ *<p><b>Example:</b></p>
+ *<blockquote><pre>
+ *RestClient tmClient = new RestClient("myuser", "mypass", RestClient.ENV_PRODUCTION);
+ *TrafficRecorder recorder = new TrafficRecorder(Paths.get("traffic-20170301.tmtr"));
+ *tmClient.addInterceptor(recorder);
+ *tmClient.getDeliveryReport("all");
+ *recorder.close();
+ *</pre></blockquote>
+ */
+public class TrafficRecorder implements RestInterceptor, Closeable {
+	final static int MAGIC = 0x544D5452;
+	final static int VERSION = 1;
+	final static String SCRUBBED = "***";
+	final private static Pattern SECRET_ELEMENT = Pattern.compile("<(\\w*password)>[^<]*</\\1>");
+
+	private final DataOutputStream out;
+	private final long start = System.nanoTime();
+	private final AtomicLong recorded = new AtomicLong();
+	private final AtomicLong skipped = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private volatile int maxStreamedBody = 4 << 20;
+	private boolean closed;
+	private boolean broken;
+
+	/**
+	 * Constructor for the TrafficRecorder class, the file is created or replaced.<p>
+	 *
+	 * @param file the recording file
+	 * @throws IOException if the file can not be written
+	 */
+	public TrafficRecorder(Path file) throws IOException {
+		this(Files.newOutputStream(file));
+	}
+
+	TrafficRecorder(OutputStream file) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(file, 65536), 65536));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+	}
+
+	/**
+	 * Set the maximum size of a recorded streamed body, 4MB by default. The copy of a bigger body is dropped as soon as
+	 * it passes the maximum, and its call is skipped.
+	 *
+	 * @param bytes maximum size in bytes
+	 */
+	public void setMaxStreamedBody(int bytes) {
+		if(bytes < 0)
+			throw new IllegalArgumentException("bytes must not be negative");
+		this.maxStreamedBody = bytes;
+	}
+
+	/**
+	 * Return the number of calls written so far
+	 *
+	 * @return number of recorded calls
+	 */
+	public long getRecordedCount() {
+		return recorded.get();
+	}
+
+	/**
+	 * Return the number of calls not recorded because their streamed body was over the maximum size
+	 *
+	 * @return number of skipped calls
+	 */
+	public long getSkippedCount() {
+		return skipped.get();
+	}
+
+	/**
+	 * Return the number of calls not recorded because of a write error, after the first one nothing is recorded
+	 *
+	 * @return number of failed recordings
+	 */
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	public RestResponse intercept(Chain chain) throws Exception {
+		RestRequest request = chain.request();
+		long offset = System.nanoTime() - start;
+		final RestResponse response = chain.proceed(request);
+		if(!response.isStreamed()) {
+			write(offset, request, response, response.getBody().getBytes(StandardCharsets.UTF_8));
+			return response;
+		}
+		final long streamOffset = offset;
+		final RestRequest streamRequest = request;
+		final int max = maxStreamedBody;
+		return new RestResponse(response.getStatus(), new FilterInputStream(response.getBodyStream()) {
+			private ByteArrayOutputStream copy = new ByteArrayOutputStream(Math.min(max, 65536));
+			private boolean written;
+
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if(b >= 0 && keep(1))
+					copy.write(b);
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int read = super.read(b, off, len);
+				if(read > 0 && keep(read))
+					copy.write(b, off, read);
+				return read;
+			}
+
+			private boolean keep(int bytes) {
+				if(copy != null && copy.size() > max - bytes)
+					// over the maximum, the memory is freed now
+					copy = null;
+				return copy != null;
+			}
+
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					if(!written) {
+						written = true;
+						if(copy != null)
+							write(streamOffset, streamRequest, response, copy.toByteArray());
+						else
+							skipped.incrementAndGet();
+						copy = null;
+					}
+				}
+			}
+		}, response.getElapsedNanos(), response.getHeaders());
+	}
+
+	/**
+	 * Flush and close the file, later calls are not recorded
+	 */
+	public synchronized void close() throws IOException {
+		if(closed)
+			return;
+		closed = true;
+		try {
+			if(!broken)
+				out.writeLong(-1);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Write one call, a write error is counted and stops the recording, as the file is left with a partial call
+	 */
+	private synchronized void write(long offset, RestRequest request, RestResponse response, byte[] body) {
+		if(closed)
+			return;
+		if(broken) {
+			failed.incrementAndGet();
+			return;
+		}
+		try {
+			out.writeLong(offset);
+			out.writeLong(response.getElapsedNanos());
+			writeString(out, request.getMethod());
+			writeString(out, request.getService());
+			writeParams(out, request.getParams());
+			writeParams(out, request.getEncodedParams());
+			out.writeInt(response.getStatus());
+			writeParams(out, response.getHeaders());
+			out.writeBoolean(response.isStreamed());
+			writeBytes(out, SECRET_ELEMENT.matcher(new String(body, StandardCharsets.UTF_8)).replaceAll("<$1>" + SCRUBBED + "</$1>").getBytes(StandardCharsets.UTF_8));
+			recorded.incrementAndGet();
+		} catch (IOException e) {
+			broken = true;
+			failed.incrementAndGet();
+		}
+	}
+
+	private static void writeParams(DataOutputStream out, Hashtable<String, String> params) throws IOException {
+		if(params == null) {
+			out.writeInt(0);
+			return;
+		}
+		out.writeInt(params.size());
+		for(Map.Entry<String, String> param: params.entrySet()) {
+			String name = param.getKey().toLowerCase();
+			writeString(out, param.getKey());
+			writeString(out, name.contains("password") || name.contains("username") ? SCRUBBED : param.getValue());
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(DataInputStream in) throws IOException {
+		return new String(readBytes(in), StandardCharsets.UTF_8);
+	}
+
+	static byte[] readBytes(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if(length < 0)
+			throw new IOException("Invalid recording, negative length " + length);
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	static Hashtable<String, String> readParams(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		Hashtable<String, String> params = new Hashtable<String, String>();
+		for(int i = 0; i < count; i++)
+			params.put(readString(in), readString(in));
+		return params;
+	}
+}
@@ -0,0 +1,174 @@
+package uk.co.textmarketer.RestAPI;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * RestTransport using HttpURLConnection, one blocking request per connection.<p>
+ *
+ * Connections whose response was fully read go back to the keep-alive cache of the JDK, which keeps up to
+ * http.maxConnections (5 by default) idle connections per host.<p>
+ *
+ * The connect and read timeouts of the request are capped to the time left before its deadline. As the read timeout
+ * only bounds each wait for data, a watchdog thread also closes the connection when the deadline passes before the
+ * response has arrived.<p>
+ *
+ * This is the default transport of RestClient.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ * @see RestTransport
+ */
+public class UrlConnectionTransport implements RestTransport {
+
+	public RestResponse execute(RestRequest request, String url, byte[] body) throws IOException {
+		HttpURLConnection connection = null;
+		long start = System.nanoTime();
+		boolean kept = false;
+		ScheduledFuture<?> watchdog = null;
+		try {
+			connection = (HttpURLConnection) new URL(url).openConnection();
+			connection.setConnectTimeout(request.timeoutMillis(request.getConnectTimeout()));
+			connection.setReadTimeout(request.timeoutMillis(request.getReadTimeout()));
+			if(request.getDeadline() != null)
+				watchdog = Watchdog.close(connection, request.getDeadline());
+			connection.setUseCaches (false);
+			connection.setDoOutput(true);
+			connection.setRequestMethod(request.getMethod());
+			for(Map.Entry<String, String> header: request.getHeaders().entrySet())
+				connection.setRequestProperty(header.getKey(), header.getValue());
+			if(body != null) {
+				connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+				connection.setRequestProperty("Content-Length", Integer.toString(body.length));
+				connection.setDoInput(true);
+			}
+			// a kept-alive connection is reused at once
+			long connecting = System.nanoTime();
+			connection.connect();
+			long connectNanos = System.nanoTime() - connecting;
+			if(body != null) {
+				// Send request
+				OutputStream wr = connection.getOutputStream();
+				wr.write(body);
+				wr.flush();
+				wr.close();
+			}
+			long sent = System.nanoTime();
+			// Get Response
+			InputStream is;
+			try {
+				is = connection.getInputStream();
+			} catch (IOException e) {
+				// HTTP error code, the body is on the error stream
+				if(connection.getResponseCode() == -1)
+					throw e;
+				is = connection.getErrorStream();
+			}
+			int status = connection.getResponseCode();
+			long waitNanos = System.nanoTime() - sent;
+			Hashtable<String, String> headers = new Hashtable<String, String>();
+			for(Map.Entry<String, List<String>> header: connection.getHeaderFields().entrySet()) {
+				if(header.getKey() != null && !header.getValue().isEmpty())
+					headers.put(header.getKey().toLowerCase(), header.getValue().get(0));
+			}
+			if(request.isStreaming() && status >= 200 && status < 300 && is != null) {
+				final HttpURLConnection streamConnection = connection;
+				kept = true;
+				RestResponse streamed = new RestResponse(status, new FilterInputStream(is) {
+					@Override
+					public void close() throws IOException {
+						try {
+							super.close();
+						} finally {
+							streamConnection.disconnect();
+						}
+					}
+				}, System.nanoTime() - start, headers);
+				streamed.setTimings(connectNanos, waitNanos);
+				return streamed;
+			}
+			byte[] response = RestClient.getConnectionResponse(is);
+			// fully read, the connection goes back to the keep-alive cache
+			kept = true;
+			RestResponse buffered = new RestResponse(status, new String(response, "UTF-8"), response.length, System.nanoTime() - start, headers);
+			buffered.setTimings(connectNanos, waitNanos);
+			return buffered;
+		} finally {
+			// a streamed body is read after the call, the deadline only covers the wait for the response
+			if(watchdog != null)
+				watchdog.cancel(false);
+			if(connection != null && !kept)
+				connection.disconnect();
+		}
+	}
+
+	/**
+	 * Open the connections at the same time with HEAD requests, so each request gets its own connection
+	 */
+	@Override
+	public void warmUp(final RestRequest request, final String url, int connections) throws IOException {
+		final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+		Thread[] threads = new Thread[connections];
+		for(int i = 0; i < connections; i++) {
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						execute(request, url, null);
+					} catch (IOException e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			}, "tm-warmup-" + (i + 1));
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+		try {
+			for(Thread thread: threads)
+				thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while opening connections to " + url);
+		}
+		if(failure.get() != null)
+			throw failure.get();
+	}
+
+	/**
+	 * Daemon thread closing the connections of the calls whose deadline has passed, started on first use
+	 */
+	private static class Watchdog {
+		static final ScheduledThreadPoolExecutor EXECUTOR = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "tm-deadline-watchdog");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		static {
+			EXECUTOR.setRemoveOnCancelPolicy(true);
+		}
+
+		static ScheduledFuture<?> close(final HttpURLConnection connection, Deadline deadline) {
+			return EXECUTOR.schedule(new Runnable() {
+				public void run() {
+					connection.disconnect();
+				}
+			}, deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package uk.co.textmarketer.RestAPI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the ClientRegistry limits and fair dispatch, against a StubServer.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ */
+public class ClientRegistryTest {
+	private StubServer stub;
+	private ClientRegistry registry;
+
+	@Before
+	public void setUp() throws Exception {
+		stub = new StubServer();
+		stub.start();
+		registry = new ClientRegistry(stub.getBaseUrl(), new HttpClientTransport(), 16);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		registry.close();
+		registry.awaitTermination(10, TimeUnit.SECONDS);
+		stub.stop();
+	}
+
+	@Test
+	public void maxInFlightIsHonoured() throws Exception {
+		stub.setLatency(20, 20);
+		registry.register("acme", "acmeuser", "acmepass");
+		registry.setLimits("acme", 0, 3);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		List<CompletableFuture<Integer>> futures = new ArrayList<CompletableFuture<Integer>>();
+		for(int i = 0; i < 30; i++) {
+			futures.add(registry.submit("acme", new ClientRegistry.ClientTask<Integer>() {
+				public Integer call(RestClient client) throws Exception {
+					int now = running.incrementAndGet();
+					int max = maxRunning.get();
+					while(now > max && !maxRunning.compareAndSet(max, now))
+						max = maxRunning.get();
+					try {
+						return client.getCredits();
+					} finally {
+						running.decrementAndGet();
+					}
+				}
+			}));
+		}
+		for(CompletableFuture<Integer> future: futures)
+			assertEquals(1000000, future.get(30, TimeUnit.SECONDS).intValue());
+		assertTrue("max in flight " + maxRunning.get(), maxRunning.get() <= 3);
+		assertTrue("max in flight " + maxRunning.get(), maxRunning.get() >= 2);
+	}
+
+	@Test
+	public void requestRateIsHonoured() throws Exception {
+		registry.register("acme", "acmeuser", "acmepass");
+		registry.setLimits("acme", 20, 16);
+		List<CompletableFuture<Integer>> futures = new ArrayList<CompletableFuture<Integer>>();
+		long start = System.nanoTime();
+		// a burst of one second of traffic, then 20 more at 20 per second
+		for(int i = 0; i < 40; i++)
+			futures.add(registry.submit("acme", credits()));
+		for(CompletableFuture<Integer> future: futures)
+			future.get(30, TimeUnit.SECONDS);
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue("40 calls in " + elapsed + "ms", elapsed >= 850);
+		assertEquals(40, stub.getRequestCount());
+	}
+
+	@Test
+	public void fullQueueIsRejected() throws Exception {
+		registry.register("acme", "acmeuser", "acmepass");
+		registry.setLimits("acme", 0, 1);
+		registry.setMaxQueued(2);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		CompletableFuture<Integer> blocking = registry.submit("acme", new ClientRegistry.ClientTask<Integer>() {
+			public Integer call(RestClient client) throws Exception {
+				started.countDown();
+				release.await();
+				return client.getCredits();
+			}
+		});
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		CompletableFuture<Integer> first = registry.submit("acme", credits());
+		CompletableFuture<Integer> second = registry.submit("acme", credits());
+		assertEquals(2, registry.getQueued("acme"));
+		try {
+			registry.submit("acme", credits());
+			fail("queue of 2 accepted a third task");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+		release.countDown();
+		assertEquals(1000000, blocking.get(10, TimeUnit.SECONDS).intValue());
+		assertEquals(1000000, first.get(10, TimeUnit.SECONDS).intValue());
+		assertEquals(1000000, second.get(10, TimeUnit.SECONDS).intValue());
+	}
+
+	@Test
+	public void busyAccountDoesNotStarveOthers() throws Exception {
+		stub.setLatency(10, 10);
+		registry.register("bulk", "bulkuser", "bulkpass");
+		registry.register("otp", "otpuser", "otppass");
+		registry.setLimits("bulk", 0, 16);
+		List<CompletableFuture<Integer>> bulk = new ArrayList<CompletableFuture<Integer>>();
+		for(int i = 0; i < 500; i++)
+			bulk.add(registry.submit("bulk", credits()));
+		CompletableFuture<Integer> otp = registry.submit("otp", credits());
+		assertEquals(1000000, otp.get(10, TimeUnit.SECONDS).intValue());
+		int done = 0;
+		for(CompletableFuture<Integer> future: bulk) {
+			if(future.isDone())
+				done++;
+		}
+		assertTrue("otp waited for " + done + " bulk tasks", done < bulk.size());
+		for(CompletableFuture<Integer> future: bulk)
+			future.get(30, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void expiredDeadlineDoesNotRun() throws Exception {
+		registry.register("acme", "acmeuser", "acmepass");
+		CompletableFuture<Integer> future = registry.submit("acme", credits(), Deadline.after(0, TimeUnit.SECONDS));
+		try {
+			future.get(10, TimeUnit.SECONDS);
+			fail("task ran after its deadline");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof RestClientException);
+			assertTrue(e.getCause().getCause() instanceof DeadlineExceededException);
+		}
+		assertEquals(0, stub.getRequestCount());
+	}
+
+	@Test
+	public void unregisterCancelsWaitingTasks() throws Exception {
+		registry.register("acme", "acmeuser", "acmepass");
+		registry.setLimits("acme", 0, 1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		registry.submit("acme", new ClientRegistry.ClientTask<Integer>() {
+			public Integer call(RestClient client) throws Exception {
+				started.countDown();
+				release.await();
+				return 0;
+			}
+		});
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		CompletableFuture<Integer> waiting = registry.submit("acme", credits());
+		assertTrue(registry.unregister("acme"));
+		assertFalse(registry.unregister("acme"));
+		assertTrue(waiting.isCancelled());
+		release.countDown();
+	}
+
+	private static ClientRegistry.ClientTask<Integer> credits() {
+		return new ClientRegistry.ClientTask<Integer>() {
+			public Integer call(RestClient client) throws Exception {
+				return client.getCredits();
+			}
+		};
+	}
+}
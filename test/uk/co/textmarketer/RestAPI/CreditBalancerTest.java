@@ -0,0 +1,94 @@
+package uk.co.textmarketer.RestAPI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of CreditBalancer, with the source account and the watched account on two StubServers.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ */
+public class CreditBalancerTest {
+	private StubServer sourceStub;
+	private StubServer accountStub;
+	private ClientRegistry registry;
+	private CreditBalancer balancer;
+
+	@Before
+	public void setUp() throws Exception {
+		sourceStub = new StubServer();
+		sourceStub.start();
+		accountStub = new StubServer();
+		accountStub.setCredits(50);
+		accountStub.start();
+		registry = new ClientRegistry(accountStub.getBaseUrl(), new HttpClientTransport(), 4);
+		registry.register("acme", "acmeuser", "acmepass");
+		balancer = new CreditBalancer(new RestClient("myuser", "mypass", sourceStub.getBaseUrl()), registry, 4);
+		balancer.setThresholds(100, 1000, 100);
+		balancer.watchAccount("acme", "902");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		balancer.close();
+		registry.close();
+		sourceStub.stop();
+		accountStub.stop();
+	}
+
+	@Test
+	public void lowAccountIsToppedUp() {
+		Hashtable<String, Integer> transferred = balancer.balance();
+		assertEquals(Integer.valueOf(1000), transferred.get("acme"));
+		assertEquals(1000000 - 1000, sourceStub.getCredits());
+	}
+
+	@Test
+	public void fundedAccountIsLeftAlone() {
+		accountStub.setCredits(5000);
+		assertTrue(balancer.balance().isEmpty());
+		assertEquals(1000000, sourceStub.getCredits());
+	}
+
+	@Test
+	public void canStartAgainAfterStop() throws Exception {
+		accountStub.setCredits(5000);
+		balancer.start(10, TimeUnit.MILLISECONDS);
+		balancer.stop();
+		balancer.start(10, TimeUnit.MILLISECONDS);
+		long polls = accountStub.getRequestCount();
+		long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while(accountStub.getRequestCount() < polls + 3 && System.nanoTime() - until < 0)
+			Thread.sleep(5);
+		assertTrue(accountStub.getRequestCount() >= polls + 3);
+		balancer.stop();
+		assertTrue(balancer.balance().isEmpty());
+	}
+
+	@Test
+	public void closedBalancerRefusesWork() {
+		balancer.close();
+		try {
+			balancer.start(1, TimeUnit.SECONDS);
+			fail("closed balancer started");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		try {
+			balancer.balance();
+			fail("closed balancer balanced");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package uk.co.textmarketer.RestAPI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests of the call timeouts and deadlines on both transports, against a StubServer.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ */
+public class DeadlineTest {
+	private StubServer stub;
+	private RestClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		stub = new StubServer();
+		stub.setLatency(500, 500);
+		stub.start();
+		client = new RestClient("myuser", "mypass", stub.getBaseUrl());
+	}
+
+	@After
+	public void tearDown() {
+		stub.stop();
+	}
+
+	@Test
+	public void callTimeoutOnUrlConnection() throws Exception {
+		client.setTimeouts(10000, 0, 150);
+		deadlineExceeded(client);
+	}
+
+	@Test
+	public void callTimeoutOnHttpClient() throws Exception {
+		client.setTransport(new HttpClientTransport());
+		client.setTimeouts(10000, 0, 150);
+		deadlineExceeded(client);
+	}
+
+	@Test
+	public void requestDeadlineOnBothTransports() throws Exception {
+		for(RestTransport transport: new RestTransport[] {new UrlConnectionTransport(), new HttpClientTransport()}) {
+			client.setTransport(transport);
+			SmsRequest request = new SmsRequest("Hello", "447777123123", "Test");
+			request.setDeadline(Deadline.after(150, TimeUnit.MILLISECONDS));
+			long start = System.nanoTime();
+			try {
+				client.sendSMS(request);
+				fail("late call succeeded on " + transport);
+			} catch (RestClientException e) {
+				assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof DeadlineExceededException);
+			}
+			assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(450));
+		}
+	}
+
+	@Test
+	public void callWithinItsTimeoutSucceeds() throws Exception {
+		client.setTimeouts(10000, 0, 5000);
+		assertEquals(1000000, client.getCredits());
+		client.setTransport(new HttpClientTransport());
+		assertEquals(1000000, client.getCredits());
+	}
+
+	@Test
+	public void readTimeoutWithoutDeadline() throws Exception {
+		client.setTimeouts(10000, 150, 0);
+		try {
+			client.getCredits();
+			fail("late call succeeded");
+		} catch (RestClientException e) {
+			assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof IOException);
+			assertFalse(e.getCause() instanceof DeadlineExceededException);
+		}
+	}
+
+	@Test
+	public void endpointTimeoutsOverrideTheClientTimeouts() throws Exception {
+		client.setTimeouts(10000, 0, 150);
+		client.setTimeouts("GET credits", 10000, 0, 5000);
+		assertEquals(1000000, client.getCredits());
+		try {
+			client.getGroups();
+			fail("late call succeeded");
+		} catch (RestClientException e) {
+			assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof DeadlineExceededException);
+		}
+
+		client.setTimeouts(10000, 0, 5000);
+		client.setTimeouts("GET credits", 10000, 0, 150);
+		deadlineExceeded(client);
+		assertTrue(client.getGroups().length > 0);
+		client.removeTimeouts("GET credits");
+		assertEquals(1000000, client.getCredits());
+	}
+
+	@Test
+	public void watchdogClosesATricklingResponse() throws Exception {
+		// the body arrives slowly enough to finish long after the deadline, but fast enough to never hit the read timeout
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.sendResponseHeaders(200, 0);
+				OutputStream os = exchange.getResponseBody();
+				try {
+					for(int i = 0; i < 100; i++) {
+						os.write(' ');
+						os.flush();
+						Thread.sleep(20);
+					}
+					os.write("<response><credits>1</credits></response>".getBytes("UTF-8"));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (IOException e) {
+					// closed by the client
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.start();
+		try {
+			RestClient trickled = new RestClient("myuser", "mypass", "http://127.0.0.1:" + server.getAddress().getPort() + "/services/rest/");
+			trickled.setTimeouts(10000, 0, 300);
+			long start = System.nanoTime();
+			try {
+				trickled.getCredits();
+				fail("late call succeeded");
+			} catch (RestClientException e) {
+				assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof DeadlineExceededException);
+			}
+			assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1500));
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	private static void deadlineExceeded(RestClient client) {
+		long start = System.nanoTime();
+		try {
+			client.getCredits();
+			fail("late call succeeded");
+		} catch (RestClientException e) {
+			assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof DeadlineExceededException);
+		}
+		assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(450));
+	}
+}
@@ -0,0 +1,137 @@
+package uk.co.textmarketer.RestAPI;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of DeliveryCallbackReceiver, with notifications pushed by a StubServer or posted directly.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ */
+public class DeliveryCallbackReceiverTest {
+	private DeliveryCallbackReceiver receiver;
+	private final List<DeliveryReportRow> rows = new CopyOnWriteArrayList<DeliveryReportRow>();
+	private String url;
+
+	@Before
+	public void setUp() throws Exception {
+		receiver = new DeliveryCallbackReceiver(0);
+		receiver.addListener(new DeliveryCallbackListener() {
+			public void onDelivery(DeliveryReportRow row) {
+				rows.add(row);
+			}
+		});
+		receiver.setSecret("s3cret");
+		receiver.start();
+		url = "http://127.0.0.1:" + receiver.getPort() + "/callbacks/delivery";
+	}
+
+	@After
+	public void tearDown() {
+		receiver.stop();
+	}
+
+	@Test
+	public void stubPushesAreReceived() throws Exception {
+		StubServer stub = new StubServer();
+		stub.setCallbackUrl(url + "?token=s3cret");
+		stub.start();
+		try {
+			RestClient client = new RestClient("myuser", "mypass", stub.getBaseUrl());
+			for(int i = 0; i < 10; i++)
+				client.sendSMS("Hello", "4477" + (10000000 + i), "Test", 0, null, "spring-sale", null, false);
+			awaitRows(10);
+		} finally {
+			stub.stop();
+		}
+		for(DeliveryReportRow row: rows) {
+			assertEquals(DeliveryCallbackReceiver.REPORT_NAME, row.getReport());
+			assertEquals("DELIVERED", row.getStatus());
+			assertEquals("spring-sale", row.getCustom());
+		}
+		assertEquals(0, receiver.getRefusedCount());
+	}
+
+	@Test
+	public void postedBodyIsDecodedAndDeduplicated() throws Exception {
+		String body = "message_id=1&mobile_number=447777123123&status=DELIVERED&custom=a+b%2Cc&last_updated=2017-03-01+10%3A15%3A00\r\n"
+				+ "message_id=2&status=FAILED\n"
+				+ "message_id=1&mobile_number=447777123123&status=DELIVERED\n";
+		assertEquals(200, post(url + "?token=s3cret", body));
+		awaitRows(2);
+		assertEquals("1", rows.get(0).getMessageId());
+		assertEquals("a b,c", rows.get(0).getCustom());
+		assertEquals("2017-03-01 10:15:00", rows.get(0).getLastUpdated());
+		assertEquals("FAILED", rows.get(1).getStatus());
+		assertEquals(3, receiver.getReceivedCount());
+		assertEquals(1, receiver.getDuplicateCount());
+	}
+
+	@Test
+	public void requestsWithoutTheSecretAreRefused() throws Exception {
+		assertEquals(403, post(url, "message_id=1&status=DELIVERED"));
+		assertEquals(403, post(url + "?token=guess", "message_id=1&status=DELIVERED"));
+		assertEquals(403, get(url + "?message_id=1&status=DELIVERED"));
+		assertEquals(200, get(url + "?message_id=1&status=DELIVERED&token=s3cret"));
+		awaitRows(1);
+		assertEquals(3, receiver.getRefusedCount());
+	}
+
+	@Test
+	public void bodyOverTheMaximumIsRefused() throws Exception {
+		receiver.setMaxBodySize(1024);
+		StringBuilder body = new StringBuilder();
+		for(int i = 0; body.length() <= 1024; i++)
+			body.append("message_id=").append(i).append("&status=DELIVERED\n");
+		assertEquals(413, post(url + "?token=s3cret", body.toString()));
+		assertEquals(200, post(url + "?token=s3cret", "message_id=1&status=DELIVERED"));
+		awaitRows(1);
+		assertEquals(1, receiver.getRefusedCount());
+		assertEquals(1, receiver.getReceivedCount());
+	}
+
+	private void awaitRows(int count) throws InterruptedException {
+		long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while(rows.size() < count && System.nanoTime() - until < 0)
+			Thread.sleep(5);
+		assertEquals(count, rows.size());
+	}
+
+	private static int post(String url, String body) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		try {
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+			OutputStream out = connection.getOutputStream();
+			out.write(body.getBytes(StandardCharsets.UTF_8));
+			out.close();
+			return connection.getResponseCode();
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	private static int get(String url) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		try {
+			return connection.getResponseCode();
+		} finally {
+			connection.disconnect();
+		}
+	}
+}
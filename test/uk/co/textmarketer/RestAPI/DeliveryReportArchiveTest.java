@@ -0,0 +1,170 @@
+package uk.co.textmarketer.RestAPI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the binary export read back with DeliveryReportArchive.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ */
+public class DeliveryReportArchiveTest {
+	final private static String[] STATUSES = {"DELIVERED", "DELIVERED", "DELIVERED", "DELIVERED", "DELIVERED", "DELIVERED", "SENT", "SENT", "FAILED", "EXPIRED"};
+
+	private StubServer stub;
+	private Path file;
+
+	@Before
+	public void setUp() throws Exception {
+		stub = new StubServer();
+		stub.start();
+		file = Files.createTempFile("tm-archive", ".tmdr");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		stub.stop();
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	public void stubReportRoundTrip() throws Exception {
+		stub.setReportRows(5000);
+		RestClient client = new RestClient("myuser", "mypass", stub.getBaseUrl());
+		DeliveryReportExporter exporter = new DeliveryReportExporter();
+		// several blocks, the last one partly filled
+		exporter.setRowsPerBlock(1024);
+		DeliveryReportReader reader = client.openDeliveryReport("all", null);
+		try {
+			assertEquals(5000, exporter.exportBinary(reader, file));
+		} finally {
+			reader.close();
+		}
+
+		DeliveryReportArchive archive = new DeliveryReportArchive(file);
+		try {
+			String lastUpdated = null;
+			int rows = 0;
+			while(archive.next()) {
+				assertEquals("all", archive.getReport());
+				assertEquals("4477" + (10000000 + rows), archive.getMobileNumber());
+				assertEquals(Long.toString(3000000000L + rows), archive.getMessageId());
+				assertEquals(STATUSES[rows % STATUSES.length], archive.getStatus());
+				assertEquals("campaign-" + (rows % 8), archive.getCustom());
+				if(lastUpdated == null)
+					lastUpdated = archive.getLastUpdated();
+				assertEquals(lastUpdated, archive.getLastUpdated());
+				rows++;
+			}
+			assertEquals(5000, rows);
+			assertTrue(lastUpdated.matches("\\d{4}-\\d\\d-\\d\\d \\d\\d:\\d\\d:\\d\\d"));
+			assertFalse(archive.next());
+		} finally {
+			archive.close();
+		}
+	}
+
+	@Test
+	public void rowsRoundTripUnchanged() throws Exception {
+		List<DeliveryReportRow> rows = new ArrayList<DeliveryReportRow>();
+		rows.add(new DeliveryReportRow("GB20170301", "2017-03-01 10:15:30", "447777123123", "3000000001", "DELIVERED", "spring-sale"));
+		rows.add(new DeliveryReportRow("GB20170301", "2017-03-01T10:15:31", "447777123124", "3000000002", "FAILED", ""));
+		rows.add(new DeliveryReportRow("GB20170301", "01/03/2017 10:15", "447777123125", "3000000003", "SENT", "a,b \"quoted\""));
+		rows.add(new DeliveryReportRow("GB20170301", "", "", "", "", "spring-sale"));
+		rows.add(new DeliveryReportRow("campaign-1", "2016-12-31 23:59:59", "447777123126", "3000000004", "EXPIRED", "caf\u00e9 \u20ac"));
+		rows.add(new DeliveryReportRow("campaign-1", "2017-02-29 10:00:00", "447777123127", "3000000005", "REJECTED", "x"));
+
+		DeliveryReportExporter exporter = new DeliveryReportExporter();
+		exporter.setRowsPerBlock(4);
+		DeliveryReportReader reader = reader(rows);
+		try {
+			assertEquals(rows.size(), exporter.exportBinary(reader, file));
+		} finally {
+			reader.close();
+		}
+
+		DeliveryReportArchive archive = new DeliveryReportArchive(file);
+		try {
+			for(DeliveryReportRow row: rows) {
+				assertTrue(archive.next());
+				assertEquals(row.toString(), archive.getRow().toString());
+				assertEquals(row.getLastUpdated(), archive.getLastUpdated());
+			}
+			assertFalse(archive.next());
+		} finally {
+			archive.close();
+		}
+	}
+
+	@Test
+	public void emptyReportRoundTrip() throws Exception {
+		DeliveryReportReader reader = reader(new ArrayList<DeliveryReportRow>());
+		try {
+			assertEquals(0, new DeliveryReportExporter().exportBinary(reader, file));
+		} finally {
+			reader.close();
+		}
+		DeliveryReportArchive archive = new DeliveryReportArchive(file);
+		try {
+			assertFalse(archive.next());
+		} finally {
+			archive.close();
+		}
+	}
+
+	@Test
+	public void otherFilesAreRefused() throws Exception {
+		Files.write(file, "report,last_updated\n".getBytes(StandardCharsets.UTF_8));
+		try {
+			new DeliveryReportArchive(file).close();
+			fail("a CSV file was read as an archive");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Build a reader over the XML of the gateway for the rows, grouped by report
+	 */
+	private static DeliveryReportReader reader(List<DeliveryReportRow> rows) throws Exception {
+		StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<response processed_date=\"2017-03-01T10:20:00\">");
+		String report = null;
+		for(DeliveryReportRow row: rows) {
+			if(!row.getReport().equals(report)) {
+				if(report != null)
+					xml.append("</report>");
+				report = row.getReport();
+				xml.append("<report name=\"").append(escape(report)).append("\" last_updated=\"2017-03-01T10:20:00\" extension=\"csv\">");
+			}
+			xml.append("<reportrow last_updated=\"").append(escape(row.getLastUpdated()))
+				.append("\" mobile_number=\"").append(escape(row.getMobileNumber()))
+				.append("\" message_id=\"").append(escape(row.getMessageId()))
+				.append("\" status=\"").append(escape(row.getStatus()))
+				.append("\" custom=\"").append(escape(row.getCustom())).append("\"/>");
+		}
+		if(report != null)
+			xml.append("</report>");
+		xml.append("</response>");
+		return new DeliveryReportReader(new ByteArrayInputStream(xml.toString().getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static String escape(String value) {
+		return value.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;");
+	}
+}
@@ -0,0 +1,53 @@
+package uk.co.textmarketer.RestAPI;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests of the septet and segment counts of GsmCharset.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ */
+public class GsmCharsetTest {
+
+	@Test
+	public void basicCharsTakeOneSeptet() {
+		for(char c: "@£$¥èéAz09 \n\r_ΔΩßÉ¡¿äöñüà".toCharArray())
+			assertEquals(String.valueOf(c), 1, GsmCharset.septets(c));
+	}
+
+	@Test
+	public void extensionCharsTakeTwoSeptets() {
+		for(char c: "€^{}\\[~]|\f".toCharArray())
+			assertEquals(String.valueOf(c), 2, GsmCharset.septets(c));
+	}
+
+	@Test
+	public void otherCharsAreNotGsm() {
+		for(char c: "\u001Bâ`çАЖ中😀".toCharArray())
+			assertEquals(String.valueOf(c), 0, GsmCharset.septets(c));
+	}
+
+	@Test
+	public void gsmSegments() {
+		assertEquals(1, GsmCharset.segments(0, true));
+		assertEquals(1, GsmCharset.segments(160, true));
+		assertEquals(2, GsmCharset.segments(161, true));
+		assertEquals(2, GsmCharset.segments(306, true));
+		assertEquals(3, GsmCharset.segments(307, true));
+		assertEquals(4, GsmCharset.segments(612, true));
+		assertEquals(5, GsmCharset.segments(613, true));
+	}
+
+	@Test
+	public void ucs2Segments() {
+		assertEquals(1, GsmCharset.segments(0, false));
+		assertEquals(1, GsmCharset.segments(70, false));
+		assertEquals(2, GsmCharset.segments(71, false));
+		assertEquals(2, GsmCharset.segments(134, false));
+		assertEquals(3, GsmCharset.segments(135, false));
+	}
+}
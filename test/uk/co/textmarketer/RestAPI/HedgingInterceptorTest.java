@@ -0,0 +1,124 @@
+package uk.co.textmarketer.RestAPI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of HedgingInterceptor, against a StubServer.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ */
+public class HedgingInterceptorTest {
+	private StubServer stub;
+	private RestClient client;
+	private HedgingInterceptor hedging;
+	private final AtomicInteger attempts = new AtomicInteger();
+
+	@Before
+	public void setUp() throws Exception {
+		stub = new StubServer();
+		stub.start();
+		client = new RestClient("myuser", "mypass", stub.getBaseUrl());
+		hedging = new HedgingInterceptor();
+		hedging.setDelays(50, 10);
+		// every call earns one hedge request
+		hedging.setBudget(100);
+		client.addInterceptor(hedging);
+	}
+
+	@After
+	public void tearDown() {
+		hedging.shutdown();
+		stub.stop();
+	}
+
+	@Test
+	public void slowRequestIsHedged() throws Exception {
+		client.addInterceptor(firstAttempt(500, false));
+		assertEquals(1000000, client.getCredits());
+		assertEquals(1, hedging.getHedgeCount());
+		assertEquals(1, hedgeWins());
+	}
+
+	@Test
+	public void hedgeRescuesAFailedRequest() throws Exception {
+		client.addInterceptor(firstAttempt(200, true));
+		assertEquals(1000000, client.getCredits());
+		assertEquals(1, hedging.getHedgeCount());
+		assertEquals(1, hedgeWins());
+	}
+
+	@Test
+	public void fastFailureIsNotHedged() throws Exception {
+		client.addInterceptor(firstAttempt(0, true));
+		try {
+			client.getCredits();
+			fail("failed request returned credits");
+		} catch (RestClientException e) {
+			// expected
+		}
+		assertEquals(0, hedging.getHedgeCount());
+		assertEquals(1, attempts.get());
+	}
+
+	@Test
+	public void failsWhenBothRequestsFail() throws Exception {
+		client.addInterceptor(new RestInterceptor() {
+			public RestResponse intercept(Chain chain) throws Exception {
+				attempts.incrementAndGet();
+				Thread.sleep(100);
+				throw new IOException("gateway unreachable");
+			}
+		});
+		try {
+			client.getCredits();
+			fail("failed requests returned credits");
+		} catch (RestClientException e) {
+			// expected
+		}
+		assertEquals(1, hedging.getHedgeCount());
+		assertEquals(2, attempts.get());
+	}
+
+	@Test
+	public void writesAreNotHedged() throws Exception {
+		client.addInterceptor(firstAttempt(200, false));
+		client.sendSMS("Hello", "447777123123", "Test");
+		assertEquals(0, hedging.getHedgeCount());
+		assertEquals(1, stub.getRequestCount());
+	}
+
+	/**
+	 * Return the hedge wins, counted by the winning request just after it completed the call
+	 */
+	private long hedgeWins() throws InterruptedException {
+		for(int i = 0; i < 100 && hedging.getHedgeWins() == 0; i++)
+			Thread.sleep(10);
+		return hedging.getHedgeWins();
+	}
+
+	/**
+	 * Interceptor delaying the first request it sees, and failing it if asked
+	 */
+	private RestInterceptor firstAttempt(final long delayMillis, final boolean failing) {
+		return new RestInterceptor() {
+			public RestResponse intercept(Chain chain) throws Exception {
+				if(attempts.incrementAndGet() == 1) {
+					Thread.sleep(delayMillis);
+					if(failing)
+						throw new IOException("connection reset");
+				}
+				return chain.proceed(chain.request());
+			}
+		};
+	}
+}
@@ -0,0 +1,157 @@
+package uk.co.textmarketer.RestAPI;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.URLEncoder;
+import java.util.Hashtable;
+
+import org.junit.Test;
+
+/**
+ * Tests of MessageTemplate, of its encoding against URLEncoder and of its GSM and segment checks.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ */
+public class MessageTemplateTest {
+	final private static String[] TEXTS = {
+		"Hello World 0123456789 .-*_ ~!@#$%&'()+,/:;<=>?[]^`|\\\"\r\n\t",
+		"£¥èéÄÖÑÜ§¿ΔΩ ß",
+		"€ 中文 ₹ �",
+		"😀 🇬🇧 𐀀􏿿",
+		"lone \uD83D and \uDE00 surrogates"
+	};
+
+	@Test
+	public void textIsEncodedLikeUrlEncoder() throws Exception {
+		for(String text: TEXTS) {
+			EncodedMessage message = MessageTemplate.compile(text.replace("{", "{{").replace("}", "}}"), 10, false).render();
+			assertEquals(text, URLEncoder.encode(text, "UTF-8"), message.getEncoded());
+		}
+	}
+
+	@Test
+	public void valuesAreEncodedLikeUrlEncoder() throws Exception {
+		MessageTemplate template = MessageTemplate.compile("Hi {name}!", 10, false);
+		for(String text: TEXTS)
+			assertEquals(text, URLEncoder.encode("Hi " + text + "!", "UTF-8"), template.render(text).getEncoded());
+	}
+
+	@Test
+	public void fieldsAreMerged() {
+		MessageTemplate template = MessageTemplate.compile("{first} {last}, {first}: {{code}} is {code}");
+		assertArrayEquals(new String[] {"first", "last", "code"}, template.getFields());
+		assertEquals("Ann Lee, Ann: {code} is 4711", template.render("Ann", "Lee", "4711").getText());
+		Hashtable<String, String> values = new Hashtable<String, String>();
+		values.put("first", "Bob");
+		values.put("last", "Ray");
+		values.put("code", "12");
+		assertEquals("Bob Ray, Bob: {code} is 12", template.render(values).getText());
+	}
+
+	@Test
+	public void invalidTemplatesAreRejected() {
+		for(String template: new String[] {"Hi {name", "Hi {}", "Hi {first name}", "Hi {name-1}", "Hi name}", "Hi {{name}"})
+			rejected(template);
+	}
+
+	@Test
+	public void missingValuesAreRejected() {
+		MessageTemplate template = MessageTemplate.compile("{first} {last}");
+		try {
+			template.render("Ann");
+			fail("rendered without a value");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			template.render("Ann", null);
+			fail("rendered a null value");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void extensionCharsCountTwice() {
+		EncodedMessage message = MessageTemplate.compile("€^{{").render();
+		assertTrue(message.isGsm());
+		assertEquals(6, message.getLength());
+		assertEquals(1, MessageTemplate.compile(repeat('€', 80)).render().getSegments());
+		assertEquals(2, MessageTemplate.compile(repeat('€', 81)).render().getSegments());
+	}
+
+	@Test
+	public void gsmSegmentLimits() {
+		MessageTemplate template = MessageTemplate.compile("{text}");
+		assertEquals(1, template.render(repeat('a', 160)).getSegments());
+		assertEquals(2, template.render(repeat('a', 161)).getSegments());
+		assertEquals(2, template.render(repeat('a', 306)).getSegments());
+		assertEquals(3, template.render(repeat('a', 307)).getSegments());
+		assertEquals(4, template.render(repeat('a', 612)).getSegments());
+		try {
+			template.render(repeat('a', 613));
+			fail("rendered 5 segments");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void ucs2SegmentLimits() {
+		MessageTemplate template = MessageTemplate.compile("中{text}", 4, false);
+		assertFalse(template.isGsm());
+		EncodedMessage message = template.render(repeat('a', 69));
+		assertFalse(message.isGsm());
+		assertEquals(70, message.getLength());
+		assertEquals(1, message.getSegments());
+		assertEquals(2, template.render(repeat('a', 70)).getSegments());
+		assertEquals(2, template.render(repeat('a', 133)).getSegments());
+		assertEquals(3, template.render(repeat('a', 134)).getSegments());
+	}
+
+	@Test
+	public void gsmOnlyTemplatesRejectOtherChars() {
+		rejected("Hi 中 {name}");
+		try {
+			MessageTemplate.compile("Hi {name}").render("中");
+			fail("rendered a UCS-2 value");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void tooLongTemplatesAreRejected() {
+		MessageTemplate template = MessageTemplate.compile(repeat('a', 160) + "{text}", 2, true);
+		assertEquals(1, template.getMinSegments());
+		assertEquals(2, template.render("b").getSegments());
+		try {
+			MessageTemplate.compile(repeat('a', 161), 1, true);
+			fail("compiled 2 segments");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private static void rejected(String template) {
+		try {
+			MessageTemplate.compile(template);
+			fail("compiled " + template);
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private static String repeat(char c, int count) {
+		StringBuilder text = new StringBuilder(count);
+		for(int i = 0; i < count; i++)
+			text.append(c);
+		return text.toString();
+	}
+}
@@ -0,0 +1,81 @@
+package uk.co.textmarketer.RestAPI;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that ParallelReportParser gives the same reports as RestClient.parseDeliveryReport.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ */
+public class ParallelReportParserTest {
+	final private static String[] STATUSES = {"DELIVERED", "SENT", "FAILED", "EXPIRED"};
+
+	private ForkJoinPool pool;
+	private ParallelReportParser parser;
+	private RestClient client;
+
+	@Before
+	public void setUp() {
+		pool = new ForkJoinPool(4);
+		parser = new ParallelReportParser(pool);
+		client = new RestClient("myuser", "mypass", "http://127.0.0.1:9/services/rest/");
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Test
+	public void sameReportsAsTheDomParser() throws Exception {
+		StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<response processed_date=\"2017-03-01T10:20:00\">\n");
+		// big enough to be split in many chunks
+		report(xml, "GB20170301", 40000, "campaign");
+		// a '>' in an attribute value does not end the tag
+		report(xml, "a>b", 3, "x>y");
+		xml.append("<report name='empty>' last_updated='2017-03-01T10:20:00' extension='csv'/>\n");
+		report(xml, "quoted &quot;&amp;&lt;", 5, "tag &amp; &quot;more&quot;");
+		report(xml, "campaign-2", 20000, "c");
+		xml.append("</response>");
+		String response = xml.toString();
+		assertTrue(response.length() > 16 * 256 * 1024);
+
+		compare(client.parseDeliveryReport(response), parser.parse(response));
+	}
+
+	@Test
+	public void emptyResponse() throws Exception {
+		String response = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><response processed_date=\"2017-03-01T10:20:00\"></response>";
+		compare(client.parseDeliveryReport(response), parser.parse(response));
+	}
+
+	private static void compare(DeliveryReport[] expected, DeliveryReport[] actual) {
+		assertEquals(expected.length, actual.length);
+		for(int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i].getName(), actual[i].getName());
+			assertEquals(expected[i].getLastUpdate(), actual[i].getLastUpdate());
+			assertEquals(expected[i].getExtension(), actual[i].getExtension());
+			assertArrayEquals(expected[i].getName(), expected[i].getRows(), actual[i].getRows());
+		}
+	}
+
+	private static void report(StringBuilder xml, String name, int rows, String custom) {
+		xml.append("<report name=\"").append(name).append("\" last_updated=\"2017-03-01T10:20:00\" extension=\"csv\">\n");
+		for(int i = 0; i < rows; i++) {
+			xml.append("<reportrow last_updated=\"2017-03-01 10:").append(10 + i % 50).append(":00\" mobile_number=\"4477")
+				.append(10000000 + i).append("\" message_id=\"").append(3000000000L + i).append("\" status=\"")
+				.append(STATUSES[i % STATUSES.length]).append("\" custom=\"").append(custom).append('-').append(i % 8).append("\"/>\n");
+		}
+		xml.append("</report>\n");
+	}
+}
@@ -0,0 +1,186 @@
+package uk.co.textmarketer.RestAPI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of ResponseCache expiry, revalidation and invalidation, against a StubServer.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ */
+public class ResponseCacheTest {
+	private StubServer stub;
+	private RestClient client;
+	private ResponseCache cache;
+
+	@Before
+	public void setUp() throws Exception {
+		stub = new StubServer();
+		stub.start();
+		client = new RestClient("myuser", "mypass", stub.getBaseUrl());
+		cache = new ResponseCache(100);
+		client.addInterceptor(cache);
+	}
+
+	@After
+	public void tearDown() {
+		stub.stop();
+	}
+
+	@Test
+	public void responseIsCachedUntilItsTtl() throws Exception {
+		cache.setTtl("GET credits", 200);
+		assertEquals(1000000, client.getCredits());
+		// changed behind the back of the client, the cached response is still fresh
+		stub.setCredits(500);
+		assertEquals(1000000, client.getCredits());
+		assertEquals(1, stub.getRequestCount());
+		assertEquals(1, cache.getHitCount());
+		Thread.sleep(300);
+		assertEquals(500, client.getCredits());
+		assertEquals(2, stub.getRequestCount());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(0, cache.getRevalidatedCount());
+	}
+
+	@Test
+	public void endpointsWithoutTtlAreNotCached() throws Exception {
+		cache.setTtl("GET groups", 60000);
+		client.getCredits();
+		client.getCredits();
+		assertEquals(2, stub.getRequestCount());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void expiredResponseIsRevalidated() throws Exception {
+		cache.setTtl("GET credits", 50);
+		final AtomicReference<String> etag = new AtomicReference<String>();
+		final AtomicInteger notModified = new AtomicInteger();
+		client.addInterceptor(new RestInterceptor() {
+			public RestResponse intercept(Chain chain) throws Exception {
+				etag.set(chain.request().getHeaders().get("If-None-Match"));
+				RestResponse response = chain.proceed(chain.request());
+				if(response.getStatus() == 304)
+					notModified.incrementAndGet();
+				return response;
+			}
+		});
+		assertEquals(1000000, client.getCredits());
+		assertEquals(null, etag.get());
+		Thread.sleep(100);
+		assertEquals(1000000, client.getCredits());
+		assertTrue(etag.get() != null);
+		assertEquals(1, notModified.get());
+		assertEquals(1, cache.getRevalidatedCount());
+		// the 304 renewed the time to live
+		assertEquals(1000000, client.getCredits());
+		assertEquals(2, stub.getRequestCount());
+		// a changed response is sent again
+		Thread.sleep(100);
+		stub.setCredits(500);
+		assertEquals(500, client.getCredits());
+		assertEquals(1, notModified.get());
+		assertEquals(1, cache.getRevalidatedCount());
+	}
+
+	@Test
+	public void writesInvalidateWhatTheyChange() throws Exception {
+		cache.setTtl("GET credits", 60000);
+		cache.setTtl("GET groups", 60000);
+		cache.setTtl("GET group", 60000);
+		client.addGroup("friends");
+		assertEquals(1000000, client.getCredits());
+		int groups = client.getGroups().length;
+		assertEquals(0, client.getGroup("friends").length);
+		assertEquals(3, cache.size());
+
+		client.sendSMS("Hello", "447777123123", "Test");
+		assertEquals(999999, client.getCredits());
+		client.addNumbersToGroup("friends", "447777123123");
+		assertEquals(1, client.getGroup("friends").length);
+		client.addGroup("family");
+		assertEquals(groups + 1, client.getGroups().length);
+		assertEquals(0, cache.getHitCount());
+
+		assertEquals(999999, client.getCredits());
+		assertEquals(1, cache.getHitCount());
+		cache.invalidate("credits");
+		assertEquals(999999, client.getCredits());
+		assertEquals(1, cache.getHitCount());
+		cache.invalidateAll();
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void responseReadAcrossAWriteIsNotCached() throws Exception {
+		cache.setTtl("GET credits", 60000);
+		final AtomicBoolean blocking = new AtomicBoolean(true);
+		final CountDownLatch read = new CountDownLatch(1);
+		final CountDownLatch written = new CountDownLatch(1);
+		// holds the first read after the gateway answered it, until a write went through
+		client.addInterceptor(new RestInterceptor() {
+			public RestResponse intercept(Chain chain) throws Exception {
+				RestResponse response = chain.proceed(chain.request());
+				if(chain.request().isReadOnly() && blocking.compareAndSet(true, false)) {
+					read.countDown();
+					written.await(10, TimeUnit.SECONDS);
+				}
+				return response;
+			}
+		});
+		final AtomicInteger before = new AtomicInteger();
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				try {
+					before.set(client.getCredits());
+				} catch (RestClientException e) {
+					before.set(-1);
+				}
+			}
+		};
+		reader.start();
+		assertTrue(read.await(10, TimeUnit.SECONDS));
+		client.sendSMS("Hello", "447777123123", "Test");
+		written.countDown();
+		reader.join(10000);
+		assertEquals(1000000, before.get());
+		assertEquals(0, cache.size());
+		assertEquals(999999, client.getCredits());
+		assertEquals(999999, client.getCredits());
+		assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	public void leastRecentlyUsedEntryIsEvicted() throws Exception {
+		cache = new ResponseCache(2);
+		client = new RestClient("myuser", "mypass", stub.getBaseUrl());
+		client.addInterceptor(cache);
+		cache.setTtl("GET group", 60000);
+		for(String group: new String[] {"a", "b", "c"})
+			client.addGroup(group);
+		client.getGroup("a");
+		client.getGroup("b");
+		client.getGroup("a");
+		client.getGroup("c");
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getHitCount());
+		client.getGroup("a");
+		assertEquals(2, cache.getHitCount());
+		client.getGroup("b");
+		assertEquals(2, cache.getHitCount());
+	}
+}
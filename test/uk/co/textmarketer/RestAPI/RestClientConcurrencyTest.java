@@ -0,0 +1,124 @@
+package uk.co.textmarketer.RestAPI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of one RestClient shared by many threads, against a StubServer.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ */
+public class RestClientConcurrencyTest {
+	final private static int THREADS = 16;
+	final private static int CALLS = 50;
+
+	private StubServer stub;
+	private RestClient client;
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() throws Exception {
+		stub = new StubServer();
+		stub.setLatency(0, 3);
+		stub.start();
+		client = new RestClient("myuser", "mypass", stub.getBaseUrl());
+		executor = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+		stub.stop();
+	}
+
+	@Test
+	public void eachCallParsesItsOwnResponse() throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<List<Hashtable<String, String>>>> senders = new ArrayList<Future<List<Hashtable<String, String>>>>();
+		List<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+		for(int t = 0; t < THREADS / 2; t++) {
+			final int thread = t;
+			senders.add(executor.submit(new Callable<List<Hashtable<String, String>>>() {
+				public List<Hashtable<String, String>> call() throws Exception {
+					start.await();
+					List<Hashtable<String, String>> results = new ArrayList<Hashtable<String, String>>();
+					for(int i = 0; i < CALLS; i++)
+						results.add(client.sendSMS("Hello " + thread + "/" + i, "4477" + (10000000 + thread * CALLS + i), "Test"));
+					return results;
+				}
+			}));
+			readers.add(executor.submit(new Callable<Integer>() {
+				public Integer call() throws Exception {
+					start.await();
+					int bad = 0;
+					for(int i = 0; i < CALLS; i++) {
+						int credits = client.getCredits();
+						// a credits call parsing a sms response would read 0
+						if(credits <= 0 || credits > 1000000)
+							bad++;
+					}
+					return bad;
+				}
+			}));
+		}
+		start.countDown();
+
+		HashSet<String> messageIds = new HashSet<String>();
+		for(Future<List<Hashtable<String, String>>> sender: senders) {
+			for(Hashtable<String, String> result: sender.get(60, TimeUnit.SECONDS)) {
+				assertEquals("SENT", result.get("status"));
+				assertEquals("1", result.get("credits_used"));
+				assertTrue("duplicate message_id " + result.get("message_id"), messageIds.add(result.get("message_id")));
+			}
+		}
+		for(Future<Integer> reader: readers)
+			assertEquals(0, reader.get(60, TimeUnit.SECONDS).intValue());
+		assertEquals(THREADS / 2 * CALLS, messageIds.size());
+		assertEquals(1000000 - THREADS / 2 * CALLS, client.getCredits());
+	}
+
+	@Test
+	public void getXMLReturnsACompleteResponse() throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for(int t = 0; t < THREADS; t++) {
+			final boolean send = t % 2 == 0;
+			futures.add(executor.submit(new Callable<Integer>() {
+				public Integer call() throws Exception {
+					start.await();
+					int bad = 0;
+					for(int i = 0; i < CALLS; i++) {
+						if(send)
+							client.sendSMS("Hello", "447777123123", "Test");
+						else
+							client.getCredits();
+						String xml = client.getXML();
+						if(xml == null || !xml.contains("</response>"))
+							bad++;
+					}
+					return bad;
+				}
+			}));
+		}
+		start.countDown();
+		for(Future<Integer> future: futures)
+			assertEquals(0, future.get(60, TimeUnit.SECONDS).intValue());
+	}
+}
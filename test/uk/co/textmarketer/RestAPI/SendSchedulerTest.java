@@ -0,0 +1,154 @@
+package uk.co.textmarketer.RestAPI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the SendScheduler lanes, against a StubServer.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ */
+public class SendSchedulerTest {
+	private StubServer stub;
+	private RestClient client;
+	private SendScheduler scheduler;
+
+	@Before
+	public void setUp() throws Exception {
+		stub = new StubServer();
+		stub.start();
+		client = new RestClient("myuser", "mypass", stub.getBaseUrl());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if(scheduler != null) {
+			scheduler.close();
+			scheduler.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		stub.stop();
+	}
+
+	@Test
+	public void concurrentResultsMatchTheirRequests() throws Exception {
+		stub.setLatency(0, 3);
+		scheduler = new SendScheduler(client, 16, 2);
+		SendScheduler.Priority[] priorities = SendScheduler.Priority.values();
+		List<SmsRequest> requests = new ArrayList<SmsRequest>();
+		List<CompletableFuture<SmsResult>> futures = new ArrayList<CompletableFuture<SmsResult>>();
+		for(int i = 0; i < 600; i++) {
+			SmsRequest request = new SmsRequest("Message " + i, "4477" + (10000000 + i), "Test");
+			requests.add(request);
+			futures.add(scheduler.submit(request, priorities[i % priorities.length]));
+		}
+		HashSet<String> messageIds = new HashSet<String>();
+		for(int i = 0; i < futures.size(); i++) {
+			SmsResult result = futures.get(i).get(30, TimeUnit.SECONDS);
+			assertSame(requests.get(i), result.getRequest());
+			assertTrue(String.valueOf(result.getError()), result.isSuccessful());
+			assertEquals("SENT", result.getResult().get("status"));
+			assertTrue("duplicate message_id in " + result, messageIds.add(result.getResult().get("message_id")));
+		}
+		assertEquals(1000000 - 600, stub.getCredits());
+	}
+
+	@Test
+	public void highLaneIsNotDelayedByLowBacklog() throws Exception {
+		stub.setLatency(50, 50);
+		scheduler = new SendScheduler(client, 4, 1);
+		List<CompletableFuture<SmsResult>> bulk = new ArrayList<CompletableFuture<SmsResult>>();
+		for(int i = 0; i < 200; i++)
+			bulk.add(scheduler.submit(new SmsRequest("Sale", "4477" + (10000000 + i), "Shop"), SendScheduler.Priority.LOW));
+		long start = System.nanoTime();
+		SmsResult otp = scheduler.submit(new SmsRequest("Your code is 1234", "447777123123", "Shop"), SendScheduler.Priority.HIGH)
+				.get(10, TimeUnit.SECONDS);
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue(otp.isSuccessful());
+		assertTrue("HIGH message took " + elapsed + "ms", elapsed < 1000);
+		assertTrue(scheduler.getQueued(SendScheduler.Priority.LOW) > 0);
+		scheduler.close();
+		scheduler.awaitTermination(10, TimeUnit.SECONDS);
+		for(CompletableFuture<SmsResult> future: bulk)
+			assertTrue(future.isDone());
+	}
+
+	@Test
+	public void strictPriorityServesHighFirst() throws Exception {
+		stub.setLatency(20, 20);
+		scheduler = new SendScheduler(client, 1, 0);
+		scheduler.setStrictPriority(true);
+		// keep the only worker busy while the lanes fill up
+		CompletableFuture<SmsResult> busy = scheduler.submit(new SmsRequest("Busy", "447700000000", "Shop"), SendScheduler.Priority.LOW);
+		waitUntilTaken(SendScheduler.Priority.LOW);
+		List<CompletableFuture<SmsResult>> low = new ArrayList<CompletableFuture<SmsResult>>();
+		for(int i = 0; i < 5; i++)
+			low.add(scheduler.submit(new SmsRequest("Low", "4477" + (10000000 + i), "Shop"), SendScheduler.Priority.LOW));
+		CompletableFuture<SmsResult> high = scheduler.submit(new SmsRequest("High", "447777123123", "Shop"), SendScheduler.Priority.HIGH);
+		high.get(10, TimeUnit.SECONDS);
+		busy.get(10, TimeUnit.SECONDS);
+		int lowDone = 0;
+		for(CompletableFuture<SmsResult> future: low) {
+			if(future.isDone())
+				lowDone++;
+		}
+		assertEquals(0, lowDone);
+		for(CompletableFuture<SmsResult> future: low)
+			assertTrue(future.get(10, TimeUnit.SECONDS).isSuccessful());
+	}
+
+	@Test
+	public void fullLaneIsRejected() throws Exception {
+		stub.setLatency(200, 200);
+		scheduler = new SendScheduler(client, 2, 1);
+		scheduler.setQueueCapacity(SendScheduler.Priority.LOW, 1);
+		scheduler.submit(new SmsRequest("First", "447700000001", "Shop"), SendScheduler.Priority.LOW);
+		waitUntilTaken(SendScheduler.Priority.LOW);
+		scheduler.submit(new SmsRequest("Second", "447700000002", "Shop"), SendScheduler.Priority.LOW);
+		try {
+			scheduler.submit(new SmsRequest("Third", "447700000003", "Shop"), SendScheduler.Priority.LOW);
+			fail("lane of 1 accepted a second waiting message");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+		// the other lanes are not affected
+		assertTrue(scheduler.submit(new SmsRequest("Other", "447700000004", "Shop"), SendScheduler.Priority.HIGH)
+				.get(10, TimeUnit.SECONDS).isSuccessful());
+	}
+
+	@Test
+	public void expiredDeadlineIsNotSent() throws Exception {
+		scheduler = new SendScheduler(client, 2, 1);
+		SmsRequest request = new SmsRequest("Late", "447777123123", "Shop");
+		request.setDeadline(Deadline.after(0, TimeUnit.SECONDS));
+		SmsResult result = scheduler.submit(request, SendScheduler.Priority.NORMAL).get(10, TimeUnit.SECONDS);
+		assertFalse(result.isSuccessful());
+		assertNotNull(result.getError());
+		assertTrue(result.getError().getCause() instanceof DeadlineExceededException);
+		assertEquals(1, scheduler.getExpiredCount());
+		assertEquals(0, stub.getRequestCount());
+	}
+
+	private void waitUntilTaken(SendScheduler.Priority priority) throws InterruptedException {
+		long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while(scheduler.getQueued(priority) > 0 && System.nanoTime() - until < 0)
+			Thread.sleep(1);
+		assertEquals(0, scheduler.getQueued(priority));
+	}
+}
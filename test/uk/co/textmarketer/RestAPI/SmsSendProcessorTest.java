@@ -0,0 +1,191 @@
+package uk.co.textmarketer.RestAPI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the SmsSendProcessor stream, against a StubServer.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ */
+public class SmsSendProcessorTest {
+	private StubServer stub;
+	private RestClient client;
+	private ExecutorService pool;
+
+	@Before
+	public void setUp() throws Exception {
+		stub = new StubServer();
+		stub.setLatency(0, 3);
+		stub.start();
+		client = new RestClient("myuser", "mypass", stub.getBaseUrl());
+		pool = Executors.newFixedThreadPool(8);
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdownNow();
+		stub.stop();
+	}
+
+	@Test
+	public void everyRequestGetsOneResult() throws Exception {
+		SmsSendProcessor processor = new SmsSendProcessor(client, 8, pool);
+		Recorder recorder = new Recorder(1);
+		publish(processor, recorder, 300);
+		assertTrue(recorder.done.await(30, TimeUnit.SECONDS));
+		assertNull(recorder.error);
+		assertEquals(300, recorder.results.size());
+		for(SmsResult result: recorder.results)
+			assertTrue(String.valueOf(result.getError()), result.isSuccessful());
+		assertEquals(1, recorder.terminals.get());
+		assertFalse("overlapping signals", recorder.overlapped);
+	}
+
+	@Test
+	public void blockingSubscriberDoesNotStopTheSends() throws Exception {
+		// counts the sends that finished, including handing their result to the processor
+		final CountDownLatch finished = new CountDownLatch(3);
+		Executor counting = new Executor() {
+			public void execute(final Runnable command) {
+				pool.execute(new Runnable() {
+					public void run() {
+						command.run();
+						finished.countDown();
+					}
+				});
+			}
+		};
+		SmsSendProcessor processor = new SmsSendProcessor(client, 4, counting);
+		final AtomicInteger waited = new AtomicInteger(-1);
+		Recorder recorder = new Recorder(Long.MAX_VALUE) {
+			@Override
+			public void onNext(SmsResult item) {
+				if(waited.compareAndSet(-1, 0)) {
+					try {
+						waited.set(finished.await(10, TimeUnit.SECONDS) ? 1 : 0);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				super.onNext(item);
+			}
+		};
+		publish(processor, recorder, 20);
+		assertTrue(recorder.done.await(30, TimeUnit.SECONDS));
+		assertEquals("sends finished while the subscriber was blocked", 1, waited.get());
+		assertEquals(20, recorder.results.size());
+	}
+
+	@Test
+	public void errorInASendStillCompletes() throws Exception {
+		final AtomicInteger calls = new AtomicInteger();
+		client.addInterceptor(new RestInterceptor() {
+			public RestResponse intercept(Chain chain) throws Exception {
+				if(calls.incrementAndGet() % 5 == 0)
+					throw new NoClassDefFoundError("simulated");
+				return chain.proceed(chain.request());
+			}
+		});
+		SmsSendProcessor processor = new SmsSendProcessor(client, 4, pool);
+		Recorder recorder = new Recorder(Long.MAX_VALUE);
+		publish(processor, recorder, 50);
+		assertTrue("stream did not complete", recorder.done.await(30, TimeUnit.SECONDS));
+		assertNull(recorder.error);
+		assertEquals(50, recorder.results.size());
+		int failed = 0;
+		for(SmsResult result: recorder.results) {
+			if(!result.isSuccessful())
+				failed++;
+		}
+		assertEquals(10, failed);
+	}
+
+	@Test
+	public void invalidRequestEndsTheStream() throws Exception {
+		SmsSendProcessor processor = new SmsSendProcessor(client, 4, pool);
+		Recorder recorder = new Recorder(0) {
+			@Override
+			public void onSubscribe(Flow.Subscription subscription) {
+				super.onSubscribe(subscription);
+				subscription.request(0);
+			}
+		};
+		publish(processor, recorder, 5);
+		assertTrue(recorder.done.await(30, TimeUnit.SECONDS));
+		assertTrue(recorder.error instanceof IllegalArgumentException);
+		assertEquals(1, recorder.terminals.get());
+	}
+
+	private void publish(SmsSendProcessor processor, Recorder recorder, int messages) {
+		SubmissionPublisher<SmsRequest> source = new SubmissionPublisher<SmsRequest>(pool, 16);
+		source.subscribe(processor);
+		processor.subscribe(recorder);
+		for(int i = 0; i < messages; i++)
+			source.submit(new SmsRequest("Message " + i, "4477" + (10000000 + i), "Test"));
+		source.close();
+	}
+
+	/**
+	 * Subscriber keeping the results, requesting batch results at a time
+	 */
+	private static class Recorder implements Flow.Subscriber<SmsResult> {
+		final List<SmsResult> results = new CopyOnWriteArrayList<SmsResult>();
+		final CountDownLatch done = new CountDownLatch(1);
+		final AtomicInteger terminals = new AtomicInteger();
+		final AtomicInteger active = new AtomicInteger();
+		final long batch;
+		volatile boolean overlapped;
+		volatile Throwable error;
+		private Flow.Subscription subscription;
+
+		Recorder(long batch) {
+			this.batch = batch;
+		}
+
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			if(batch > 0)
+				subscription.request(batch);
+		}
+
+		public void onNext(SmsResult item) {
+			if(active.incrementAndGet() != 1)
+				overlapped = true;
+			results.add(item);
+			active.decrementAndGet();
+			if(batch == 1)
+				subscription.request(1);
+		}
+
+		public void onError(Throwable e) {
+			error = e;
+			terminals.incrementAndGet();
+			done.countDown();
+		}
+
+		public void onComplete() {
+			terminals.incrementAndGet();
+			done.countDown();
+		}
+	}
+}
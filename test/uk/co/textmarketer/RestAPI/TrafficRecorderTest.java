@@ -0,0 +1,122 @@
+package uk.co.textmarketer.RestAPI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Hashtable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of TrafficRecorder, against a StubServer, and of the replay of its recordings.<p>
+ *
+ * Copyright © 2017 Text Marketer Ltd<p>
+ *
+ * @version 1.0
+ */
+public class TrafficRecorderTest {
+	private StubServer stub;
+	private RestClient client;
+	private Path file;
+
+	@Before
+	public void setUp() throws Exception {
+		stub = new StubServer();
+		stub.start();
+		client = new RestClient("myuser", "mypass", stub.getBaseUrl());
+		file = Files.createTempFile("tm-traffic", ".tmtr");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		stub.stop();
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	public void recordingReplays() throws Exception {
+		stub.setReportRows(100);
+		TrafficRecorder recorder = new TrafficRecorder(file);
+		client.addInterceptor(recorder);
+		client.sendSMS("Hello", "447777123123", "Test");
+		int credits = client.getCredits();
+		assertEquals(100, countRows(client));
+		recorder.close();
+		assertEquals(3, recorder.getRecordedCount());
+
+		RestClient replayed = new RestClient("myuser", "mypass", stub.getBaseUrl());
+		ReplayTransport replay = new ReplayTransport(file);
+		replay.setOriginalTiming(false);
+		replayed.setTransport(replay);
+		assertEquals(3, replay.size());
+		assertEquals(credits, replayed.getCredits());
+		assertEquals(100, countRows(replayed));
+	}
+
+	@Test
+	public void bigStreamedBodyIsSkipped() throws Exception {
+		stub.setReportRows(1000);
+		TrafficRecorder recorder = new TrafficRecorder(file);
+		recorder.setMaxStreamedBody(1024);
+		client.addInterceptor(recorder);
+		assertEquals(1000, countRows(client));
+		client.getCredits();
+		recorder.close();
+		assertEquals(1, recorder.getSkippedCount());
+		assertEquals(1, recorder.getRecordedCount());
+	}
+
+	@Test
+	public void writeErrorDoesNotFailTheCall() throws Exception {
+		// a disk that fills up after the header
+		OutputStream full = new OutputStream() {
+			private int written;
+
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] {(byte) b}, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				written += len;
+				if(written > 64)
+					throw new IOException("No space left on device");
+			}
+		};
+		stub.setReportRows(50000);
+		TrafficRecorder recorder = new TrafficRecorder(full);
+		recorder.setMaxStreamedBody(64 << 20);
+		client.addInterceptor(recorder);
+		assertEquals(50000, countRows(client));
+		for(int i = 0; i < 10; i++) {
+			Hashtable<String, String> result = client.sendSMS("Hello", "447777123123", "Test");
+			assertEquals("SENT", result.get("status"));
+		}
+		assertEquals(1000000 - 10, stub.getCredits());
+		assertTrue(recorder.getFailedCount() > 0);
+		try {
+			recorder.close();
+		} catch (IOException e) {
+			// the file is still full
+		}
+	}
+
+	private static int countRows(RestClient client) throws Exception {
+		DeliveryReportReader reader = client.openDeliveryReport("all", null);
+		try {
+			int rows = 0;
+			while(reader.next())
+				rows++;
+			return rows;
+		} finally {
+			reader.close();
+		}
+	}
+}